@@ -44,8 +44,7 @@ public class HotseatPredictionModel {
     public static Bundle convertDataModelToAppTargetBundle(Context context, BgDataModel dataModel) {
         Bundle bundle = new Bundle();
         ArrayList<AppTargetEvent> events = new ArrayList<>();
-        ArrayList<ItemInfo> workspaceItems = dataModel.getAllWorkspaceItems();
-        for (ItemInfo item : workspaceItems) {
+        for (ItemInfo item : dataModel.getSnapshot().allWorkspaceItems) {
             AppTarget target = getAppTargetFromItemInfo(context, item);
             if (target != null && !isTrackedForHotseatPrediction(item)) continue;
             events.add(wrapAppTargetWithItemLocation(target, AppTargetEvent.ACTION_PIN, item));
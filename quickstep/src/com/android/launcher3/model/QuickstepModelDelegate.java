@@ -73,7 +73,6 @@ import com.android.launcher3.pm.UserCache;
 import com.android.launcher3.shortcuts.ShortcutKey;
 import com.android.launcher3.util.ApiWrapper;
 import com.android.launcher3.util.Executors;
-import com.android.launcher3.util.IntSparseArrayMap;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.PersistedItemArray;
 import com.android.quickstep.logging.SettingsChangeLogger;
@@ -230,13 +229,10 @@ public class QuickstepModelDelegate extends ModelDelegate {
                         elapsedTime));
             }
         } else {
-            IntSparseArrayMap<ItemInfo> itemsIdMap;
-            synchronized (mDataModel) {
-                itemsIdMap = mDataModel.itemsIdMap.clone();
-            }
+            BgDataModel.Snapshot snapshot = mDataModel.getSnapshot();
             InstanceId instanceId = new InstanceIdSequence().newInstanceId();
-            for (ItemInfo info : itemsIdMap) {
-                CollectionInfo parent = getContainer(info, itemsIdMap);
+            for (ItemInfo info : snapshot.items) {
+                CollectionInfo parent = getContainer(info, snapshot);
                 StatsLogCompatManager.writeSnapshot(info.buildProto(parent), instanceId);
             }
             additionalSnapshotEvents(instanceId);
@@ -267,13 +263,10 @@ public class QuickstepModelDelegate extends ModelDelegate {
                     MODEL_EXECUTOR,
                     (i, eventList) -> {
                         InstanceId instanceId = new InstanceIdSequence().newInstanceId();
-                        IntSparseArrayMap<ItemInfo> itemsIdMap;
-                        synchronized (mDataModel) {
-                            itemsIdMap = mDataModel.itemsIdMap.clone();
-                        }
+                        BgDataModel.Snapshot snapshot = mDataModel.getSnapshot();
 
-                        for (ItemInfo info : itemsIdMap) {
-                            CollectionInfo parent = getContainer(info, itemsIdMap);
+                        for (ItemInfo info : snapshot.items) {
+                            CollectionInfo parent = getContainer(info, snapshot);
                             LauncherAtom.ItemInfo itemInfo = info.buildProto(parent);
                             Log.d(TAG, itemInfo.toString());
                             StatsEvent statsEvent = StatsLogCompatManager.buildStatsEvent(itemInfo,
@@ -283,7 +276,7 @@ public class QuickstepModelDelegate extends ModelDelegate {
                         Log.d(TAG,
                                 String.format(
                                         "Successfully logged %d workspace items with instanceId=%d",
-                                        itemsIdMap.size(), instanceId.getId()));
+                                        snapshot.items.size(), instanceId.getId()));
                         additionalSnapshotEvents(instanceId);
                         SettingsChangeLogger.INSTANCE.get(mContext).logSnapshot(instanceId);
                         return StatsManager.PULL_SUCCESS;
@@ -297,9 +290,9 @@ public class QuickstepModelDelegate extends ModelDelegate {
     }
 
     private static CollectionInfo getContainer(
-            ItemInfo info, IntSparseArrayMap<ItemInfo> itemsIdMap) {
+            ItemInfo info, BgDataModel.Snapshot snapshot) {
         if (info.container > 0) {
-            ItemInfo containerInfo = itemsIdMap.get(info.container);
+            ItemInfo containerInfo = snapshot.getItem(info.container);
 
             if (!(containerInfo instanceof CollectionInfo)) {
                 Log.e(TAG, String.format(
@@ -465,7 +458,7 @@ public class QuickstepModelDelegate extends ModelDelegate {
     private Bundle getBundleForWidgetsOnWorkspace(Context context, BgDataModel dataModel) {
         Bundle bundle = new Bundle();
         ArrayList<AppTargetEvent> widgetEvents =
-                dataModel.getAllWorkspaceItems().stream()
+                dataModel.getSnapshot().allWorkspaceItems.stream()
                         .filter(PredictionHelper::isTrackedForWidgetPrediction)
                         .map(item -> {
                             AppTarget target = getAppTargetFromItemInfo(context, item);
@@ -138,6 +138,7 @@ public final class WellbeingModel implements SafeCloseable {
                 mAppAddRemoveReceiver.unregisterReceiverSafely(mContext);
                 mContext.getContentResolver().unregisterContentObserver(mContentObserver);
             });
+            Executors.releasePackageExecutor(mWellbeingProviderPkg);
         }
     }
 
@@ -297,6 +297,7 @@ public class RecentsModel implements RecentTasksDataSource, IconChangeListener,
     public void dump(String prefix, PrintWriter writer) {
         writer.println(prefix + "RecentsModel:");
         mTaskList.dump("  ", writer);
+        mThumbnailCache.dump("  ", writer);
     }
 
     /**
@@ -20,33 +20,45 @@ import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 
 import android.content.Context;
 import android.content.res.Resources;
+import android.util.DisplayMetrics;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.launcher3.R;
 import com.android.launcher3.util.CancellableTask;
 import com.android.launcher3.util.Preconditions;
 import com.android.quickstep.task.thumbnail.data.TaskThumbnailDataSource;
-import com.android.quickstep.util.TaskKeyByLastActiveTimeCache;
 import com.android.quickstep.util.TaskKeyCache;
-import com.android.quickstep.util.TaskKeyLruCache;
+import com.android.quickstep.util.TaskThumbnailTieredCache;
 import com.android.systemui.shared.recents.model.Task;
 import com.android.systemui.shared.recents.model.Task.TaskKey;
 import com.android.systemui.shared.recents.model.ThumbnailData;
 import com.android.systemui.shared.system.ActivityManagerWrapper;
 
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 public class TaskThumbnailCache implements TaskThumbnailDataSource {
 
+    private static final int BYTES_PER_PIXEL = 4;
+    /** Minimum number of full screen high-res thumbnails which fit in the high-res tier. */
+    private static final int HIGH_RES_BUDGET_SCREENS = 3;
+    /** Low-res thumbnails are budgeted at a quarter of the screen area, a 0.5 scale. */
+    private static final int LOW_RES_AREA_DIVISOR = 4;
+    /** Low-res reloads of evicted high-res thumbnails allowed to run at the same time. */
+    private static final int MAX_LOW_RES_RELOADS = 2;
+
     private final Executor mBgExecutor;
     private final TaskKeyCache<ThumbnailData> mCache;
     private final HighResLoadingState mHighResLoadingState;
     private final boolean mEnableTaskSnapshotPreloading;
     private final Context mContext;
+    private final AtomicInteger mLowResReloadCount = new AtomicInteger();
 
     public static class HighResLoadingState {
         private boolean mForceHighResThumbnails;
@@ -104,9 +116,21 @@ public class TaskThumbnailCache implements TaskThumbnailDataSource {
     }
 
     private TaskThumbnailCache(Context context, Executor bgExecutor, int cacheSize) {
-        this(context, bgExecutor,
-                enableGridOnlyOverview() ? new TaskKeyByLastActiveTimeCache<>(cacheSize)
-                        : new TaskKeyLruCache<>(cacheSize));
+        this(context, bgExecutor, createTieredCache(context, cacheSize));
+        ((TaskThumbnailTieredCache) mCache).setDowngradeListener(this::loadLowResAfterEviction);
+    }
+
+    private static TaskThumbnailTieredCache createTieredCache(Context context, int cacheSize) {
+        DisplayMetrics dm = context.getResources().getDisplayMetrics();
+        long screenBytes = (long) dm.widthPixels * dm.heightPixels * BYTES_PER_PIXEL;
+        // Without low-res thumbnails, the high-res tier holds all the thumbnails
+        long highResBudget = supportsLowResThumbnails()
+                ? screenBytes * Math.min(Math.max(HIGH_RES_BUDGET_SCREENS, cacheSize / 2),
+                        cacheSize)
+                : screenBytes * cacheSize;
+        long lowResBudget = screenBytes * cacheSize / LOW_RES_AREA_DIVISOR;
+        return new TaskThumbnailTieredCache(cacheSize, highResBudget, lowResBudget,
+                enableGridOnlyOverview());
     }
 
     @VisibleForTesting
@@ -170,6 +194,22 @@ public class TaskThumbnailCache implements TaskThumbnailDataSource {
         });
     }
 
+    /**
+     * Asynchronously loads the thumbnail of the task into the cache, without updating the task.
+     *
+     * @param onLoaded called once the thumbnail is in the cache, if not null
+     * @return A cancelable handle to the request, or null if the thumbnail was already cached
+     */
+    @Nullable
+    public CancellableTask<ThumbnailData> prefetchThumbnail(TaskKey key, boolean lowResolution,
+            @Nullable Runnable onLoaded) {
+        return updateThumbnailInBackground(key, lowResolution, t -> {
+            if (onLoaded != null) {
+                onLoaded.run();
+            }
+        });
+    }
+
     /**
      * Updates cache size and remove excess entries if current size is more than new cache size.
      *
@@ -226,6 +266,43 @@ public class TaskThumbnailCache implements TaskThumbnailDataSource {
         return request;
     }
 
+    /**
+     * Replaces a high-res thumbnail evicted from the cache with its low-res version, so that it
+     * can still be shown right away. Each reload is a binder call, so only a few run at once and
+     * the other evicted thumbnails are loaded again when they are needed.
+     */
+    private void loadLowResAfterEviction(TaskKey key) {
+        TaskThumbnailTieredCache cache = (TaskThumbnailTieredCache) mCache;
+        if (!supportsLowResThumbnails()) {
+            cache.cancelDowngrade(key);
+            return;
+        }
+        if (mLowResReloadCount.incrementAndGet() > MAX_LOW_RES_RELOADS) {
+            mLowResReloadCount.decrementAndGet();
+            cache.cancelDowngrade(key);
+            return;
+        }
+        mBgExecutor.execute(() -> {
+            ThumbnailData thumbnailData;
+            try {
+                thumbnailData = ActivityManagerWrapper.getInstance()
+                        .getTaskThumbnail(key.id, /* isLowResolution= */ true);
+            } finally {
+                mLowResReloadCount.decrementAndGet();
+            }
+            if (thumbnailData.getThumbnail() != null && thumbnailData.reducedResolution) {
+                MAIN_EXECUTOR.execute(() -> cache.putDowngraded(key, thumbnailData));
+            } else {
+                cache.cancelDowngrade(key);
+            }
+        });
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "TaskThumbnailCache:");
+        mCache.dump(prefix + "  ", writer);
+    }
+
     /**
      * Clears the cache.
      */
@@ -17,12 +17,14 @@ package com.android.quickstep.util;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 
 import com.android.launcher3.util.Preconditions;
 
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
@@ -30,10 +32,20 @@ import java.util.Objects;
 
 /**
  * A log to keep track of the active gesture.
+ *
+ * Logs are recorded during gestures, so the logs of the last {@link #MAX_GESTURES_TRACKED}
+ * gestures are kept in preallocated slots and their entries are recycled. Events logged with a
+ * plain string and primitive extras are stored as is and only formatted at dump time. Since
+ * entries are rewritten in place, dumps work on a copy of the logs taken under the same lock.
  */
 public class ActiveGestureLog {
 
-    private static final int MAX_GESTURES_TRACKED = 15;
+    @VisibleForTesting
+    static final int MAX_GESTURES_TRACKED = 15;
+
+    private static final int EXTRAS_NONE = 0;
+    private static final int EXTRAS_INT = 1;
+    private static final int EXTRAS_BOOLEAN = 2;
 
     public static final ActiveGestureLog INSTANCE = new ActiveGestureLog();
 
@@ -45,12 +57,21 @@ public class ActiveGestureLog {
      */
     public static final String INTENT_EXTRA_LOG_TRACE_ID = "INTENT_EXTRA_LOG_TRACE_ID";
 
+    // Guards the logs and their entries
+    private final Object mLock = new Object();
     private final EventLog[] logs;
     private int nextIndex;
     private int mCurrentLogId = 100;
 
-    private ActiveGestureLog() {
+    // Entries of the logs which were overwritten, reused for the next entries
+    private final ArrayList<EventEntry> mRecycledEntries = new ArrayList<>();
+
+    @VisibleForTesting
+    ActiveGestureLog() {
         this.logs = new EventLog[MAX_GESTURES_TRACKED];
+        for (int i = 0; i < MAX_GESTURES_TRACKED; i++) {
+            logs[i] = new EventLog();
+        }
         this.nextIndex = 0;
     }
 
@@ -61,7 +82,7 @@ public class ActiveGestureLog {
      *                   execution.
      */
     public void trackEvent(@Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        addLog(CompoundString.NO_OP, gestureEvent);
+        addLog(null, EXTRAS_NONE, 0, null, gestureEvent);
     }
 
     /**
@@ -86,21 +107,21 @@ public class ActiveGestureLog {
      */
     public void addLog(
             @NonNull String event, @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        addLog(new CompoundString(event), gestureEvent);
+        addLog(event, EXTRAS_NONE, 0, null, gestureEvent);
     }
 
     public void addLog(
             @NonNull String event,
             int extras,
             @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        addLog(new CompoundString(event).append(": ").append(extras), gestureEvent);
+        addLog(event, EXTRAS_INT, extras, null, gestureEvent);
     }
 
     public void addLog(
             @NonNull String event,
             boolean extras,
             @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        addLog(new CompoundString(event).append(": ").append(extras), gestureEvent);
+        addLog(event, EXTRAS_BOOLEAN, extras ? 1 : 0, null, gestureEvent);
     }
 
     public void addLog(@NonNull CompoundString compoundString) {
@@ -110,14 +131,34 @@ public class ActiveGestureLog {
     public void addLog(
             @NonNull CompoundString compoundString,
             @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        EventLog lastEventLog = logs[(nextIndex + logs.length - 1) % logs.length];
-        if (lastEventLog == null || mCurrentLogId != lastEventLog.logId) {
-            EventLog eventLog = new EventLog(mCurrentLogId, mIsFullyGesturalNavMode);
-            EventEntry eventEntry = new EventEntry();
+        addLog(null, EXTRAS_NONE, 0, compoundString.mIsNoOp ? null : compoundString,
+                gestureEvent);
+    }
 
-            eventEntry.update(compoundString, gestureEvent);
-            eventLog.eventEntries.add(eventEntry);
-            logs[nextIndex] = eventLog;
+    private void addLog(
+            @Nullable String event,
+            int extrasType,
+            int extras,
+            @Nullable CompoundString compoundString,
+            @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
+        synchronized (mLock) {
+            addLogLocked(event, extrasType, extras, compoundString, gestureEvent);
+        }
+    }
+
+    private void addLogLocked(
+            @Nullable String event,
+            int extrasType,
+            int extras,
+            @Nullable CompoundString compoundString,
+            @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
+        EventLog lastEventLog = logs[(nextIndex + logs.length - 1) % logs.length];
+        if (!lastEventLog.isInUse || mCurrentLogId != lastEventLog.logId) {
+            EventLog eventLog = logs[nextIndex];
+            mRecycledEntries.addAll(eventLog.eventEntries);
+            eventLog.reset(mCurrentLogId, mIsFullyGesturalNavMode);
+            eventLog.eventEntries.add(
+                    obtainEntry(event, extrasType, extras, compoundString, gestureEvent));
             nextIndex = (nextIndex + 1) % logs.length;
             return;
         }
@@ -128,45 +169,64 @@ public class ActiveGestureLog {
                 ? lastEventEntries.get(lastEventEntries.size() - 1) : null;
 
         // Update the last EventEntry if it's a duplicate
-        if (isEntrySame(lastEntry, compoundString, gestureEvent)) {
+        if (lastEntry != null
+                && lastEntry.isSame(event, extrasType, extras, compoundString, gestureEvent)) {
             lastEntry.duplicateCount++;
             return;
         }
-        EventEntry eventEntry = new EventEntry();
+        lastEventEntries.add(obtainEntry(event, extrasType, extras, compoundString, gestureEvent));
+    }
 
-        eventEntry.update(compoundString, gestureEvent);
-        lastEventEntries.add(eventEntry);
+    private EventEntry obtainEntry(
+            @Nullable String event,
+            int extrasType,
+            int extras,
+            @Nullable CompoundString compoundString,
+            @Nullable ActiveGestureErrorDetector.GestureEvent gestureEvent) {
+        EventEntry eventEntry = mRecycledEntries.isEmpty()
+                ? new EventEntry() : mRecycledEntries.remove(mRecycledEntries.size() - 1);
+        eventEntry.update(event, extrasType, extras, compoundString, gestureEvent);
+        return eventEntry;
+    }
+
+    /**
+     * Returns a copy of the logs in use, oldest first, which is not affected by later events.
+     */
+    @VisibleForTesting
+    List<EventLog> getLogsSnapshot() {
+        synchronized (mLock) {
+            List<EventLog> snapshot = new ArrayList<>(logs.length);
+            for (int i = 0; i < logs.length; i++) {
+                EventLog eventLog = logs[(nextIndex + i) % logs.length];
+                if (eventLog.isInUse) {
+                    snapshot.add(new EventLog(eventLog));
+                }
+            }
+            return snapshot;
+        }
     }
 
     public void dump(String prefix, PrintWriter writer) {
+        List<EventLog> snapshot = getLogsSnapshot();
         writer.println(prefix + "ActiveGestureErrorDetector:");
-        for (int i = 0; i < logs.length; i++) {
-            EventLog eventLog = logs[(nextIndex + i) % logs.length];
-            if (eventLog == null) {
-                continue;
-            }
+        for (EventLog eventLog : snapshot) {
             ActiveGestureErrorDetector.analyseAndDump(prefix + '\t', writer, eventLog);
         }
 
         writer.println(prefix + "ActiveGestureLog history:");
         SimpleDateFormat sdf = new SimpleDateFormat("HH:mm:ss.SSSZ  ", Locale.US);
         Date date = new Date();
-        for (int i = 0; i < logs.length; i++) {
-            EventLog eventLog = logs[(nextIndex + i) % logs.length];
-            if (eventLog == null) {
-                continue;
-            }
-
+        for (EventLog eventLog : snapshot) {
             writer.println(prefix + "\tLogs for logId: " + eventLog.logId);
             for (EventEntry eventEntry : eventLog.eventEntries) {
-                if (eventEntry.mCompoundString.mIsNoOp) {
+                if (eventEntry.isNoOp()) {
                     continue;
                 }
                 date.setTime(eventEntry.time);
 
                 StringBuilder msg = new StringBuilder(prefix + "\t\t")
-                        .append(sdf.format(date))
-                        .append(eventEntry.mCompoundString);
+                        .append(sdf.format(date));
+                eventEntry.appendMessage(msg);
                 if (eventEntry.duplicateCount > 0) {
                     msg.append(" & ").append(eventEntry.duplicateCount).append(" similar events");
                 }
@@ -192,25 +252,29 @@ public class ActiveGestureLog {
         return mCurrentLogId;
     }
 
-    private boolean isEntrySame(
-            EventEntry entry,
-            CompoundString compoundString,
-            ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-        return entry != null
-                && entry.mCompoundString.equals(compoundString)
-                && entry.gestureEvent == gestureEvent;
-    }
-
     /** A single event entry. */
     protected static class EventEntry {
 
-        @NonNull private CompoundString mCompoundString;
+        @Nullable private String mEvent;
+        private int mExtrasType;
+        private int mExtras;
+        @Nullable private CompoundString mCompoundString;
         private ActiveGestureErrorDetector.GestureEvent gestureEvent;
         private long time;
         private int duplicateCount;
 
         private EventEntry() {}
 
+        private EventEntry(EventEntry other) {
+            mEvent = other.mEvent;
+            mExtrasType = other.mExtrasType;
+            mExtras = other.mExtras;
+            mCompoundString = other.mCompoundString;
+            gestureEvent = other.gestureEvent;
+            time = other.time;
+            duplicateCount = other.duplicateCount;
+        }
+
         @Nullable
         protected ActiveGestureErrorDetector.GestureEvent getGestureEvent() {
             return gestureEvent;
@@ -221,14 +285,57 @@ public class ActiveGestureLog {
         }
 
         private void update(
-                @NonNull CompoundString compoundString,
+                @Nullable String event,
+                int extrasType,
+                int extras,
+                @Nullable CompoundString compoundString,
                 ActiveGestureErrorDetector.GestureEvent gestureEvent) {
-            this.mCompoundString = compoundString;
+            mEvent = event;
+            mExtrasType = extrasType;
+            mExtras = extras;
+            mCompoundString = compoundString;
             this.gestureEvent = gestureEvent;
             time = System.currentTimeMillis();
             duplicateCount = 0;
         }
 
+        private boolean isSame(
+                @Nullable String event,
+                int extrasType,
+                int extras,
+                @Nullable CompoundString compoundString,
+                ActiveGestureErrorDetector.GestureEvent gestureEvent) {
+            return Objects.equals(mEvent, event)
+                    && mExtrasType == extrasType
+                    && mExtras == extras
+                    && Objects.equals(mCompoundString, compoundString)
+                    && this.gestureEvent == gestureEvent;
+        }
+
+        private boolean isNoOp() {
+            return mEvent == null && mCompoundString == null;
+        }
+
+        @VisibleForTesting
+        String getMessage() {
+            StringBuilder msg = new StringBuilder();
+            appendMessage(msg);
+            return msg.toString();
+        }
+
+        private void appendMessage(StringBuilder msg) {
+            if (mCompoundString != null) {
+                msg.append(mCompoundString);
+                return;
+            }
+            msg.append(mEvent);
+            if (mExtrasType == EXTRAS_INT) {
+                msg.append(": ").append(mExtras);
+            } else if (mExtrasType == EXTRAS_BOOLEAN) {
+                msg.append(": ").append(mExtras != 0);
+            }
+        }
+
         public long getTime() {
             return time;
         }
@@ -238,12 +345,26 @@ public class ActiveGestureLog {
     protected static class EventLog {
 
         protected final List<EventEntry> eventEntries = new ArrayList<>();
-        protected final int logId;
-        protected final boolean mIsFullyGesturalNavMode;
+        protected int logId;
+        protected boolean mIsFullyGesturalNavMode;
+        private boolean isInUse;
+
+        private EventLog() {}
 
-        private EventLog(int logId, boolean isFullyGesturalNavMode) {
+        private EventLog(EventLog other) {
+            for (EventEntry entry : other.eventEntries) {
+                eventEntries.add(new EventEntry(entry));
+            }
+            logId = other.logId;
+            mIsFullyGesturalNavMode = other.mIsFullyGesturalNavMode;
+            isInUse = other.isInUse;
+        }
+
+        private void reset(int logId, boolean isFullyGesturalNavMode) {
+            eventEntries.clear();
             this.logId = logId;
             mIsFullyGesturalNavMode = isFullyGesturalNavMode;
+            isInUse = true;
         }
     }
 
@@ -252,8 +373,15 @@ public class ActiveGestureLog {
 
         public static final CompoundString NO_OP = new CompoundString();
 
+        private static final char ARG_INTEGER = 'd';
+        private static final char ARG_DECIMAL = 'f';
+        private static final char ARG_BOOLEAN = 'b';
+
         private final List<String> mSubstrings;
-        private final List<Object> mArgs;
+        // Args are stored unboxed, decimals as their raw double bits
+        private long[] mArgs;
+        private char[] mArgTypes;
+        private int mArgCount;
 
         private final boolean mIsNoOp;
 
@@ -264,7 +392,6 @@ public class ActiveGestureLog {
         public CompoundString(String substring) {
             mIsNoOp = substring == null;
             mSubstrings = mIsNoOp ? null : new ArrayList<>();
-            mArgs = mIsNoOp ? null : new ArrayList<>();
 
             if (!mIsNoOp) {
                 mSubstrings.add(substring);
@@ -276,7 +403,9 @@ public class ActiveGestureLog {
                 return this;
             }
             mSubstrings.addAll(substring.mSubstrings);
-            mArgs.addAll(substring.mArgs);
+            for (int i = 0; i < substring.mArgCount; i++) {
+                addArg(substring.mArgTypes[i], substring.mArgs[i]);
+            }
 
             return this;
         }
@@ -294,7 +423,7 @@ public class ActiveGestureLog {
             if (mIsNoOp) {
                 return this;
             }
-            mArgs.add(num);
+            addArg(ARG_INTEGER, num);
 
             return append("%d");
         }
@@ -303,7 +432,7 @@ public class ActiveGestureLog {
             if (mIsNoOp) {
                 return this;
             }
-            mArgs.add(num);
+            addArg(ARG_INTEGER, num);
 
             return append("%d");
         }
@@ -312,7 +441,7 @@ public class ActiveGestureLog {
             if (mIsNoOp) {
                 return this;
             }
-            mArgs.add(num);
+            addArg(ARG_DECIMAL, Double.doubleToRawLongBits(num));
 
             return append("%.2f");
         }
@@ -321,7 +450,7 @@ public class ActiveGestureLog {
             if (mIsNoOp) {
                 return this;
             }
-            mArgs.add(num);
+            addArg(ARG_DECIMAL, Double.doubleToRawLongBits(num));
 
             return append("%.2f");
         }
@@ -330,15 +459,41 @@ public class ActiveGestureLog {
             if (mIsNoOp) {
                 return this;
             }
-            mArgs.add(bool);
+            addArg(ARG_BOOLEAN, bool ? 1 : 0);
 
             return append("%b");
         }
 
+        private void addArg(char type, long value) {
+            if (mArgs == null) {
+                mArgs = new long[4];
+                mArgTypes = new char[4];
+            } else if (mArgCount == mArgs.length) {
+                mArgs = Arrays.copyOf(mArgs, mArgCount * 2);
+                mArgTypes = Arrays.copyOf(mArgTypes, mArgCount * 2);
+            }
+            mArgs[mArgCount] = value;
+            mArgTypes[mArgCount] = type;
+            mArgCount++;
+        }
+
         private Object[] getArgs() {
             Preconditions.assertTrue(!mIsNoOp);
 
-            return mArgs.toArray();
+            Object[] args = new Object[mArgCount];
+            for (int i = 0; i < mArgCount; i++) {
+                switch (mArgTypes[i]) {
+                    case ARG_DECIMAL:
+                        args[i] = Double.longBitsToDouble(mArgs[i]);
+                        break;
+                    case ARG_BOOLEAN:
+                        args[i] = mArgs[i] != 0;
+                        break;
+                    default:
+                        args[i] = mArgs[i];
+                }
+            }
+            return args;
         }
 
         @Override
@@ -359,7 +514,11 @@ public class ActiveGestureLog {
 
         @Override
         public int hashCode() {
-            return Objects.hash(mIsNoOp, mSubstrings, mArgs);
+            int result = Objects.hash(mIsNoOp, mSubstrings);
+            for (int i = 0; i < mArgCount; i++) {
+                result = 31 * result + Long.hashCode(mArgs[i]);
+            }
+            return result;
         }
 
         @Override
@@ -368,9 +527,17 @@ public class ActiveGestureLog {
                 return false;
             }
             CompoundString other = (CompoundString) obj;
-            return (mIsNoOp == other.mIsNoOp)
-                    && Objects.equals(mSubstrings, other.mSubstrings)
-                    && Objects.equals(mArgs, other.mArgs);
+            if (mIsNoOp != other.mIsNoOp
+                    || !Objects.equals(mSubstrings, other.mSubstrings)
+                    || mArgCount != other.mArgCount) {
+                return false;
+            }
+            for (int i = 0; i < mArgCount; i++) {
+                if (mArgs[i] != other.mArgs[i] || mArgTypes[i] != other.mArgTypes[i]) {
+                    return false;
+                }
+            }
+            return true;
         }
     }
 }
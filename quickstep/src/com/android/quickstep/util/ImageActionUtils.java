@@ -21,8 +21,8 @@ import static android.content.Intent.FLAG_GRANT_READ_URI_PERMISSION;
 import static android.view.WindowManager.ScreenshotSource.SCREENSHOT_OVERVIEW;
 import static android.view.WindowManager.TAKE_SCREENSHOT_PROVIDED_IMAGE;
 
+import static com.android.launcher3.util.Executors.MAINTENANCE_EXECUTOR;
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
-import static com.android.launcher3.util.Executors.THREAD_POOL_EXECUTOR;
 import static com.android.launcher3.util.Executors.UI_HELPER_EXECUTOR;
 
 import android.app.Activity;
@@ -328,7 +328,7 @@ public class ImageActionUtils {
     }
 
     private static void clearOldCacheFiles(Context context) {
-        THREAD_POOL_EXECUTOR.execute(() -> {
+        MAINTENANCE_EXECUTOR.execute(() -> {
             File parent = new File(context.getCacheDir(), SUB_FOLDER);
             File[] files = parent.listFiles((File f, String s) -> s.startsWith(BASE_NAME));
             if (files != null) {
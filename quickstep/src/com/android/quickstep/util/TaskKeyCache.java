@@ -17,6 +17,7 @@ package com.android.quickstep.util;
 
 import com.android.systemui.shared.recents.model.Task;
 
+import java.io.PrintWriter;
 import java.util.function.Predicate;
 
 /**
@@ -72,6 +73,11 @@ public interface TaskKeyCache<V> {
      */
     int getSize();
 
+    /**
+     * Dumps the state of the cache.
+     */
+    default void dump(String prefix, PrintWriter writer) { }
+
     class Entry<V> {
 
         final Task.TaskKey mKey;
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import com.android.launcher3.util.CancellableTask;
+import com.android.launcher3.util.IntSet;
+import com.android.quickstep.TaskIconCache;
+import com.android.quickstep.TaskThumbnailCache;
+import com.android.quickstep.TaskThumbnailCache.HighResLoadingState;
+import com.android.systemui.shared.recents.model.Task;
+import com.android.systemui.shared.recents.model.Task.TaskKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads the thumbnails and icons of the tasks a fling in recents is predicted to land on, before
+ * they become visible. Low-res thumbnails are loaded first so that something can be shown as soon
+ * as possible, followed by the high-res ones. Like the visible tasks, high-res thumbnails are only
+ * loaded while the {@link HighResLoadingState} is enabled, those of the tasks prefetched during a
+ * fast fling are loaded once it slows down.
+ *
+ * <p>Pending requests are cancelled when the fling changes direction, as the predicted tasks are
+ * then no longer on the way.
+ */
+@UiThread
+public class TaskThumbnailPrefetcher {
+
+    private final TaskThumbnailCache mThumbnailCache;
+    private final HighResLoadingState mHighResLoadingState;
+    private final TaskIconCache mIconCache;
+
+    private final ArrayList<CancellableTask> mRequests = new ArrayList<>();
+    private final IntSet mPrefetchedTaskIds = new IntSet();
+    // Tasks whose low-res thumbnail was loaded while high-res loading was disabled
+    private final ArrayList<TaskKey> mDeferredHighResKeys = new ArrayList<>();
+    private int mDirection;
+
+    public TaskThumbnailPrefetcher(TaskThumbnailCache thumbnailCache, TaskIconCache iconCache) {
+        mThumbnailCache = thumbnailCache;
+        mHighResLoadingState = thumbnailCache.getHighResLoadingState();
+        mIconCache = iconCache;
+    }
+
+    /**
+     * Prefetches the data of {@param destinationTasks}, the tasks around the predicted end of a
+     * fling in the given direction.
+     *
+     * @param direction the sign of the fling velocity
+     */
+    public void prefetch(int direction, List<Task> destinationTasks) {
+        if (direction != mDirection) {
+            cancel();
+            mDirection = direction;
+        }
+        for (Task task : destinationTasks) {
+            if (mPrefetchedTaskIds.contains(task.key.id)) {
+                continue;
+            }
+            mPrefetchedTaskIds.add(task.key.id);
+            addRequest(mThumbnailCache.prefetchThumbnail(task.key, /* lowResolution= */ true,
+                    () -> onLowResLoaded(task.key)));
+            if (task.icon == null) {
+                addRequest(mIconCache.updateIconInBackground(task, t -> { }));
+            }
+        }
+    }
+
+    /**
+     * Loads the high-res thumbnails held back while high-res loading was disabled
+     */
+    public void onHighResLoadingStateChanged(boolean enabled) {
+        if (!enabled) {
+            return;
+        }
+        for (int i = 0; i < mDeferredHighResKeys.size(); i++) {
+            prefetchHighRes(mDeferredHighResKeys.get(i));
+        }
+        mDeferredHighResKeys.clear();
+    }
+
+    /**
+     * Forgets the prefetched tasks once the scroll settled, letting the pending requests finish
+     * as the tasks are likely to be shown.
+     */
+    public void onScrollFinished() {
+        mRequests.clear();
+        mPrefetchedTaskIds.clear();
+        mDirection = 0;
+    }
+
+    /**
+     * Cancels all the pending requests
+     */
+    public void cancel() {
+        for (int i = mRequests.size() - 1; i >= 0; i--) {
+            mRequests.get(i).cancel();
+        }
+        mDeferredHighResKeys.clear();
+        onScrollFinished();
+    }
+
+    private void onLowResLoaded(TaskKey key) {
+        if (mHighResLoadingState.isEnabled()) {
+            prefetchHighRes(key);
+        } else {
+            mDeferredHighResKeys.add(key);
+        }
+    }
+
+    private void prefetchHighRes(TaskKey key) {
+        addRequest(mThumbnailCache.prefetchThumbnail(key, /* lowResolution= */ false,
+                /* onLoaded= */ null));
+    }
+
+    private void addRequest(@Nullable CancellableTask request) {
+        if (request != null) {
+            mRequests.add(request);
+        }
+    }
+}
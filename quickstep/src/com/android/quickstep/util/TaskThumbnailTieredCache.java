@@ -0,0 +1,411 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import android.graphics.Bitmap;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.systemui.shared.recents.model.Task;
+import com.android.systemui.shared.recents.model.ThumbnailData;
+
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * A thumbnail cache budgeted in bytes, with separate tiers for high-res and low-res thumbnails.
+ *
+ * <p>When the high-res tier is over budget, its least recently used (or least recently active)
+ * entries are evicted and reported to the {@link DowngradeListener}, so that they can be replaced
+ * with their low-res version through {@link #putDowngraded} instead of being dropped. The low-res
+ * entry keeps the eviction rank of the high-res one. The total number of entries is also
+ * capped by {@link #getMaxSize()}, which drives how many thumbnails are preloaded.
+ *
+ * <p>Reads don't take a lock, only writes and evictions are serialized.
+ */
+public class TaskThumbnailTieredCache implements TaskKeyCache<ThumbnailData> {
+
+    private static final String TAG = "TaskThumbnailTieredCache";
+
+    /**
+     * Listener notified when a high-res thumbnail is evicted for lack of space
+     */
+    public interface DowngradeListener {
+        void onHighResEvicted(Task.TaskKey key);
+    }
+
+    private final ConcurrentHashMap<Integer, CacheEntry> mMap = new ConcurrentHashMap<>();
+    private final Object mWriteLock = new Object();
+    private final AtomicLong mAccessClock = new AtomicLong();
+
+    private final long mHighResBudgetBytes;
+    private final long mLowResBudgetBytes;
+    private final boolean mEvictByLastActiveTime;
+    private final ToLongFunction<ThumbnailData> mSizeOf;
+
+    private volatile int mMaxSize;
+    @Nullable
+    private DowngradeListener mDowngradeListener;
+
+    // Guarded by mWriteLock
+    private long mHighResBytes;
+    private long mLowResBytes;
+    // High-res entries evicted for lack of space whose low-res version may still be put, by task
+    // id. Guarded by mWriteLock.
+    private final LinkedHashMap<Integer, CacheEntry> mPendingDowngrades =
+            new LinkedHashMap<Integer, CacheEntry>() {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, CacheEntry> eldest) {
+                    // Downgrades which are never put or cancelled don't accumulate
+                    return size() > mMaxSize;
+                }
+            };
+
+    private final AtomicLong mHitCount = new AtomicLong();
+    private final AtomicLong mMissCount = new AtomicLong();
+    private final AtomicLong mEvictionCount = new AtomicLong();
+    private final AtomicLong mDowngradeCount = new AtomicLong();
+
+    /**
+     * @param maxSize maximum number of entries across both tiers
+     * @param evictByLastActiveTime if true, the entries of the least recently active tasks are
+     *                              evicted first, otherwise the least recently used ones are.
+     */
+    public TaskThumbnailTieredCache(int maxSize, long highResBudgetBytes, long lowResBudgetBytes,
+            boolean evictByLastActiveTime) {
+        this(maxSize, highResBudgetBytes, lowResBudgetBytes, evictByLastActiveTime,
+                TaskThumbnailTieredCache::getByteSize);
+    }
+
+    @VisibleForTesting
+    TaskThumbnailTieredCache(int maxSize, long highResBudgetBytes, long lowResBudgetBytes,
+            boolean evictByLastActiveTime, ToLongFunction<ThumbnailData> sizeOf) {
+        mMaxSize = maxSize;
+        mHighResBudgetBytes = highResBudgetBytes;
+        mLowResBudgetBytes = lowResBudgetBytes;
+        mEvictByLastActiveTime = evictByLastActiveTime;
+        mSizeOf = sizeOf;
+    }
+
+    public void setDowngradeListener(@Nullable DowngradeListener listener) {
+        mDowngradeListener = listener;
+    }
+
+    @Override
+    public void evictAll() {
+        synchronized (mWriteLock) {
+            mMap.clear();
+            mPendingDowngrades.clear();
+            mHighResBytes = 0;
+            mLowResBytes = 0;
+        }
+    }
+
+    @Override
+    public void remove(Task.TaskKey key) {
+        if (key == null) {
+            return;
+        }
+        synchronized (mWriteLock) {
+            CacheEntry entry = mMap.remove(key.id);
+            if (entry != null) {
+                removeBytes(entry);
+            }
+            mPendingDowngrades.remove(key.id);
+        }
+    }
+
+    @Override
+    public void removeAll(Predicate<Task.TaskKey> keyCheck) {
+        synchronized (mWriteLock) {
+            mPendingDowngrades.values().removeIf(entry -> keyCheck.test(entry.key));
+            mMap.values().removeIf(entry -> {
+                if (keyCheck.test(entry.key)) {
+                    removeBytes(entry);
+                    return true;
+                }
+                return false;
+            });
+        }
+    }
+
+    @Override
+    public ThumbnailData getAndInvalidateIfModified(Task.TaskKey key) {
+        CacheEntry entry = mMap.get(key.id);
+        if (entry != null && entry.key.windowingMode == key.windowingMode
+                && entry.key.lastActiveTime == key.lastActiveTime) {
+            entry.lastAccess = mAccessClock.incrementAndGet();
+            mHitCount.incrementAndGet();
+            return entry.value;
+        }
+        mMissCount.incrementAndGet();
+        if (entry != null) {
+            synchronized (mWriteLock) {
+                // Only remove the stale entry, not one put since it was read
+                if (mMap.remove(key.id, entry)) {
+                    removeBytes(entry);
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void put(Task.TaskKey key, ThumbnailData value) {
+        if (key == null || value == null) {
+            Log.e(TAG, "Unexpected null key or value: " + key + ", " + value);
+            return;
+        }
+        List<Task.TaskKey> downgraded;
+        synchronized (mWriteLock) {
+            putLocked(key, value, mAccessClock.incrementAndGet());
+            downgraded = trimLocked(mMaxSize, mMap.get(key.id));
+        }
+        notifyDowngraded(downgraded);
+    }
+
+    /**
+     * Adds an entry to the cache only if there is no entry for the task yet
+     */
+    public void putIfAbsent(Task.TaskKey key, ThumbnailData value) {
+        List<Task.TaskKey> downgraded;
+        synchronized (mWriteLock) {
+            if (mMap.containsKey(key.id)) {
+                return;
+            }
+            putLocked(key, value, mAccessClock.incrementAndGet());
+            downgraded = trimLocked(mMaxSize, mMap.get(key.id));
+        }
+        notifyDowngraded(downgraded);
+    }
+
+    /**
+     * Adds the low-res version of a thumbnail reported to the {@link DowngradeListener}, ranked
+     * for eviction like the high-res one was. Nothing is added if the task was removed, the cache
+     * cleared, or a new thumbnail put for the task since the eviction.
+     */
+    public void putDowngraded(Task.TaskKey key, ThumbnailData lowRes) {
+        List<Task.TaskKey> downgraded;
+        synchronized (mWriteLock) {
+            CacheEntry evicted = mPendingDowngrades.remove(key.id);
+            if (evicted == null || mMap.containsKey(key.id)) {
+                return;
+            }
+            putLocked(evicted.key, lowRes, evicted.lastAccess);
+            // Not kept over the others, it was already the first one to go
+            downgraded = trimLocked(mMaxSize, null);
+        }
+        notifyDowngraded(downgraded);
+    }
+
+    /**
+     * Drops a downgrade reported to the {@link DowngradeListener} whose low-res version won't be
+     * put.
+     */
+    public void cancelDowngrade(Task.TaskKey key) {
+        synchronized (mWriteLock) {
+            mPendingDowngrades.remove(key.id);
+        }
+    }
+
+    @Override
+    public void updateIfAlreadyInCache(int taskId, ThumbnailData data) {
+        List<Task.TaskKey> downgraded;
+        synchronized (mWriteLock) {
+            CacheEntry entry = mMap.get(taskId);
+            if (entry == null) {
+                return;
+            }
+            putLocked(entry.key, data, mAccessClock.incrementAndGet());
+            downgraded = trimLocked(mMaxSize, mMap.get(taskId));
+        }
+        notifyDowngraded(downgraded);
+    }
+
+    @Override
+    public void updateCacheSizeAndRemoveExcess(int cacheSize) {
+        List<Task.TaskKey> downgraded;
+        synchronized (mWriteLock) {
+            mMaxSize = cacheSize;
+            downgraded = trimLocked(cacheSize, null);
+        }
+        notifyDowngraded(downgraded);
+    }
+
+    @Override
+    public int getMaxSize() {
+        return mMaxSize;
+    }
+
+    @Override
+    public int getSize() {
+        return mMap.size();
+    }
+
+    @Override
+    public void dump(String prefix, PrintWriter writer) {
+        long highResBytes;
+        long lowResBytes;
+        synchronized (mWriteLock) {
+            highResBytes = mHighResBytes;
+            lowResBytes = mLowResBytes;
+        }
+        writer.println(prefix + "TaskThumbnailTieredCache:"
+                + " entries=" + getSize() + "/" + mMaxSize
+                + " highRes=" + highResBytes / 1024 + "/" + mHighResBudgetBytes / 1024 + "KB"
+                + " lowRes=" + lowResBytes / 1024 + "/" + mLowResBudgetBytes / 1024 + "KB");
+        writer.println(prefix + "  hits=" + mHitCount.get()
+                + " misses=" + mMissCount.get()
+                + " evictions=" + mEvictionCount.get()
+                + " downgrades=" + mDowngradeCount.get());
+    }
+
+    @VisibleForTesting
+    long getHighResBytes() {
+        synchronized (mWriteLock) {
+            return mHighResBytes;
+        }
+    }
+
+    @VisibleForTesting
+    long getLowResBytes() {
+        synchronized (mWriteLock) {
+            return mLowResBytes;
+        }
+    }
+
+    private void putLocked(Task.TaskKey key, ThumbnailData value, long lastAccess) {
+        CacheEntry entry = new CacheEntry(key, value, mSizeOf.applyAsLong(value), lastAccess);
+        // A new thumbnail supersedes any low-res version still loading
+        mPendingDowngrades.remove(key.id);
+        CacheEntry old = mMap.put(key.id, entry);
+        if (old != null) {
+            removeBytes(old);
+        }
+        if (entry.highRes) {
+            mHighResBytes += entry.bytes;
+        } else {
+            mLowResBytes += entry.bytes;
+        }
+    }
+
+    private void removeBytes(CacheEntry entry) {
+        if (entry.highRes) {
+            mHighResBytes -= entry.bytes;
+        } else {
+            mLowResBytes -= entry.bytes;
+        }
+    }
+
+    /**
+     * Evicts entries until the count and both tiers are within budget, never evicting
+     * {@param keep}.
+     *
+     * @return the keys of the high-res entries which were evicted to fit the high-res budget
+     */
+    @Nullable
+    private List<Task.TaskKey> trimLocked(int maxSize, @Nullable CacheEntry keep) {
+        CacheEntry victim;
+        while (mMap.size() > maxSize && (victim = findVictim(null, keep)) != null) {
+            evictLocked(victim);
+        }
+        List<Task.TaskKey> downgraded = null;
+        while (mHighResBytes > mHighResBudgetBytes
+                && (victim = findVictim(Boolean.TRUE, keep)) != null) {
+            evictLocked(victim);
+            mPendingDowngrades.put(victim.key.id, victim);
+            if (downgraded == null) {
+                downgraded = new ArrayList<>();
+            }
+            downgraded.add(victim.key);
+        }
+        while (mLowResBytes > mLowResBudgetBytes
+                && (victim = findVictim(Boolean.FALSE, keep)) != null) {
+            evictLocked(victim);
+        }
+        return downgraded;
+    }
+
+    /**
+     * Returns the entry to evict first in the given tier, or in any tier if {@param highRes} is
+     * null.
+     */
+    @Nullable
+    private CacheEntry findVictim(@Nullable Boolean highRes, @Nullable CacheEntry keep) {
+        CacheEntry victim = null;
+        for (CacheEntry entry : mMap.values()) {
+            if (entry == keep || (highRes != null && entry.highRes != highRes)) {
+                continue;
+            }
+            if (victim == null || getEvictionRank(entry) < getEvictionRank(victim)) {
+                victim = entry;
+            }
+        }
+        return victim;
+    }
+
+    private long getEvictionRank(CacheEntry entry) {
+        return mEvictByLastActiveTime ? entry.key.lastActiveTime : entry.lastAccess;
+    }
+
+    private void evictLocked(CacheEntry entry) {
+        mMap.remove(entry.key.id);
+        removeBytes(entry);
+        mEvictionCount.incrementAndGet();
+    }
+
+    private void notifyDowngraded(@Nullable List<Task.TaskKey> downgraded) {
+        DowngradeListener listener = mDowngradeListener;
+        if (downgraded == null || listener == null) {
+            return;
+        }
+        mDowngradeCount.addAndGet(downgraded.size());
+        for (Task.TaskKey key : downgraded) {
+            listener.onHighResEvicted(key);
+        }
+    }
+
+    private static long getByteSize(ThumbnailData data) {
+        Bitmap bitmap = data.getThumbnail();
+        return bitmap == null ? 0 : bitmap.getAllocationByteCount();
+    }
+
+    private static class CacheEntry {
+
+        final Task.TaskKey key;
+        final ThumbnailData value;
+        final long bytes;
+        final boolean highRes;
+        volatile long lastAccess;
+
+        CacheEntry(Task.TaskKey key, ThumbnailData value, long bytes, long lastAccess) {
+            this.key = key;
+            this.value = value;
+            this.bytes = bytes;
+            this.highRes = !value.reducedResolution;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
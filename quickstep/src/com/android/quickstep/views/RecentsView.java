@@ -210,6 +210,7 @@ import com.android.quickstep.util.SplitSelectStateController;
 import com.android.quickstep.util.SurfaceTransaction;
 import com.android.quickstep.util.SurfaceTransactionApplier;
 import com.android.quickstep.util.TaskGridNavHelper;
+import com.android.quickstep.util.TaskThumbnailPrefetcher;
 import com.android.quickstep.util.TaskViewSimulator;
 import com.android.quickstep.util.TaskVisualsChangeListener;
 import com.android.quickstep.util.TransformParams;
@@ -509,6 +510,9 @@ public abstract class RecentsView<CONTAINER_TYPE extends Context & RecentsViewCo
     private final float mFastFlingVelocity;
     private final int mScrollHapticMinGapMillis;
     private final RecentsModel mModel;
+    private final TaskThumbnailPrefetcher mThumbnailPrefetcher;
+    // Reused by every scroll frame to collect the tasks to prefetch
+    private final ArrayList<Task> mPrefetchTasks = new ArrayList<>();
     private final int mSplitPlaceholderSize;
     private final int mSplitPlaceholderInset;
     private final ClearAllButton mClearAllButton;
@@ -817,6 +821,8 @@ public abstract class RecentsView<CONTAINER_TYPE extends Context & RecentsViewCo
                 .getDimensionPixelSize(R.dimen.recents_fast_fling_velocity);
         mModel = RecentsModel.INSTANCE.get(context);
         mIdp = InvariantDeviceProfile.INSTANCE.get(context);
+        mThumbnailPrefetcher = new TaskThumbnailPrefetcher(
+                mModel.getThumbnailCache(), mModel.getIconCache());
         if (enableRefactorTaskThumbnail()) {
             mTasksRepository = new TasksRepository(
                     mModel, mModel.getThumbnailCache(), mModel.getIconCache());
@@ -2280,11 +2286,15 @@ public abstract class RecentsView<CONTAINER_TYPE extends Context & RecentsViewCo
             if (scrolling) {
                 // Check if we are flinging quickly to disable high res thumbnail loading
                 isFlingingFast = mScroller.getCurrVelocity() > mFastFlingVelocity;
+                prefetchScrollDestination();
             }
 
             // After scrolling, update the visible task's data
             loadVisibleTaskData(TaskView.FLAG_UPDATE_ALL);
         }
+        if (!scrolling) {
+            mThumbnailPrefetcher.onScrollFinished();
+        }
 
         // Update ActionsView's visibility when scroll changes.
         updateActionsViewFocusedScroll();
@@ -2294,6 +2304,74 @@ public abstract class RecentsView<CONTAINER_TYPE extends Context & RecentsViewCo
         return scrolling;
     }
 
+    /**
+     * Prefetches the data of the tasks around the position the current scroll is predicted to
+     * end at, which are not loaded yet.
+     */
+    private void prefetchScrollDestination() {
+        if (mTaskListChangeId == -1) {
+            return;
+        }
+        int finalScroll = mScroller.getFinalX();
+        int direction = Integer.signum(finalScroll - mScroller.getCurrX());
+        if (direction == 0) {
+            return;
+        }
+
+        int destinationPage = getDestinationPage(finalScroll);
+        if (destinationPage == INVALID_PAGE) {
+            return;
+        }
+
+        mPrefetchTasks.clear();
+        if (showAsGrid()) {
+            int pageOrientedSize = getPagedOrientationHandler().getMeasuredSize(this);
+            int end = finalScroll + pageOrientedSize;
+            addGridTasksToPrefetch(destinationPage, -1, finalScroll, end);
+            addGridTasksToPrefetch(destinationPage + 1, 1, finalScroll, end);
+        } else {
+            for (int i = destinationPage - 1; i <= destinationPage + 1; i++) {
+                TaskView taskView = getTaskViewAt(i);
+                if (taskView != null) {
+                    addTasksToPrefetch(taskView);
+                }
+            }
+        }
+        mThumbnailPrefetcher.prefetch(direction, mPrefetchTasks);
+        mPrefetchTasks.clear();
+    }
+
+    /**
+     * Adds the tasks of the grid within the given bounds, walking from {@param startIndex} by
+     * {@param step} until a task of each row was found past the bounds.
+     */
+    private void addGridTasksToPrefetch(int startIndex, int step, int start, int end) {
+        boolean topRowPassed = false;
+        boolean bottomRowPassed = false;
+        int taskViewCount = getTaskViewCount();
+        for (int i = startIndex; i >= 0 && i < taskViewCount && !(topRowPassed && bottomRowPassed);
+                i += step) {
+            TaskView taskView = requireTaskViewAt(i);
+            if (isTaskViewWithinBounds(taskView, start, end)) {
+                addTasksToPrefetch(taskView);
+            } else if (mTopRowIdSet.contains(taskView.getTaskViewId())) {
+                topRowPassed = true;
+            } else {
+                bottomRowPassed = true;
+            }
+        }
+    }
+
+    private void addTasksToPrefetch(TaskView taskView) {
+        for (TaskContainer container : taskView.getTaskContainers()) {
+            Task task = container.getTask();
+            // Visible tasks are already loaded by loadVisibleTaskData
+            if (!mHasVisibleTaskData.get(task.key.id)) {
+                mPrefetchTasks.add(task);
+            }
+        }
+    }
+
     private void updateActionsViewFocusedScroll() {
         if (showAsGrid()) {
             float actionsViewAlphaValue = isFocusedTaskInExpectedScrollPosition() ? 1 : 0;
@@ -2489,6 +2567,7 @@ public abstract class RecentsView<CONTAINER_TYPE extends Context & RecentsViewCo
                 }
             }
         }
+        mThumbnailPrefetcher.onHighResLoadingStateChanged(enabled);
     }
 
     public void startHome() {
@@ -2537,6 +2616,7 @@ public abstract class RecentsView<CONTAINER_TYPE extends Context & RecentsViewCo
 
         // These are relatively expensive and don't need to be done this frame (RecentsView isn't
         // visible anyway), so defer by a frame to get off the critical path, e.g. app to home.
+        mThumbnailPrefetcher.cancel();
         post(() -> {
             unloadVisibleTaskData(TaskView.FLAG_UPDATE_ALL);
             setCurrentPage(0);
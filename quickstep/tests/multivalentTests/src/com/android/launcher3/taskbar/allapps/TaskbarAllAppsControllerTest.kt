@@ -130,6 +130,7 @@ class TaskbarAllAppsControllerTest {
                 PackageUserKey.fromItemInfo(TEST_APPS[0]),
                 NotificationKeyData("key"),
             )
+            taskbarUnitTestRule.activityContext.popupDataProvider.flushNotificationDots()
         }
 
         // Ensure the recycler view fully inflates before trying to grab an icon.
@@ -155,6 +156,7 @@ class TaskbarAllAppsControllerTest {
             PackageUserKey.fromItemInfo(TEST_PREDICTED_APPS[0]),
             NotificationKeyData("key"),
         )
+        taskbarUnitTestRule.activityContext.popupDataProvider.flushNotificationDots()
 
         val predictionRowView =
             overlayController
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static com.android.quickstep.util.ActiveGestureLog.MAX_GESTURES_TRACKED;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.quickstep.util.ActiveGestureLog.CompoundString;
+import com.android.quickstep.util.ActiveGestureLog.EventEntry;
+import com.android.quickstep.util.ActiveGestureLog.EventLog;
+
+import org.junit.Test;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.List;
+
+@SmallTest
+public class ActiveGestureLogTest {
+
+    private final ActiveGestureLog mLog = new ActiveGestureLog();
+
+    @Test
+    public void duplicateEvents_areCollapsedIntoOneEntry() {
+        mLog.addLog("down");
+        mLog.addLog("move");
+        mLog.addLog("move");
+        mLog.addLog("move");
+        mLog.addLog("up");
+
+        List<EventEntry> entries = getOnlyLog().eventEntries;
+        assertEquals(3, entries.size());
+        assertEquals("move", entries.get(1).getMessage());
+        assertEquals(2, entries.get(1).getDuplicateCount());
+        assertEquals(0, entries.get(2).getDuplicateCount());
+    }
+
+    @Test
+    public void eventsWithOtherExtras_areNotCollapsed() {
+        mLog.addLog("progress", 1);
+        mLog.addLog("progress", 2);
+        mLog.addLog("visible", true);
+        mLog.addLog("visible", false);
+        mLog.addLog(new CompoundString("velocity=").append(3));
+        mLog.addLog(new CompoundString("velocity=").append(3));
+
+        List<EventEntry> entries = getOnlyLog().eventEntries;
+        assertEquals(5, entries.size());
+        assertEquals("progress: 1", entries.get(0).getMessage());
+        assertEquals("progress: 2", entries.get(1).getMessage());
+        assertEquals("visible: false", entries.get(3).getMessage());
+        assertEquals("velocity=3", entries.get(4).getMessage());
+        assertEquals(1, entries.get(4).getDuplicateCount());
+    }
+
+    @Test
+    public void newLogId_startsNewLog() {
+        int firstId = mLog.getLogId();
+        mLog.addLog("first");
+        mLog.incrementLogId();
+        mLog.addLog("first");
+
+        List<EventLog> logs = mLog.getLogsSnapshot();
+        assertEquals(2, logs.size());
+        assertEquals(firstId, logs.get(0).logId);
+        assertEquals(firstId + 1, logs.get(1).logId);
+        assertEquals(0, logs.get(1).eventEntries.get(0).getDuplicateCount());
+    }
+
+    @Test
+    public void oldestSlot_isReusedWithFreshEntries() {
+        int firstId = mLog.getLogId();
+        for (int i = 0; i < MAX_GESTURES_TRACKED; i++) {
+            for (int j = 0; j < 3; j++) {
+                mLog.addLog("gesture " + i + " event " + j);
+                mLog.addLog("gesture " + i + " event " + j);
+            }
+            mLog.incrementLogId();
+        }
+        // Overwrites the slot of the first gesture, recycling its entries
+        mLog.addLog("last");
+
+        List<EventLog> logs = mLog.getLogsSnapshot();
+        assertEquals(MAX_GESTURES_TRACKED, logs.size());
+        assertEquals(firstId + 1, logs.get(0).logId);
+        EventLog last = logs.get(logs.size() - 1);
+        assertEquals(firstId + MAX_GESTURES_TRACKED, last.logId);
+        assertEquals(1, last.eventEntries.size());
+        assertEquals("last", last.eventEntries.get(0).getMessage());
+        assertEquals(0, last.eventEntries.get(0).getDuplicateCount());
+
+        // The other logs are untouched by the recycling
+        EventLog second = logs.get(0);
+        assertEquals(3, second.eventEntries.size());
+        assertEquals("gesture 1 event 2", second.eventEntries.get(2).getMessage());
+        assertEquals(1, second.eventEntries.get(2).getDuplicateCount());
+    }
+
+    @Test
+    public void snapshot_isNotAffectedByLaterEvents() {
+        mLog.addLog("event");
+        List<EventLog> snapshot = mLog.getLogsSnapshot();
+
+        mLog.addLog("event");
+        for (int i = 0; i < MAX_GESTURES_TRACKED; i++) {
+            mLog.incrementLogId();
+            mLog.addLog("other");
+        }
+
+        EventEntry entry = snapshot.get(0).eventEntries.get(0);
+        assertEquals("event", entry.getMessage());
+        assertEquals(0, entry.getDuplicateCount());
+    }
+
+    @Test
+    public void dump_printsCollapsedEntries() {
+        mLog.addLog("move");
+        mLog.addLog("move");
+
+        StringWriter out = new StringWriter();
+        mLog.dump("", new PrintWriter(out));
+
+        assertTrue(out.toString().contains("move & 1 similar events"));
+    }
+
+    private EventLog getOnlyLog() {
+        List<EventLog> logs = mLog.getLogsSnapshot();
+        assertEquals(1, logs.size());
+        return logs.get(0);
+    }
+}
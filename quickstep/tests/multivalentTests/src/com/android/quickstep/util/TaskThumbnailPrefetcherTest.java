@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.graphics.drawable.ColorDrawable;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.util.CancellableTask;
+import com.android.quickstep.TaskIconCache;
+import com.android.quickstep.TaskThumbnailCache;
+import com.android.quickstep.TaskThumbnailCache.HighResLoadingState;
+import com.android.systemui.shared.recents.model.Task;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@SmallTest
+public class TaskThumbnailPrefetcherTest {
+
+    @Mock
+    private TaskThumbnailCache mThumbnailCache;
+    @Mock
+    private HighResLoadingState mHighResLoadingState;
+    @Mock
+    private TaskIconCache mIconCache;
+
+    private TaskThumbnailPrefetcher mPrefetcher;
+
+    @Before
+    public void setup() {
+        MockitoAnnotations.initMocks(this);
+        when(mThumbnailCache.getHighResLoadingState()).thenReturn(mHighResLoadingState);
+        when(mThumbnailCache.prefetchThumbnail(any(), anyBoolean(), any()))
+                .thenAnswer(invocation -> mock(CancellableTask.class));
+        mPrefetcher = new TaskThumbnailPrefetcher(mThumbnailCache, mIconCache);
+    }
+
+    @Test
+    public void prefetch_highResEnabled_loadsHighResAfterLowRes() {
+        when(mHighResLoadingState.isEnabled()).thenReturn(true);
+        Task task = newTask(1);
+
+        mPrefetcher.prefetch(1, Collections.singletonList(task));
+        verify(mThumbnailCache, never()).prefetchThumbnail(eq(task.key), eq(false), any());
+
+        onLowResLoaded(task);
+        verify(mThumbnailCache).prefetchThumbnail(eq(task.key), eq(false), isNull());
+    }
+
+    @Test
+    public void prefetch_highResDisabled_defersHighResUntilEnabled() {
+        when(mHighResLoadingState.isEnabled()).thenReturn(false);
+        Task task1 = newTask(1);
+        Task task2 = newTask(2);
+
+        mPrefetcher.prefetch(1, Arrays.asList(task1, task2));
+        onLowResLoaded(task1);
+        onLowResLoaded(task2);
+        mPrefetcher.onHighResLoadingStateChanged(false);
+        verify(mThumbnailCache, never()).prefetchThumbnail(any(), eq(false), any());
+
+        when(mHighResLoadingState.isEnabled()).thenReturn(true);
+        mPrefetcher.onHighResLoadingStateChanged(true);
+        verify(mThumbnailCache).prefetchThumbnail(eq(task1.key), eq(false), isNull());
+        verify(mThumbnailCache).prefetchThumbnail(eq(task2.key), eq(false), isNull());
+
+        // The deferred loads are only issued once
+        mPrefetcher.onHighResLoadingStateChanged(true);
+        verify(mThumbnailCache, times(2)).prefetchThumbnail(any(), eq(false), any());
+    }
+
+    @Test
+    public void cancel_dropsDeferredHighResLoads() {
+        when(mHighResLoadingState.isEnabled()).thenReturn(false);
+        Task task = newTask(1);
+        mPrefetcher.prefetch(1, Collections.singletonList(task));
+        onLowResLoaded(task);
+
+        mPrefetcher.cancel();
+        mPrefetcher.onHighResLoadingStateChanged(true);
+
+        verify(mThumbnailCache, never()).prefetchThumbnail(any(), eq(false), any());
+    }
+
+    @Test
+    public void prefetch_sameTask_loadedOncePerScroll() {
+        Task task = newTask(1);
+
+        mPrefetcher.prefetch(1, Collections.singletonList(task));
+        mPrefetcher.prefetch(1, Collections.singletonList(task));
+        verify(mThumbnailCache, times(1)).prefetchThumbnail(eq(task.key), eq(true), any());
+        verify(mIconCache, never()).updateIconInBackground(any(), any());
+
+        mPrefetcher.onScrollFinished();
+        mPrefetcher.prefetch(-1, Collections.singletonList(task));
+        verify(mThumbnailCache, times(2)).prefetchThumbnail(eq(task.key), eq(true), any());
+    }
+
+    private void onLowResLoaded(Task task) {
+        ArgumentCaptor<Runnable> onLoaded = ArgumentCaptor.forClass(Runnable.class);
+        verify(mThumbnailCache).prefetchThumbnail(eq(task.key), eq(true), onLoaded.capture());
+        onLoaded.getValue().run();
+    }
+
+    private static Task newTask(int id) {
+        Task task = new Task(new Task.TaskKey(id, 0, new Intent(),
+                new ComponentName("", ""), 0, id));
+        // Icons are already loaded, only thumbnails are prefetched
+        task.icon = new ColorDrawable();
+        return task;
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.quickstep.util;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
+
+import android.content.ComponentName;
+import android.content.Intent;
+
+import androidx.test.filters.SmallTest;
+
+import com.android.systemui.shared.recents.model.Task;
+import com.android.systemui.shared.recents.model.ThumbnailData;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@SmallTest
+public class TaskThumbnailTieredCacheTest {
+
+    private static final long ENTRY_BYTES = 100;
+
+    @Test
+    public void highResOverBudget_evictsLeastRecentlyUsedAndReportsDowngrade() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 10,
+                /* highResBudget= */ 2 * ENTRY_BYTES, /* lowResBudget= */ 10 * ENTRY_BYTES);
+        List<Task.TaskKey> downgraded = new ArrayList<>();
+        cache.setDowngradeListener(downgraded::add);
+        Task.TaskKey key1 = newKey(1, 0);
+        Task.TaskKey key2 = newKey(2, 0);
+        Task.TaskKey key3 = newKey(3, 0);
+        ThumbnailData data1 = newThumbnail(/* lowRes= */ false);
+        cache.put(key1, data1);
+        cache.put(key2, newThumbnail(/* lowRes= */ false));
+        // Use key1 so that key2 becomes the least recently used
+        cache.getAndInvalidateIfModified(key1);
+
+        cache.put(key3, newThumbnail(/* lowRes= */ false));
+
+        assertEquals(2, cache.getSize());
+        assertSame(data1, cache.getAndInvalidateIfModified(key1));
+        assertNull(cache.getAndInvalidateIfModified(key2));
+        assertEquals(2 * ENTRY_BYTES, cache.getHighResBytes());
+        assertEquals(1, downgraded.size());
+        assertSame(key2, downgraded.get(0));
+    }
+
+    @Test
+    public void lowResOverBudget_evictsWithoutDowngrade() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 10,
+                /* highResBudget= */ 10 * ENTRY_BYTES, /* lowResBudget= */ ENTRY_BYTES);
+        List<Task.TaskKey> downgraded = new ArrayList<>();
+        cache.setDowngradeListener(downgraded::add);
+        cache.put(newKey(1, 0), newThumbnail(/* lowRes= */ true));
+        cache.put(newKey(2, 0), newThumbnail(/* lowRes= */ true));
+
+        assertEquals(1, cache.getSize());
+        assertEquals(ENTRY_BYTES, cache.getLowResBytes());
+        assertEquals(0, downgraded.size());
+    }
+
+    @Test
+    public void tiersAreBudgetedSeparately() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 10,
+                /* highResBudget= */ ENTRY_BYTES, /* lowResBudget= */ ENTRY_BYTES);
+        cache.put(newKey(1, 0), newThumbnail(/* lowRes= */ false));
+        cache.put(newKey(2, 0), newThumbnail(/* lowRes= */ true));
+
+        assertEquals(2, cache.getSize());
+        assertEquals(ENTRY_BYTES, cache.getHighResBytes());
+        assertEquals(ENTRY_BYTES, cache.getLowResBytes());
+    }
+
+    @Test
+    public void replacingEntry_movesItsBytesToTheNewTier() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 10,
+                /* highResBudget= */ 10 * ENTRY_BYTES, /* lowResBudget= */ 10 * ENTRY_BYTES);
+        Task.TaskKey key = newKey(1, 0);
+        cache.put(key, newThumbnail(/* lowRes= */ true));
+        cache.put(key, newThumbnail(/* lowRes= */ false));
+
+        assertEquals(1, cache.getSize());
+        assertEquals(ENTRY_BYTES, cache.getHighResBytes());
+        assertEquals(0, cache.getLowResBytes());
+    }
+
+    @Test
+    public void overMaxSize_evictsByLastActiveTime() {
+        TaskThumbnailTieredCache cache = new TaskThumbnailTieredCache(/* maxSize= */ 2,
+                10 * ENTRY_BYTES, 10 * ENTRY_BYTES, /* evictByLastActiveTime= */ true,
+                data -> ENTRY_BYTES);
+        Task.TaskKey oldKey = newKey(1, 100);
+        cache.put(newKey(2, 300), newThumbnail(/* lowRes= */ true));
+        cache.put(oldKey, newThumbnail(/* lowRes= */ true));
+        cache.put(newKey(3, 200), newThumbnail(/* lowRes= */ true));
+
+        assertEquals(2, cache.getSize());
+        assertNull(cache.getAndInvalidateIfModified(oldKey));
+    }
+
+    @Test
+    public void putIfAbsent_keepsExistingEntry() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 10,
+                /* highResBudget= */ 10 * ENTRY_BYTES, /* lowResBudget= */ 10 * ENTRY_BYTES);
+        Task.TaskKey key = newKey(1, 0);
+        ThumbnailData data = newThumbnail(/* lowRes= */ false);
+        cache.put(key, data);
+
+        cache.putIfAbsent(key, newThumbnail(/* lowRes= */ true));
+
+        assertSame(data, cache.getAndInvalidateIfModified(key));
+        assertEquals(0, cache.getLowResBytes());
+    }
+
+    @Test
+    public void putDowngraded_keepsEvictionRankOfHighResEntry() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 2,
+                /* highResBudget= */ ENTRY_BYTES, /* lowResBudget= */ 10 * ENTRY_BYTES);
+        Task.TaskKey key1 = newKey(1, 0);
+        Task.TaskKey key2 = newKey(2, 0);
+        cache.put(key1, newThumbnail(/* lowRes= */ false));
+        // Evicts key1 to fit the high-res budget
+        cache.put(key2, newThumbnail(/* lowRes= */ false));
+        cache.putDowngraded(key1, newThumbnail(/* lowRes= */ true));
+        assertEquals(2, cache.getSize());
+        assertEquals(ENTRY_BYTES, cache.getLowResBytes());
+
+        // Over the max size, the downgraded entry goes first as it was the least recently used
+        Task.TaskKey key3 = newKey(3, 0);
+        cache.put(key3, newThumbnail(/* lowRes= */ true));
+
+        assertNull(cache.getAndInvalidateIfModified(key1));
+        assertEquals(2, cache.getSize());
+        assertEquals(ENTRY_BYTES, cache.getHighResBytes());
+    }
+
+    @Test
+    public void putDowngraded_droppedAfterRemovalOrClear() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 10,
+                /* highResBudget= */ ENTRY_BYTES, /* lowResBudget= */ 10 * ENTRY_BYTES);
+        Task.TaskKey key1 = newKey(1, 0);
+        Task.TaskKey key2 = newKey(2, 0);
+        cache.put(key1, newThumbnail(/* lowRes= */ false));
+        cache.put(key2, newThumbnail(/* lowRes= */ false));
+
+        cache.remove(key1);
+        cache.putDowngraded(key1, newThumbnail(/* lowRes= */ true));
+        assertNull(cache.getAndInvalidateIfModified(key1));
+
+        cache.put(key1, newThumbnail(/* lowRes= */ false));
+        cache.evictAll();
+        cache.putDowngraded(key2, newThumbnail(/* lowRes= */ true));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void putDowngraded_keptAfterUnrelatedRemoval() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 10,
+                /* highResBudget= */ ENTRY_BYTES, /* lowResBudget= */ 10 * ENTRY_BYTES);
+        Task.TaskKey key1 = newKey(1, 0);
+        Task.TaskKey key2 = newKey(2, 0);
+        cache.put(key1, newThumbnail(/* lowRes= */ false));
+        cache.put(key2, newThumbnail(/* lowRes= */ false));
+
+        cache.remove(newKey(3, 0));
+        cache.remove(key2);
+        ThumbnailData lowRes = newThumbnail(/* lowRes= */ true);
+        cache.putDowngraded(key1, lowRes);
+
+        assertSame(lowRes, cache.getAndInvalidateIfModified(key1));
+    }
+
+    @Test
+    public void putDowngraded_droppedOnceNewThumbnailIsPut() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 10,
+                /* highResBudget= */ ENTRY_BYTES, /* lowResBudget= */ 10 * ENTRY_BYTES);
+        Task.TaskKey key1 = newKey(1, 0);
+        cache.put(key1, newThumbnail(/* lowRes= */ false));
+        cache.put(newKey(2, 0), newThumbnail(/* lowRes= */ false));
+        ThumbnailData fresh = newThumbnail(/* lowRes= */ true);
+        cache.put(key1, fresh);
+
+        cache.putDowngraded(key1, newThumbnail(/* lowRes= */ true));
+
+        assertSame(fresh, cache.getAndInvalidateIfModified(key1));
+    }
+
+    @Test
+    public void remove_releasesBytes() {
+        TaskThumbnailTieredCache cache = newCache(/* maxSize= */ 10,
+                /* highResBudget= */ 10 * ENTRY_BYTES, /* lowResBudget= */ 10 * ENTRY_BYTES);
+        Task.TaskKey key1 = newKey(1, 0);
+        cache.put(key1, newThumbnail(/* lowRes= */ false));
+        cache.put(newKey(2, 0), newThumbnail(/* lowRes= */ true));
+
+        cache.remove(key1);
+        assertEquals(0, cache.getHighResBytes());
+        assertEquals(ENTRY_BYTES, cache.getLowResBytes());
+
+        cache.evictAll();
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getLowResBytes());
+    }
+
+    private static TaskThumbnailTieredCache newCache(int maxSize, long highResBudget,
+            long lowResBudget) {
+        return new TaskThumbnailTieredCache(maxSize, highResBudget, lowResBudget,
+                /* evictByLastActiveTime= */ false, data -> ENTRY_BYTES);
+    }
+
+    private static Task.TaskKey newKey(int id, long lastActiveTime) {
+        return new Task.TaskKey(id, 0, new Intent(), new ComponentName("", ""), 0,
+                lastActiveTime);
+    }
+
+    private static ThumbnailData newThumbnail(boolean lowRes) {
+        ThumbnailData data = new ThumbnailData();
+        data.reducedResolution = lowRes;
+        return data;
+    }
+}
@@ -83,6 +83,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Stack;
+import java.util.concurrent.TimeUnit;
 
 public class CellLayout extends ViewGroup {
     private static final String TAG = "CellLayout";
@@ -193,11 +194,14 @@ public class CellLayout extends ViewGroup {
 
     public static final float REORDER_PREVIEW_MAGNITUDE = 0.12f;
     public static final int REORDER_ANIMATION_DURATION = 150;
+    // Time a reorder can spend moving items around on a drag over event, to fit in a frame
+    private static final long REORDER_SEARCH_BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(4);
     @Thunk final float mReorderPreviewAnimationMagnitude;
 
     public final int[] mDirectionVector = new int[2];
 
     ItemConfiguration mPreviousSolution = null;
+    private ReorderAlgorithm mReorderAlgorithm;
 
     private final Rect mTempRect = new Rect();
 
@@ -487,7 +491,7 @@ public class CellLayout extends ViewGroup {
             debugPaint.setStrokeWidth(Utilities.dpToPx(1));
             for (int x = 0; x < mCountX; x++) {
                 for (int y = 0; y < mCountY; y++) {
-                    if (!mOccupied.cells[x][y]) {
+                    if (!mOccupied.isOccupied(x, y)) {
                         continue;
                     }
                     targetCell[0] = x;
@@ -1268,12 +1272,8 @@ public class CellLayout extends ViewGroup {
                 int xSize = -1;
                 if (!ignoreOccupied) {
                     // First, let's see if this thing fits anywhere
-                    for (int i = 0; i < minSpanX; i++) {
-                        for (int j = 0; j < minSpanY; j++) {
-                            if (mOccupied.cells[x + i][y + j]) {
-                                continue inner;
-                            }
-                        }
+                    if (!mOccupied.isRegionVacant(x, y, minSpanX, minSpanY)) {
+                        continue inner;
                     }
                     xSize = minSpanX;
                     ySize = minSpanY;
@@ -1287,7 +1287,8 @@ public class CellLayout extends ViewGroup {
                     while (!(hitMaxX && hitMaxY)) {
                         if (incX && !hitMaxX) {
                             for (int j = 0; j < ySize; j++) {
-                                if (x + xSize > countX -1 || mOccupied.cells[x + xSize][y + j]) {
+                                if (x + xSize > countX - 1
+                                        || mOccupied.isOccupied(x + xSize, y + j)) {
                                     // We can't move out horizontally
                                     hitMaxX = true;
                                 }
@@ -1297,7 +1298,8 @@ public class CellLayout extends ViewGroup {
                             }
                         } else if (!hitMaxY) {
                             for (int i = 0; i < xSize; i++) {
-                                if (y + ySize > countY - 1 || mOccupied.cells[x + i][y + ySize]) {
+                                if (y + ySize > countY - 1
+                                        || mOccupied.isOccupied(x + i, y + ySize)) {
                                     // We can't move out vertically
                                     hitMaxY = true;
                                 }
@@ -1557,6 +1559,19 @@ public class CellLayout extends ViewGroup {
         return new ReorderAlgorithm(this);
     }
 
+    /**
+     * Returns the algorithm used to reorder items while dragging over this layout. It is kept
+     * across drag over events so that the solutions it found can be reused while the items don't
+     * move.
+     */
+    private ReorderAlgorithm getReorderAlgorithm() {
+        if (mReorderAlgorithm == null) {
+            mReorderAlgorithm = createReorderAlgorithm();
+            mReorderAlgorithm.setSearchBudgetNanos(REORDER_SEARCH_BUDGET_NANOS);
+        }
+        return mReorderAlgorithm;
+    }
+
     protected ItemConfiguration findReorderSolution(int pixelX, int pixelY, int minSpanX,
             int minSpanY, int spanX, int spanY, int[] direction, View dragView, boolean decX) {
         ItemConfiguration configuration = new ItemConfiguration();
@@ -1564,7 +1579,7 @@ public class CellLayout extends ViewGroup {
         ReorderParameters parameters = new ReorderParameters(pixelX, pixelY, spanX, spanY, minSpanX,
                 minSpanY, dragView, configuration);
         int[] directionVector = direction != null ? direction : mDirectionVector;
-        return createReorderAlgorithm().findReorderSolution(parameters, directionVector, decX);
+        return getReorderAlgorithm().findReorderSolution(parameters, directionVector, decX);
     }
 
     public void copyCurrentStateToSolution(ItemConfiguration solution) {
@@ -1572,8 +1587,7 @@ public class CellLayout extends ViewGroup {
         for (int i = 0; i < childCount; i++) {
             View child = mShortcutsAndWidgets.getChildAt(i);
             CellLayoutLayoutParams lp = (CellLayoutLayoutParams) child.getLayoutParams();
-            solution.add(child,
-                    new CellAndSpan(lp.getCellX(), lp.getCellY(), lp.cellHSpan, lp.cellVSpan));
+            solution.set(child, lp.getCellX(), lp.getCellY(), lp.cellHSpan, lp.cellVSpan);
         }
     }
 
@@ -1596,7 +1610,7 @@ public class CellLayout extends ViewGroup {
             int spanX, int spanY, View dragView) {
         ItemConfiguration configuration = new ItemConfiguration();
         copyCurrentStateToSolution(configuration);
-        return createReorderAlgorithm().calculateReorder(
+        return getReorderAlgorithm().calculateReorder(
                 new ReorderParameters(pixelX, pixelY, spanX, spanY,  minSpanX, minSpanY, dragView,
                         configuration)
         );
@@ -1853,7 +1867,7 @@ public class CellLayout extends ViewGroup {
 
     public boolean isOccupied(int x, int y) {
         if (x >= 0 && x < mCountX && y >= 0 && y < mCountY) {
-            return mOccupied.cells[x][y];
+            return mOccupied.isOccupied(x, y);
         }
         if (BuildConfig.IS_STUDIO_BUILD) {
             throw new RuntimeException("Position exceeds the bound of this CellLayout");
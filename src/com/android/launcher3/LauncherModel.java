@@ -54,6 +54,7 @@ import com.android.launcher3.model.BgDataModel;
 import com.android.launcher3.model.BgDataModel.Callbacks;
 import com.android.launcher3.model.CacheDataUpdatedTask;
 import com.android.launcher3.model.ItemInstallQueue;
+import com.android.launcher3.model.LoaderMetrics;
 import com.android.launcher3.model.LoaderTask;
 import com.android.launcher3.model.ModelDbController;
 import com.android.launcher3.model.ModelDelegate;
@@ -66,6 +67,7 @@ import com.android.launcher3.model.ReloadStringCacheTask;
 import com.android.launcher3.model.ShortcutsChangedTask;
 import com.android.launcher3.model.UserLockStateChangedTask;
 import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.model.data.CollectionInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.pm.InstallSessionTracker;
@@ -73,6 +75,7 @@ import com.android.launcher3.pm.PackageInstallInfo;
 import com.android.launcher3.pm.UserCache;
 import com.android.launcher3.shortcuts.ShortcutRequest;
 import com.android.launcher3.util.IntSet;
+import com.android.launcher3.util.IntSparseArrayMap;
 import com.android.launcher3.util.ItemInfoMatcher;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.PackageUserKey;
@@ -137,6 +140,10 @@ public class LauncherModel implements InstallSessionTracker.Callback {
      */
     @NonNull
     private final BgDataModel mBgDataModel = new BgDataModel();
+    private final ModelWriter.UpdateQueue mWriterUpdateQueue =
+            new ModelWriter.UpdateQueue(this, mBgDataModel);
+
+    private final LoaderMetrics mLoaderMetrics = new LoaderMetrics();
 
     @NonNull
     private final ModelDelegate mModelDelegate;
@@ -174,6 +181,34 @@ public class LauncherModel implements InstallSessionTracker.Callback {
         return mModelDbController;
     }
 
+    /**
+     * Returns the timing and memory metrics of the recent loads
+     */
+    @NonNull
+    public LoaderMetrics getLoaderMetrics() {
+        return mLoaderMetrics;
+    }
+
+    /**
+     * Returns the list of all apps of the model. It is only updated, and must only be read, on
+     * the model thread.
+     */
+    @WorkerThread
+    @NonNull
+    public AllAppsList getAllAppsList() {
+        return mBgAllAppsList;
+    }
+
+    /**
+     * Returns the folders and app pairs of the model. They are only updated, and must only be
+     * read, on the model thread.
+     */
+    @WorkerThread
+    @NonNull
+    public IntSparseArrayMap<CollectionInfo> getCollections() {
+        return mBgDataModel.collections;
+    }
+
     public ModelLauncherCallbacks newModelCallbacks() {
         return new ModelLauncherCallbacks(this::enqueueModelUpdateTask);
     }
@@ -192,8 +227,8 @@ public class LauncherModel implements InstallSessionTracker.Callback {
     @NonNull
     public ModelWriter getWriter(final boolean verifyChanges, CellPosMapper cellPosMapper,
             @Nullable final Callbacks owner) {
-        return new ModelWriter(mApp.getContext(), this, mBgDataModel, verifyChanges, cellPosMapper,
-                owner);
+        return new ModelWriter(mApp.getContext(), this, mBgDataModel, mWriterUpdateQueue,
+                verifyChanges, cellPosMapper, owner);
     }
 
     /**
@@ -288,6 +323,8 @@ public class LauncherModel implements InstallSessionTracker.Callback {
      * not be called as DB updates are automatically followed by UI update
      */
     public void forceReload() {
+        // Write the queued item updates before they are read back from the DB
+        mWriterUpdateQueue.flush();
         synchronized (mLock) {
             // Stop any existing loaders first, so they don't set mModelLoaded to true later
             stopLoader();
@@ -356,6 +393,7 @@ public class LauncherModel implements InstallSessionTracker.Callback {
     }
 
     private boolean startLoader(@NonNull final Callbacks[] newCallbacks) {
+        mWriterUpdateQueue.flush();
         // Enable queue before starting loader. It will get disabled in Launcher#finishBindingItems
         ItemInstallQueue.INSTANCE.get(mApp.getContext())
                 .pauseModelPush(ItemInstallQueue.FLAG_LOADER_RUNNING);
@@ -592,6 +630,8 @@ public class LauncherModel implements InstallSessionTracker.Callback {
         if (mModelDestroyed) {
             return;
         }
+        // Keep the task after the item updates queued so far
+        mWriterUpdateQueue.flush();
         MODEL_EXECUTOR.execute(() -> {
             if (!isModelLoaded()) {
                 // Loader has not yet run.
@@ -600,6 +640,8 @@ public class LauncherModel implements InstallSessionTracker.Callback {
             ModelTaskController controller = new ModelTaskController(
                     mApp, mBgDataModel, mBgAllAppsList, this, MAIN_EXECUTOR);
             task.execute(controller, mBgDataModel, mBgAllAppsList);
+            // Only copies the items if the task changed them
+            mBgDataModel.publishSnapshot();
         });
     }
 
@@ -661,6 +703,7 @@ public class LauncherModel implements InstallSessionTracker.Callback {
         }
         mModelDelegate.dump(prefix, fd, writer, args);
         mBgDataModel.dump(prefix, fd, writer, args);
+        mLoaderMetrics.dump(prefix, writer);
     }
 
     /**
@@ -1357,7 +1357,7 @@ public class Workspace<T extends View & PageIndicator> extends PagedView<T>
     }
 
     protected void setWallpaperDimension() {
-        Executors.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+        Executors.MAINTENANCE_EXECUTOR.execute(new Runnable() {
             @Override
             public void run() {
                 final Point size = LauncherAppState.getIDP(getContext()).defaultWallpaperSize;
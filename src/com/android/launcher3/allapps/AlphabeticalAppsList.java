@@ -97,7 +97,8 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
     private final ArrayList<AdapterItem> mSearchResults = new ArrayList<>();
     private final SpannableString mPrivateProfileAppScrollerBadge;
     private BaseAllAppsAdapter<T> mAdapter;
-    private AppInfoComparator mAppNameComparator;
+    // All the apps from the store, kept sorted across updates
+    private final SortedAppList mSortedApps;
     private int mNumAppsPerRowAllApps;
     private int mNumAppRowsInAdapter;
     private Predicate<ItemInfo> mItemFilter;
@@ -107,7 +108,7 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
             WorkProfileManager workProfileManager, PrivateProfileManager privateProfileManager) {
         mAllAppsStore = appsStore;
         mActivityContext = ActivityContext.lookupContext(context);
-        mAppNameComparator = new AppInfoComparator(context);
+        mSortedApps = new SortedAppList(new AppInfoComparator(context));
         mWorkProviderManager = workProfileManager;
         mPrivateProviderManager = privateProfileManager;
         mNumAppsPerRowAllApps = mActivityContext.getDeviceProfile().numShownAllAppsColumns;
@@ -221,22 +222,31 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
                 mPrivateProviderManager.getAnimationRunning())) {
             return;
         }
-        // Sort the list of apps
+        // Sort the list of apps, only moving the apps which changed since the last update
         mApps.clear();
         mPrivateApps.clear();
+        mSortedApps.update(mAllAppsStore.getApps());
 
-        Stream<AppInfo> appSteam = Stream.of(mAllAppsStore.getApps());
-        Stream<AppInfo> privateAppStream = Stream.of(mAllAppsStore.getApps());
-
+        final Predicate<ItemInfo> appFilter;
+        final Predicate<ItemInfo> privateAppFilter;
         if (!hasSearchResults() && mItemFilter != null) {
-            appSteam = appSteam.filter(mItemFilter);
-            if (mPrivateProviderManager != null) {
-                privateAppStream = privateAppStream
-                        .filter(mPrivateProviderManager.getItemInfoMatcher());
-            }
+            appFilter = mItemFilter;
+            privateAppFilter = mPrivateProviderManager != null
+                    ? mPrivateProviderManager.getItemInfoMatcher() : null;
+        } else {
+            appFilter = null;
+            privateAppFilter = null;
         }
-        appSteam = appSteam.sorted(mAppNameComparator);
-        privateAppStream = privateAppStream.sorted(mAppNameComparator);
+        List<AppInfo> sortedApps = new ArrayList<>();
+        mSortedApps.forEach(info -> {
+            if (appFilter == null || appFilter.test(info)) {
+                sortedApps.add(info);
+            }
+            if (privateAppFilter == null || privateAppFilter.test(info)) {
+                mPrivateApps.add(info);
+            }
+        });
+        Stream<AppInfo> appSteam = sortedApps.stream();
 
         // As a special case for some languages (currently only Simplified Chinese), we may need to
         // coalesce sections
@@ -253,7 +263,6 @@ public class AlphabeticalAppsList<T extends Context & ActivityContext> implement
         }
 
         appSteam.forEachOrdered(mApps::add);
-        privateAppStream.forEachOrdered(mPrivateApps::add);
         // Recompose the set of adapter items from the current set of apps
         if (mSearchResults.isEmpty()) {
             updateAdapterItems();
@@ -18,12 +18,12 @@ package com.android.launcher3.allapps;
 import android.content.Context;
 import android.os.Process;
 import android.os.UserHandle;
-import android.text.TextUtils;
 
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.pm.UserCache;
 import com.android.launcher3.util.LabelComparator;
 
+import java.text.CollationKey;
 import java.util.Comparator;
 
 /**
@@ -43,8 +43,16 @@ public class AppInfoComparator implements Comparator<AppInfo> {
 
     @Override
     public int compare(AppInfo a, AppInfo b) {
+        return compare(a, a.getSortingTitle(), a.sortKey, b, b.getSortingTitle(), b.sortKey);
+    }
+
+    /**
+     * Compares the apps using the provided sorting titles and keys instead of their current ones
+     */
+    public int compare(AppInfo a, String titleA, CollationKey keyA,
+            AppInfo b, String titleB, CollationKey keyB) {
         // Order by the title in the current locale
-        int result = mLabelComparator.compare(getSortingTitle(a), getSortingTitle(b));
+        int result = mLabelComparator.compare(titleA, keyA, titleB, keyB);
         if (result != 0) {
             return result;
         }
@@ -63,14 +71,4 @@ public class AppInfoComparator implements Comparator<AppInfo> {
             return aUserSerial.compareTo(bUserSerial);
         }
     }
-
-    private String getSortingTitle(AppInfo info) {
-        if (!TextUtils.isEmpty(info.appTitle)) {
-            return info.appTitle.toString();
-        }
-        if (info.title != null) {
-            return info.title.toString();
-        }
-        return "";
-    }
 }
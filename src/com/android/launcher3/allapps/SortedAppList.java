@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.allapps;
+
+import androidx.annotation.NonNull;
+
+import com.android.launcher3.model.data.AppInfo;
+
+import java.text.CollationKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.function.Consumer;
+
+/**
+ * List of apps kept sorted with {@link AppInfoComparator} across updates. Only the apps which
+ * were added, removed or renamed since the previous update are moved, using a binary search,
+ * instead of sorting the whole list again.
+ */
+class SortedAppList {
+
+    /** Above this fraction of changed apps, sorting everything again is cheaper. */
+    private static final float MAX_INCREMENTAL_CHANGE_FRACTION = 0.25f;
+
+    private final ArrayList<Entry> mEntries = new ArrayList<>();
+    private final IdentityHashMap<AppInfo, Entry> mEntryMap = new IdentityHashMap<>();
+    private final Comparator<Entry> mEntryComparator;
+    private int mGeneration;
+
+    SortedAppList(AppInfoComparator comparator) {
+        mEntryComparator = (a, b) -> comparator.compare(
+                a.info, a.title, a.sortKey, b.info, b.title, b.sortKey);
+    }
+
+    /**
+     * Updates the list to contain exactly {@param apps}
+     *
+     * @return true if the order or content of the list changed
+     */
+    boolean update(@NonNull AppInfo[] apps) {
+        int generation = ++mGeneration;
+        ArrayList<Entry> added = new ArrayList<>();
+        boolean changed = false;
+        for (AppInfo info : apps) {
+            Entry entry = mEntryMap.get(info);
+            if (entry != null && entry.isSortedFor(info)) {
+                entry.generation = generation;
+                continue;
+            }
+            if (entry != null) {
+                // The title changed, move the app to its new position
+                removeEntry(entry);
+            }
+            entry = new Entry(info, generation);
+            mEntryMap.put(info, entry);
+            added.add(entry);
+        }
+
+        // Remove the apps which are no longer present
+        for (int i = mEntries.size() - 1; i >= 0; i--) {
+            Entry entry = mEntries.get(i);
+            if (entry.generation != generation) {
+                mEntries.remove(i);
+                mEntryMap.remove(entry.info);
+                changed = true;
+            }
+        }
+
+        if (added.isEmpty()) {
+            return changed;
+        }
+        if (added.size() > mEntries.size() * MAX_INCREMENTAL_CHANGE_FRACTION) {
+            mEntries.addAll(added);
+            mEntries.sort(mEntryComparator);
+        } else {
+            for (Entry entry : added) {
+                int index = Collections.binarySearch(mEntries, entry, mEntryComparator);
+                mEntries.add(index < 0 ? -index - 1 : index, entry);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calls {@param op} for every app, in order
+     */
+    void forEach(Consumer<AppInfo> op) {
+        for (int i = 0; i < mEntries.size(); i++) {
+            op.accept(mEntries.get(i).info);
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        int index = Collections.binarySearch(mEntries, entry, mEntryComparator);
+        if (index < 0 || mEntries.get(index) != entry) {
+            // Entries comparing equal, fall back to a linear search
+            index = mEntries.indexOf(entry);
+        }
+        if (index >= 0) {
+            mEntries.remove(index);
+        }
+        mEntryMap.remove(entry.info);
+    }
+
+    /**
+     * An app along with the title and key it was sorted with
+     */
+    private static class Entry {
+
+        final AppInfo info;
+        final String title;
+        final CollationKey sortKey;
+        int generation;
+
+        Entry(AppInfo info, int generation) {
+            this.info = info;
+            this.title = info.getSortingTitle();
+            this.sortKey = info.sortKey;
+            this.generation = generation;
+        }
+
+        boolean isSortedFor(AppInfo info) {
+            return sortKey == info.sortKey && title.equals(info.getSortingTitle());
+        }
+    }
+}
@@ -62,7 +62,11 @@ public class DefaultAppSearchAlgorithm implements SearchAlgorithm<AdapterItem> {
     @Override
     public void doSearch(String query, SearchCallback<AdapterItem> callback) {
         mAppState.getModel().enqueueModelUpdateTask((taskController, dataModel, apps) ->  {
-            ArrayList<AdapterItem> result = getTitleMatchResult(apps.data, query);
+            List<AppInfo> matches = apps.getSearchIndex().search(apps.data, query);
+            ArrayList<AdapterItem> result = new ArrayList<>(matches.size());
+            for (int i = 0; i < matches.size(); i++) {
+                result.add(AdapterItem.asApp(matches.get(i)));
+            }
             if (mAddNoResultsMessage && result.isEmpty()) {
                 result.add(getEmptyMessageAdapterItem(query));
             }
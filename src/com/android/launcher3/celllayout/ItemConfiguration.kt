@@ -46,6 +46,19 @@ class ItemConfiguration : CellAndSpan() {
         sortedViews.add(v)
     }
 
+    /** Sets the position of [v], reusing its entry if it was already added. */
+    fun set(v: View, cellX: Int, cellY: Int, spanX: Int, spanY: Int) {
+        val c = map[v]
+        if (c == null) {
+            add(v, CellAndSpan(cellX, cellY, spanX, spanY))
+        } else {
+            c.cellX = cellX
+            c.cellY = cellY
+            c.spanX = spanX
+            c.spanY = spanY
+        }
+    }
+
     fun area(): Int {
         return spanX * spanY
     }
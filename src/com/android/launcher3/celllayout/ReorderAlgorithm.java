@@ -18,13 +18,16 @@ package com.android.launcher3.celllayout;
 import android.graphics.Rect;
 import android.view.View;
 
+import androidx.annotation.Nullable;
+
 import com.android.launcher3.CellLayout;
+import com.android.launcher3.ShortcutAndWidgetContainer;
 import com.android.launcher3.util.CellAndSpan;
 import com.android.launcher3.util.GridOccupancy;
 
 import java.util.ArrayList;
 import java.util.Comparator;
-import java.util.List;
+import java.util.HashMap;
 import java.util.Map.Entry;
 
 /**
@@ -35,12 +38,53 @@ import java.util.Map.Entry;
  */
 public class ReorderAlgorithm {
 
+    // The views are sorted first by their X position and then by their Y position so that the
+    // results are deterministic on the views positions and not by the views hash which is "random".
+    private static final Comparator<View> VIEW_POSITION_COMPARATOR = Comparator.<View>comparingInt(
+            view -> ((CellLayoutLayoutParams) view.getLayoutParams()).getCellX()
+    ).thenComparingInt(
+            view -> ((CellLayoutLayoutParams) view.getLayoutParams()).getCellY()
+    );
+
+    // Number of ints stored per child in mCachedPlacement: cellX, cellY, spanX, spanY, canReorder
+    private static final int PLACEMENT_SIZE = 5;
+    private static final int MAX_CACHED_ARRANGEMENTS = 64;
+
     CellLayout mCellLayout;
 
+    // Arrangements found for a (cell, span, direction, dragView), valid as long as the items of
+    // the CellLayout are where they were when the arrangements were computed.
+    private final HashMap<ArrangementKey, Arrangement> mArrangements = new HashMap<>();
+    private final ArrangementKey mTmpKey = new ArrangementKey();
+    @Nullable
+    private GridOccupancy mCachedOccupancy;
+    private final ArrayList<View> mCachedViews = new ArrayList<>();
+    private int[] mCachedPlacement = new int[0];
+
+    private long mSearchBudgetNanos = Long.MAX_VALUE;
+    private long mSearchDeadlineNanos = Long.MAX_VALUE;
+
+    // Temporary objects reused across a search, to avoid allocating on every drag over event
+    private final ArrayList<View> mTmpSortedViews = new ArrayList<>();
+    private final Rect mTmpDropRect = new Rect();
+    private final Rect mTmpRect = new Rect();
+    private final int[] mTmpCell = new int[2];
+    private final int[] mTmpLocation = new int[2];
+    private final int[] mTmpDirection = new int[2];
+
     public ReorderAlgorithm(CellLayout cellLayout) {
         mCellLayout = cellLayout;
     }
 
+    /**
+     * Limits the time {@link #calculateReorder} spends looking for a solution which moves items
+     * around. Once the budget is spent, smaller spans aren't tried anymore and the best solution
+     * found so far is used, falling back to the closest empty space.
+     */
+    public void setSearchBudgetNanos(long budgetNanos) {
+        mSearchBudgetNanos = budgetNanos;
+    }
+
     /**
      * This method differs from closestEmptySpaceReorder and dropInPlaceSolution because this method
      * will move items around and will change the shape of the item if possible to try to find a
@@ -73,6 +117,7 @@ public class ReorderAlgorithm {
      */
     public ItemConfiguration findReorderSolution(ReorderParameters reorderParameters,
             int[] direction, boolean decX) {
+        invalidateArrangementsIfItemsMoved();
         return findReorderSolutionRecursive(reorderParameters.getPixelX(),
                 reorderParameters.getPixelY(), reorderParameters.getMinSpanX(),
                 reorderParameters.getMinSpanY(), reorderParameters.getSpanX(),
@@ -91,16 +136,36 @@ public class ReorderAlgorithm {
 
         // We find the nearest cell into which we would place the dragged item, assuming there's
         // nothing in its way.
-        int[] result = new int[2];
-        result = mCellLayout.findNearestAreaIgnoreOccupied(pixelX, pixelY, spanX, spanY, result);
+        int[] result = mCellLayout.findNearestAreaIgnoreOccupied(pixelX, pixelY, spanX, spanY,
+                mTmpCell);
 
         boolean success;
         // First we try the exact nearest position of the item being dragged,
         // we will then want to try to move this around to other neighbouring positions
-        success = rearrangementExists(result[0], result[1], spanX, spanY, direction, dragView,
-                solution);
+        mTmpKey.set(result[0], result[1], spanX, spanY, direction, dragView);
+        Arrangement arrangement = mArrangements.get(mTmpKey);
+        if (arrangement != null) {
+            success = arrangement.applyTo(solution, direction);
+        } else {
+            ArrangementKey key = new ArrangementKey();
+            key.set(result[0], result[1], spanX, spanY, direction, dragView);
+            success = rearrangementExists(result[0], result[1], spanX, spanY, direction, dragView,
+                    solution);
+            // A failure might only come from running out of time, don't remember it
+            if (success || !isOutOfTime()) {
+                if (mArrangements.size() >= MAX_CACHED_ARRANGEMENTS) {
+                    mArrangements.clear();
+                }
+                mArrangements.put(key, new Arrangement(success, solution, direction));
+            }
+        }
 
         if (!success) {
+            if (isOutOfTime()) {
+                // Out of time, let the caller fall back to a solution which doesn't move items
+                solution.isSolution = false;
+                return solution;
+            }
             // We try shrinking the widget down to size in an alternating pattern, shrink 1 in
             // x, then 1 in y etc.
             if (spanX > minSpanX && (minSpanY == spanY || decX)) {
@@ -121,13 +186,65 @@ public class ReorderAlgorithm {
         return solution;
     }
 
+    /**
+     * Returns whether the search budget set by {@link #setSearchBudgetNanos} is spent.
+     */
+    private boolean isOutOfTime() {
+        return mSearchDeadlineNanos != Long.MAX_VALUE && System.nanoTime() > mSearchDeadlineNanos;
+    }
+
+    /**
+     * Drops the cached arrangements if the items of the CellLayout moved since they were computed.
+     */
+    private void invalidateArrangementsIfItemsMoved() {
+        GridOccupancy occupied = mCellLayout.getOccupied();
+        ShortcutAndWidgetContainer container = mCellLayout.getShortcutsAndWidgets();
+        int childCount = container.getChildCount();
+        boolean valid = mCachedOccupancy != null && mCachedOccupancy.contentEquals(occupied)
+                && mCachedViews.size() == childCount;
+        for (int i = 0; valid && i < childCount; i++) {
+            View child = container.getChildAt(i);
+            CellLayoutLayoutParams lp = (CellLayoutLayoutParams) child.getLayoutParams();
+            int j = i * PLACEMENT_SIZE;
+            valid = mCachedViews.get(i) == child
+                    && mCachedPlacement[j] == lp.getCellX()
+                    && mCachedPlacement[j + 1] == lp.getCellY()
+                    && mCachedPlacement[j + 2] == lp.cellHSpan
+                    && mCachedPlacement[j + 3] == lp.cellVSpan
+                    && mCachedPlacement[j + 4] == (lp.canReorder ? 1 : 0);
+        }
+        if (valid) {
+            return;
+        }
+
+        mArrangements.clear();
+        mCachedOccupancy = new GridOccupancy(mCellLayout.getCountX(), mCellLayout.getCountY());
+        occupied.copyTo(mCachedOccupancy);
+        mCachedViews.clear();
+        if (mCachedPlacement.length < childCount * PLACEMENT_SIZE) {
+            mCachedPlacement = new int[childCount * PLACEMENT_SIZE];
+        }
+        for (int i = 0; i < childCount; i++) {
+            View child = container.getChildAt(i);
+            CellLayoutLayoutParams lp = (CellLayoutLayoutParams) child.getLayoutParams();
+            int j = i * PLACEMENT_SIZE;
+            mCachedViews.add(child);
+            mCachedPlacement[j] = lp.getCellX();
+            mCachedPlacement[j + 1] = lp.getCellY();
+            mCachedPlacement[j + 2] = lp.cellHSpan;
+            mCachedPlacement[j + 3] = lp.cellVSpan;
+            mCachedPlacement[j + 4] = lp.canReorder ? 1 : 0;
+        }
+    }
+
     private boolean rearrangementExists(int cellX, int cellY, int spanX, int spanY, int[] direction,
             View ignoreView, ItemConfiguration solution) {
         // Return early if get invalid cell positions
         if (cellX < 0 || cellY < 0) return false;
 
         ArrayList<View> intersectingViews = new ArrayList<>();
-        Rect occupiedRect = new Rect(cellX, cellY, cellX + spanX, cellY + spanY);
+        Rect occupiedRect = mTmpDropRect;
+        occupiedRect.set(cellX, cellY, cellX + spanX, cellY + spanY);
 
         // Mark the desired location of the view currently being dragged.
         if (ignoreView != null) {
@@ -137,24 +254,19 @@ public class ReorderAlgorithm {
                 c.cellY = cellY;
             }
         }
-        Rect r0 = new Rect(cellX, cellY, cellX + spanX, cellY + spanY);
-        Rect r1 = new Rect();
+        Rect r1 = mTmpRect;
         // The views need to be sorted so that the results are deterministic on the views positions
         // and not by the views hash which is "random".
-        // The views are sorted twice, once for the X position and a second time for the Y position
-        // to ensure same order everytime.
-        Comparator comparator = Comparator.comparing(
-                view -> ((CellLayoutLayoutParams) ((View) view).getLayoutParams()).getCellX()
-        ).thenComparing(
-                view -> ((CellLayoutLayoutParams) ((View) view).getLayoutParams()).getCellY()
-        );
-        List<View> views = solution.map.keySet().stream().sorted(comparator).toList();
+        ArrayList<View> views = mTmpSortedViews;
+        views.clear();
+        views.addAll(solution.map.keySet());
+        views.sort(VIEW_POSITION_COMPARATOR);
         for (View child : views) {
             if (child == ignoreView) continue;
             CellAndSpan c = solution.map.get(child);
             CellLayoutLayoutParams lp = (CellLayoutLayoutParams) child.getLayoutParams();
             r1.set(c.cellX, c.cellY, c.cellX + c.spanX, c.cellY + c.spanY);
-            if (Rect.intersects(r0, r1)) {
+            if (Rect.intersects(occupiedRect, r1)) {
                 if (!lp.canReorder) {
                     return false;
                 }
@@ -171,6 +283,9 @@ public class ReorderAlgorithm {
                 solution)) {
             return true;
         }
+        if (isOutOfTime()) {
+            return false;
+        }
 
         // Next we try moving the views as a block, but without requiring the push mechanic.
         if (addViewsToTempLocation(intersectingViews, occupiedRect, direction, ignoreView,
@@ -195,7 +310,7 @@ public class ReorderAlgorithm {
         mCellLayout.mTmpOccupied.markCells(rectOccupiedByPotentialDrop, true);
 
         int[] tmpLocation = findNearestArea(c.cellX, c.cellY, c.spanX, c.spanY, direction,
-                mCellLayout.mTmpOccupied.cells, null, new int[2]);
+                mCellLayout.mTmpOccupied, null, mTmpLocation);
 
         if (tmpLocation[0] >= 0 && tmpLocation[1] >= 0) {
             c.cellX = tmpLocation[0];
@@ -253,6 +368,11 @@ public class ReorderAlgorithm {
         cluster.sortConfigurationForEdgePush(whichEdge);
 
         while (pushDistance > 0 && !fail) {
+            if (isOutOfTime()) {
+                // Reverted below like any other failed push
+                fail = true;
+                break;
+            }
             for (View v : currentState.sortedViews) {
                 // For each view that isn't in the cluster, we see if the leading edge of the
                 // cluster is contacting the edge of that view. If so, we add that view to the
@@ -353,7 +473,7 @@ public class ReorderAlgorithm {
         if (views.isEmpty()) return true;
 
         boolean success = false;
-        Rect boundingRect = new Rect();
+        Rect boundingRect = mTmpRect;
         // We construct a rect which represents the entire group of views passed in
         currentState.getBoundingRectForViews(views, boundingRect);
 
@@ -378,7 +498,7 @@ public class ReorderAlgorithm {
 
         int[] tmpLocation = findNearestArea(boundingRect.left, boundingRect.top,
                 boundingRect.width(), boundingRect.height(), direction,
-                mCellLayout.mTmpOccupied.cells, blockOccupied.cells, new int[2]);
+                mCellLayout.mTmpOccupied, blockOccupied, mTmpLocation);
 
         // If we successfully found a location by pushing the block of views, we commit it
         if (tmpLocation[0] >= 0 && tmpLocation[1] >= 0) {
@@ -483,7 +603,15 @@ public class ReorderAlgorithm {
         ItemConfiguration dropInPlaceSolution = dropInPlaceSolution(reorderParameters);
 
         // Find a solution involving pushing / displacing any items in the way
-        ItemConfiguration swapSolution = findReorderSolution(reorderParameters, true);
+        ItemConfiguration swapSolution;
+        if (mSearchBudgetNanos != Long.MAX_VALUE) {
+            mSearchDeadlineNanos = System.nanoTime() + mSearchBudgetNanos;
+        }
+        try {
+            swapSolution = findReorderSolution(reorderParameters, true);
+        } finally {
+            mSearchDeadlineNanos = Long.MAX_VALUE;
+        }
 
         // We attempt the approach which doesn't shuffle views at all
         ItemConfiguration closestSpaceSolution = closestEmptySpaceReorder(reorderParameters);
@@ -599,7 +727,7 @@ public class ReorderAlgorithm {
      * nearest the requested location.
      */
     public int[] findNearestArea(int cellX, int cellY, int spanX, int spanY, int[] direction,
-            boolean[][] occupied, boolean[][] blockOccupied, int[] result) {
+            GridOccupancy occupied, GridOccupancy blockOccupied, int[] result) {
         // Keep track of best-scoring drop area
         final int[] bestXY = result != null ? result : new int[2];
         float bestDistance = Float.MAX_VALUE;
@@ -609,20 +737,14 @@ public class ReorderAlgorithm {
         final int countY = mCellLayout.getCountY();
 
         for (int y = 0; y < countY - (spanY - 1); y++) {
-            inner:
             for (int x = 0; x < countX - (spanX - 1); x++) {
                 // First, let's see if this thing fits anywhere
-                for (int i = 0; i < spanX; i++) {
-                    for (int j = 0; j < spanY; j++) {
-                        if (occupied[x + i][y + j] && (blockOccupied == null
-                                || blockOccupied[i][j])) {
-                            continue inner;
-                        }
-                    }
+                if (!occupied.isRegionVacant(x, y, spanX, spanY, blockOccupied)) {
+                    continue;
                 }
 
                 float distance = (float) Math.hypot(x - cellX, y - cellY);
-                int[] curDirection = new int[2];
+                int[] curDirection = mTmpDirection;
                 computeDirectionVector(x - cellX, y - cellY, curDirection);
                 // The direction score is just the dot product of the two candidate direction
                 // and that passed in.
@@ -645,4 +767,105 @@ public class ReorderAlgorithm {
         }
         return bestXY;
     }
+
+    /**
+     * Identifies a call to {@link #rearrangementExists} for a given placement of the CellLayout
+     * items.
+     */
+    private static class ArrangementKey {
+        int cellX;
+        int cellY;
+        int spanX;
+        int spanY;
+        int directionX;
+        int directionY;
+        View dragView;
+
+        void set(int cellX, int cellY, int spanX, int spanY, int[] direction, View dragView) {
+            this.cellX = cellX;
+            this.cellY = cellY;
+            this.spanX = spanX;
+            this.spanY = spanY;
+            this.directionX = direction[0];
+            this.directionY = direction[1];
+            this.dragView = dragView;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof ArrangementKey)) return false;
+            ArrangementKey other = (ArrangementKey) o;
+            return cellX == other.cellX && cellY == other.cellY
+                    && spanX == other.spanX && spanY == other.spanY
+                    && directionX == other.directionX && directionY == other.directionY
+                    && dragView == other.dragView;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = cellX;
+            result = 31 * result + cellY;
+            result = 31 * result + spanX;
+            result = 31 * result + spanY;
+            result = 31 * result + directionX;
+            result = 31 * result + directionY;
+            return 31 * result + System.identityHashCode(dragView);
+        }
+    }
+
+    /**
+     * The outcome of a call to {@link #rearrangementExists}: the positions of the items and the
+     * direction in which they were pushed.
+     */
+    private static class Arrangement {
+        final boolean success;
+        final View[] views;
+        final int[] cells;
+        final ArrayList<View> intersectingViews;
+        final int directionX;
+        final int directionY;
+
+        Arrangement(boolean success, ItemConfiguration solution, int[] direction) {
+            this.success = success;
+            this.intersectingViews = solution.intersectingViews;
+            this.directionX = direction[0];
+            this.directionY = direction[1];
+            if (!success) {
+                views = new View[0];
+                cells = new int[0];
+                return;
+            }
+            int size = solution.map.size();
+            views = new View[size];
+            cells = new int[size * 2];
+            for (int i = 0; i < size; i++) {
+                CellAndSpan c = solution.map.valueAt(i);
+                views[i] = solution.map.keyAt(i);
+                cells[i * 2] = c.cellX;
+                cells[i * 2 + 1] = c.cellY;
+            }
+        }
+
+        /**
+         * Moves the items of {@param solution} as they were when this arrangement was found.
+         *
+         * @return whether a rearrangement exists
+         */
+        boolean applyTo(ItemConfiguration solution, int[] direction) {
+            if (!success) {
+                return false;
+            }
+            for (int i = 0; i < views.length; i++) {
+                CellAndSpan c = solution.map.get(views[i]);
+                if (c != null) {
+                    c.cellX = cells[i * 2];
+                    c.cellY = cells[i * 2 + 1];
+                }
+            }
+            solution.intersectingViews = intersectingViews;
+            direction[0] = directionX;
+            direction[1] = directionY;
+            return true;
+        }
+    }
 }
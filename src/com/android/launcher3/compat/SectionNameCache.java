@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.compat;
+
+import android.os.LocaleList;
+
+import androidx.annotation.NonNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoizes {@link AlphabeticIndexCompat#computeSectionName} for one set of locales. Section
+ * labels are interned, so each distinct label is stored once however many titles map to it. Only
+ * the most recently used titles are kept.
+ */
+public class SectionNameCache {
+
+    private static final int MAX_CACHED_TITLES = 2048;
+
+    private final LocaleList mLocales;
+    private final AlphabeticIndexCompat mIndex;
+
+    private final LinkedHashMap<String, String> mSectionByTitle =
+            new LinkedHashMap<>(16, 0.75f, true /* accessOrder */) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_CACHED_TITLES;
+                }
+            };
+    private final HashMap<String, String> mLabels = new HashMap<>();
+
+    public SectionNameCache(LocaleList locales) {
+        mLocales = locales;
+        mIndex = new AlphabeticIndexCompat(locales);
+    }
+
+    /**
+     * Returns true if this cache was created for {@param locales}
+     */
+    public boolean isFor(LocaleList locales) {
+        return mLocales.equals(locales);
+    }
+
+    /**
+     * Returns the section name of {@param title}, computing it only the first time
+     */
+    @NonNull
+    public String getSectionName(@NonNull CharSequence title) {
+        String key = title.toString();
+        String section = mSectionByTitle.get(key);
+        if (section == null) {
+            section = mIndex.computeSectionName(title);
+            String interned = mLabels.putIfAbsent(section, section);
+            if (interned != null) {
+                section = interned;
+            }
+            mSectionByTitle.put(key, section);
+        }
+        return section;
+    }
+}
@@ -33,7 +33,7 @@ import com.android.launcher3.settings.preference.ReloadingListPreference;
 import com.android.launcher3.util.AppReloader;
 
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
-import static com.android.launcher3.util.Executors.THREAD_POOL_EXECUTOR;
+import static com.android.launcher3.util.Executors.USER_VISIBLE_EXECUTOR;
 
 public class InfoBottomSheet extends WidgetsBottomSheet {
     private final FragmentManager mFragmentManager;
@@ -146,7 +146,7 @@ public class InfoBottomSheet extends WidgetsBottomSheet {
             icons.setOnReloadListener(ctx -> new IconPackPrefSetter(ctx, mComponent));
             icons.setOnPreferenceChangeListener(this);
 
-            THREAD_POOL_EXECUTOR.execute(() -> {
+            USER_VISIBLE_EXECUTOR.execute(() -> {
                 MetadataExtractor extractor = new MetadataExtractor(mContext, mComponent);
 
                 CharSequence source = extractor.getSource();
@@ -24,16 +24,14 @@ import android.os.UserHandle;
 import android.text.TextUtils;
 import android.util.Log;
 
-import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
 import com.android.launcher3.LauncherAppState;
-import com.android.launcher3.LauncherModel.ModelUpdateTask;
+import com.android.launcher3.LauncherModel;
 import com.android.launcher3.R;
 import com.android.launcher3.Utilities;
 import com.android.launcher3.model.AllAppsList;
-import com.android.launcher3.model.BgDataModel;
-import com.android.launcher3.model.ModelTaskController;
 import com.android.launcher3.model.StringCache;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.CollectionInfo;
@@ -43,14 +41,8 @@ import com.android.launcher3.util.Preconditions;
 import com.android.launcher3.util.ResourceBasedOverride;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
-import java.util.Optional;
-import java.util.Set;
-import java.util.function.Function;
-import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 /**
  * Locates provider for the folder name.
@@ -65,8 +57,15 @@ public class FolderNameProvider implements ResourceBasedOverride {
      * name edit box can also be used to provide suggestion.
      */
     public static final int SUGGEST_MAX = 4;
+    /**
+     * The collections and apps of the model. These are the live lists, not copies: they are
+     * updated on the model thread and must only be read there.
+     */
     protected IntSparseArrayMap<CollectionInfo> mCollectionInfos;
     protected List<AppInfo> mAppInfos;
+    /** The apps of the model, indexed by package. Only read on the model thread. */
+    @Nullable
+    private AllAppsList mAllApps;
 
     /**
      * Retrieve instance of this object that can be overridden in runtime based on the build
@@ -81,23 +80,32 @@ public class FolderNameProvider implements ResourceBasedOverride {
         return fnp;
     }
 
-    public static FolderNameProvider newInstance(Context context, List<AppInfo> appInfos,
+    public static FolderNameProvider newInstance(Context context, AllAppsList apps,
             IntSparseArrayMap<CollectionInfo> folderInfos) {
         Preconditions.assertWorkerThread();
         FolderNameProvider fnp = Overrides.getObject(FolderNameProvider.class,
                 context.getApplicationContext(), R.string.folder_name_provider_class);
-        fnp.load(appInfos, folderInfos);
+        fnp.load(apps, folderInfos);
 
         return fnp;
     }
 
+    /**
+     * Reads the apps and collections of the model directly, as this is called on the model
+     * thread. The package index of {@link AllAppsList} is kept up to date by the model, so nothing
+     * is copied.
+     */
     private void load(Context context) {
-        LauncherAppState.getInstance(context).getModel().enqueueModelUpdateTask(
-                new FolderNameWorker());
+        Preconditions.assertWorkerThread();
+        LauncherModel model = LauncherAppState.getInstance(context).getModel();
+        mAllApps = model.getAllAppsList();
+        mAppInfos = mAllApps.data;
+        mCollectionInfos = model.getCollections();
     }
 
-    private void load(List<AppInfo> appInfos, IntSparseArrayMap<CollectionInfo> folderInfos) {
-        mAppInfos = appInfos;
+    private void load(AllAppsList apps, IntSparseArrayMap<CollectionInfo> folderInfos) {
+        mAllApps = apps;
+        mAppInfos = apps.data;
         mCollectionInfos = folderInfos;
     }
 
@@ -115,26 +123,42 @@ public class FolderNameProvider implements ResourceBasedOverride {
 
         // A shallow copy tring to avoid ConcurrentModificationException
         final ArrayList<WorkspaceItemInfo> candidates = new ArrayList<>(workspaceItemInfos);
+        UserHandle user = null;
+        boolean sameUser = true;
+        String packageName = null;
+        boolean samePackage = true;
+        for (int i = 0; i < candidates.size(); i++) {
+            WorkspaceItemInfo candidate = candidates.get(i);
+            if (user == null) {
+                user = candidate.user;
+            } else if (!Objects.equals(user, candidate.user)) {
+                sameUser = false;
+            }
+            ComponentName cn = candidate.getTargetComponent();
+            if (cn == null) {
+                continue;
+            }
+            if (packageName == null) {
+                packageName = cn.getPackageName();
+            } else if (!packageName.equals(cn.getPackageName())) {
+                samePackage = false;
+            }
+        }
+
         // If all the icons are from work profile,
         // Then, suggest "Work" as the folder name
-        Set<UserHandle> users = candidates.stream().map(w -> w.user)
-                .collect(Collectors.toSet());
-        if (users.size() == 1 && !users.contains(Process.myUserHandle())) {
+        if (!candidates.isEmpty() && sameUser && !Process.myUserHandle().equals(user)) {
             setAsLastSuggestion(nameInfos, getWorkFolderName(context));
         }
 
         // If all the icons are from same package (e.g., main icon, shortcut, shortcut)
         // Then, suggest the package's title as the folder name
-        Set<String> packageNames = candidates.stream()
-                .filter(workspaceItemInfo -> workspaceItemInfo.getTargetComponent() != null)
-                .map(workspaceItemInfo -> workspaceItemInfo.getTargetComponent().getPackageName())
-                .collect(Collectors.toSet());
-
-        if (packageNames.size() == 1) {
-            Optional<AppInfo> info = getAppInfoByPackageName(packageNames.iterator().next());
-            // Place it as first viable suggestion and shift everything else
-            info.ifPresent(i -> setAsFirstSuggestion(
-                    nameInfos, i.title == null ? "" : i.title.toString()));
+        if (packageName != null && samePackage) {
+            AppInfo info = getAppInfoByPackageName(packageName);
+            if (info != null) {
+                // Place it as first viable suggestion and shift everything else
+                setAsFirstSuggestion(nameInfos, info.title == null ? "" : info.title.toString());
+            }
         }
         if (DEBUG) {
             Log.d(TAG, "getSuggestedFolderName:" + nameInfos.toString());
@@ -152,14 +176,9 @@ public class FolderNameProvider implements ResourceBasedOverride {
                         context.getString(R.string.work_folder_name));
     }
 
-    private Optional<AppInfo> getAppInfoByPackageName(String packageName) {
-        if (mAppInfos == null || mAppInfos.isEmpty()) {
-            return Optional.empty();
-        }
-        return mAppInfos.stream()
-                .filter(info -> info.componentName != null)
-                .filter(info -> info.componentName.getPackageName().equals(packageName))
-                .findAny();
+    @Nullable
+    private AppInfo getAppInfoByPackageName(String packageName) {
+        return mAllApps == null ? null : mAllApps.findAppForPackage(packageName);
     }
 
     private void setAsFirstSuggestion(FolderNameInfos nameInfos, CharSequence label) {
@@ -195,14 +214,4 @@ public class FolderNameProvider implements ResourceBasedOverride {
         nameInfos.setLabel(labels.length - 1, label, 1.0f);
     }
 
-    private class FolderNameWorker implements ModelUpdateTask {
-
-        @Override
-        public void execute(@NonNull ModelTaskController taskController,
-                @NonNull BgDataModel dataModel, @NonNull AllAppsList apps) {
-            mCollectionInfos = dataModel.collections.clone();
-            mAppInfos = Arrays.asList(apps.copyData());
-        }
-    }
-
 }
@@ -449,11 +449,13 @@ public class LauncherPreviewRenderer extends ContextWrapper
         ArrayList<LauncherAppWidgetInfo> currentAppWidgets = new ArrayList<>();
         ArrayList<LauncherAppWidgetInfo> otherAppWidgets = new ArrayList<>();
 
+        // Read the published items, as the model can change on the model thread meanwhile
+        BgDataModel.Snapshot snapshot = dataModel.getSnapshot();
         IntSet currentScreenIds = IntSet.wrap(mWorkspaceScreens.keySet());
-        filterCurrentWorkspaceItems(currentScreenIds, dataModel.workspaceItems,
+        filterCurrentWorkspaceItems(currentScreenIds, new ArrayList<>(snapshot.workspaceItems),
                 currentWorkspaceItems, otherWorkspaceItems);
-        filterCurrentWorkspaceItems(currentScreenIds, dataModel.appWidgets, currentAppWidgets,
-                otherAppWidgets);
+        filterCurrentWorkspaceItems(currentScreenIds, new ArrayList<>(snapshot.appWidgets),
+                currentAppWidgets, otherAppWidgets);
         for (ItemInfo itemInfo : currentWorkspaceItems) {
             switch (itemInfo.itemType) {
                 case Favorites.ITEM_TYPE_APPLICATION:
@@ -17,6 +17,7 @@
 package com.android.launcher3.icons;
 
 import static com.android.launcher3.LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT;
+import static com.android.launcher3.util.Executors.ICON_BULK_LOAD_EXECUTOR;
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
 import static com.android.launcher3.widget.WidgetSections.NO_CATEGORY;
@@ -72,10 +73,14 @@ import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.widget.WidgetSections;
 import com.android.launcher3.widget.WidgetSections.WidgetSection;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
@@ -92,6 +97,12 @@ public class IconCache extends BaseIconCache {
 
     private static final String TAG = "Launcher.IconCache";
 
+    /**
+     * Number of threads, including the calling thread, used by {@link #getTitlesAndIconsInBulk}.
+     */
+    private static final int BULK_LOAD_PARALLELISM =
+            Math.min(Runtime.getRuntime().availableProcessors(), 4);
+
     private final Predicate<ItemInfoWithIcon> mIsUsingFallbackOrNonDefaultIconCheck = w ->
             w.bitmap != null && (w.bitmap.isNullOrLowRes() || !isDefaultIcon(w.bitmap, w.user));
 
@@ -413,9 +424,12 @@ public class IconCache extends BaseIconCache {
     }
 
     /**
-     * Load and fill icons requested in iconRequestInfos using a single bulk sql query.
+     * Load and fill icons requested in iconRequestInfos using a single bulk sql query per
+     * (user, lowRes) section. Sections and fallback icon loading are split across the icon bulk
+     * load lane, and the in-memory cache is only locked while an entry is being read or written,
+     * so that other icon requests are not blocked for the whole load.
      */
-    public synchronized <T extends ItemInfoWithIcon> void getTitlesAndIconsInBulk(
+    public <T extends ItemInfoWithIcon> void getTitlesAndIconsInBulk(
             List<IconRequestInfo<T>> iconRequestInfos) {
         Map<Pair<UserHandle, Boolean>, List<IconRequestInfo<T>>> iconLoadSubsectionsMap =
                 iconRequestInfos.stream()
@@ -434,6 +448,9 @@ public class IconCache extends BaseIconCache {
                                 Pair.create(iconRequest.itemInfo.user, iconRequest.useLowResIcon)));
 
         Trace.beginSection("loadIconsInBulk");
+        List<Runnable> databaseTasks = new ArrayList<>();
+        List<Pair<UserHandle, Map<ComponentName, List<IconRequestInfo<T>>>>> sections =
+                new ArrayList<>();
         iconLoadSubsectionsMap.forEach((sectionKey, filteredList) -> {
             Map<ComponentName, List<IconRequestInfo<T>>> duplicateIconRequestsMap =
                     filteredList.stream()
@@ -451,14 +468,28 @@ public class IconCache extends BaseIconCache {
                             .collect(groupingBy(iconRequest ->
                                     iconRequest.itemInfo.getTargetComponent()));
 
-            Trace.beginSection("loadIconSubsectionInBulk");
-            loadIconSubsection(sectionKey, filteredList, duplicateIconRequestsMap);
-            Trace.endSection();
+            sections.add(Pair.create(sectionKey.first, duplicateIconRequestsMap));
+            databaseTasks.add(() -> {
+                Trace.beginSection("loadIconSubsectionInBulk");
+                loadIconSubsectionWithDatabase(sectionKey, filteredList, duplicateIconRequestsMap);
+                Trace.endSection();
+            });
         });
+        runInParallel(databaseTasks);
+
+        // Fallback loading creates the icons from scratch, so it is done per component.
+        List<Runnable> fallbackTasks = new ArrayList<>();
+        for (Pair<UserHandle, Map<ComponentName, List<IconRequestInfo<T>>>> section : sections) {
+            section.second.forEach((cn, duplicateIconRequests) -> fallbackTasks.add(() ->
+                    loadIconWithFallback(section.first, cn, duplicateIconRequests)));
+        }
+        Trace.beginSection("loadIconSubsectionWithFallback");
+        runInParallel(fallbackTasks);
+        Trace.endSection();
         Trace.endSection();
     }
 
-    private <T extends ItemInfoWithIcon> void loadIconSubsection(
+    private <T extends ItemInfoWithIcon> void loadIconSubsectionWithDatabase(
             Pair<UserHandle, Boolean> sectionKey,
             List<IconRequestInfo<T>> filteredList,
             Map<ComponentName, List<IconRequestInfo<T>>> duplicateIconRequestsMap) {
@@ -477,14 +508,17 @@ public class IconCache extends BaseIconCache {
 
                 if (cn != null) {
                     if (duplicateIconRequests != null) {
-                        CacheEntry entry = cacheLocked(
-                                cn,
-                                /* user = */ sectionKey.first,
-                                () -> duplicateIconRequests.get(0).launcherActivityInfo,
-                                mLauncherActivityInfoCachingLogic,
-                                c,
-                                /* usePackageIcon= */ false,
-                                /* useLowResIcons = */ sectionKey.second);
+                        CacheEntry entry;
+                        synchronized (this) {
+                            entry = cacheLocked(
+                                    cn,
+                                    /* user = */ sectionKey.first,
+                                    () -> duplicateIconRequests.get(0).launcherActivityInfo,
+                                    mLauncherActivityInfoCachingLogic,
+                                    c,
+                                    /* usePackageIcon= */ false,
+                                    /* useLowResIcons = */ sectionKey.second);
+                        }
 
                         for (IconRequestInfo<T> iconRequest : duplicateIconRequests) {
                             applyCacheEntry(entry, iconRequest.itemInfo);
@@ -500,57 +534,109 @@ public class IconCache extends BaseIconCache {
         } finally {
             Trace.endSection();
         }
+    }
 
-        Trace.beginSection("loadIconSubsectionWithFallback");
-        // Fallback title and icon loading
-        for (ComponentName cn : duplicateIconRequestsMap.keySet()) {
-            IconRequestInfo<T> iconRequestInfo = duplicateIconRequestsMap.get(cn).get(0);
-            ItemInfoWithIcon itemInfo = iconRequestInfo.itemInfo;
-            BitmapInfo icon = itemInfo.bitmap;
-            boolean loadFallbackTitle = TextUtils.isEmpty(itemInfo.title);
-            boolean loadFallbackIcon = icon == null
-                    || isDefaultIcon(icon, itemInfo.user)
-                    || icon == BitmapInfo.LOW_RES_INFO;
-
-            if (loadFallbackTitle || loadFallbackIcon) {
-                Log.i(TAG,
-                        "Database bulk icon loading failed, using fallback bulk icon loading "
-                                + "for: " + cn);
-                CacheEntry entry = new CacheEntry();
-                LauncherActivityInfo lai = iconRequestInfo.launcherActivityInfo;
-
-                // Fill fields that are not updated below so they are not subsequently
-                // deleted.
-                entry.title = itemInfo.title;
-                if (icon != null) {
-                    entry.bitmap = icon;
-                }
-                entry.contentDescription = itemInfo.contentDescription;
-
-                if (loadFallbackIcon) {
-                    loadFallbackIcon(
-                            lai,
-                            entry,
-                            mLauncherActivityInfoCachingLogic,
-                            /* usePackageIcon= */ false,
-                            /* usePackageTitle= */ loadFallbackTitle,
-                            cn,
-                            sectionKey.first);
-                }
-                if (loadFallbackTitle && TextUtils.isEmpty(entry.title) && lai != null) {
-                    loadFallbackTitle(
-                            lai,
-                            entry,
-                            mLauncherActivityInfoCachingLogic,
-                            sectionKey.first);
-                }
+    /**
+     * Loads the title and icon for {@param cn} when it was not found in the database. This does
+     * not touch the in-memory cache, so it can run concurrently for different components.
+     */
+    private <T extends ItemInfoWithIcon> void loadIconWithFallback(UserHandle user,
+            ComponentName cn, List<IconRequestInfo<T>> duplicateIconRequests) {
+        IconRequestInfo<T> iconRequestInfo = duplicateIconRequests.get(0);
+        ItemInfoWithIcon itemInfo = iconRequestInfo.itemInfo;
+        BitmapInfo icon = itemInfo.bitmap;
+        boolean loadFallbackTitle = TextUtils.isEmpty(itemInfo.title);
+        boolean loadFallbackIcon = icon == null
+                || isDefaultIcon(icon, itemInfo.user)
+                || icon == BitmapInfo.LOW_RES_INFO;
+
+        if (loadFallbackTitle || loadFallbackIcon) {
+            Log.i(TAG,
+                    "Database bulk icon loading failed, using fallback bulk icon loading "
+                            + "for: " + cn);
+            CacheEntry entry = new CacheEntry();
+            LauncherActivityInfo lai = iconRequestInfo.launcherActivityInfo;
+
+            // Fill fields that are not updated below so they are not subsequently
+            // deleted.
+            entry.title = itemInfo.title;
+            if (icon != null) {
+                entry.bitmap = icon;
+            }
+            entry.contentDescription = itemInfo.contentDescription;
+
+            if (loadFallbackIcon) {
+                loadFallbackIcon(
+                        lai,
+                        entry,
+                        mLauncherActivityInfoCachingLogic,
+                        /* usePackageIcon= */ false,
+                        /* usePackageTitle= */ loadFallbackTitle,
+                        cn,
+                        user);
+            }
+            if (loadFallbackTitle && TextUtils.isEmpty(entry.title) && lai != null) {
+                loadFallbackTitle(
+                        lai,
+                        entry,
+                        mLauncherActivityInfoCachingLogic,
+                        user);
+            }
+
+            for (IconRequestInfo<T> iconRequest : duplicateIconRequests) {
+                applyCacheEntry(entry, iconRequest.itemInfo);
+            }
+        }
+    }
+
+    /**
+     * Runs all the {@param tasks} on {@code ICON_BULK_LOAD_EXECUTOR} and the calling thread, and
+     * returns once all of them are complete. The calling thread keeps picking up tasks, so this
+     * makes progress even if the executor is busy.
+     */
+    private static void runInParallel(List<Runnable> tasks) {
+        final int count = tasks.size();
+        if (count <= 1 || BULK_LOAD_PARALLELISM <= 1) {
+            tasks.forEach(Runnable::run);
+            return;
+        }
 
-                for (IconRequestInfo<T> iconRequest : duplicateIconRequestsMap.get(cn)) {
-                    applyCacheEntry(entry, iconRequest.itemInfo);
+        AtomicInteger nextTask = new AtomicInteger();
+        AtomicReference<RuntimeException> error = new AtomicReference<>();
+        CountDownLatch done = new CountDownLatch(count);
+        Runnable worker = () -> {
+            int index;
+            while ((index = nextTask.getAndIncrement()) < count) {
+                try {
+                    tasks.get(index).run();
+                } catch (RuntimeException e) {
+                    error.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
                 }
             }
+        };
+        for (int i = Math.min(count, BULK_LOAD_PARALLELISM) - 1; i > 0; i--) {
+            ICON_BULK_LOAD_EXECUTOR.execute(worker);
+        }
+        worker.run();
+
+        boolean interrupted = false;
+        while (true) {
+            try {
+                done.await();
+                break;
+            } catch (InterruptedException e) {
+                // Workers are still writing into the request infos, wait for them to finish.
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (error.get() != null) {
+            throw error.get();
         }
-        Trace.endSection();
     }
 
     /**
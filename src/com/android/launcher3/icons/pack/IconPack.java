@@ -1,18 +1,16 @@
 package com.android.launcher3.icons.pack;
 
-import android.content.ComponentName;
 import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.res.Resources;
 import android.util.SparseArray;
 
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.File;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Class that handles the metadata and data of any icon pack.
@@ -20,12 +18,14 @@ import java.util.Map;
 class IconPack {
     private final ApplicationInfo mAi;
     private final CharSequence mPackageLabel;
+    private final File mIndexFile;
     private Data mData;
     private Resources mRes;
 
-    IconPack(ApplicationInfo ai, CharSequence label) {
+    IconPack(ApplicationInfo ai, CharSequence label, File indexFile) {
         mAi = ai;
         mPackageLabel = label;
+        mIndexFile = indexFile;
     }
 
     ApplicationInfo getAi() {
@@ -40,23 +40,25 @@ class IconPack {
         return mPackageLabel;
     }
 
-    Data getData(PackageManager pm)
+    synchronized Data getData(PackageManager pm)
             throws PackageManager.NameNotFoundException, XmlPullParserException, IOException {
         if (mData == null) {
-            mData = IconPackParser.parsePackage(pm, getResources(pm), getPackage());
+            // The appfilter XML is only parsed when the pack was installed or updated since the
+            // index was last written.
+            PackageInfo info = pm.getPackageInfo(getPackage(), 0);
+            IconPackIndex index = IconPackIndex.load(
+                    mIndexFile, info.getLongVersionCode(), info.lastUpdateTime);
+            if (index == null) {
+                index = IconPackParser.parsePackage(pm, getResources(pm), getPackage())
+                        .build(mIndexFile, info.getLongVersionCode(), info.lastUpdateTime);
+            }
+            mData = new Data(index);
         }
         return mData;
     }
 
-    int getDrawableId(PackageManager pm, ComponentName name)
-            throws PackageManager.NameNotFoundException, IOException, XmlPullParserException {
-        Data data = getData(pm);
-        Resources res = getResources(pm);
-        String pkg = getPackage();
-        return res.getIdentifier(data.drawables.get(name), "drawable", pkg);
-    }
-
-    private Resources getResources(PackageManager pm) throws PackageManager.NameNotFoundException {
+    private synchronized Resources getResources(PackageManager pm)
+            throws PackageManager.NameNotFoundException {
         if (mRes == null) {
             mRes = pm.getResourcesForApplication(getPackage());
         }
@@ -64,13 +66,22 @@ class IconPack {
     }
 
     static class Data {
-        final Map<ComponentName, String> drawables = new HashMap<>();
-        final Map<ComponentName, String> calendarPrefix = new HashMap<>();
-        final SparseArray<Clock> clockMetadata = new SparseArray<>();
-        final List<Integer> iconBacks = new ArrayList<>();
-        final List<Integer> iconMasks = new ArrayList<>();
-        final List<Integer> iconUpons = new ArrayList<>();
-        float scale = 1f;
+        final IconPackIndex drawables;
+        final SparseArray<Clock> clockMetadata;
+        final List<Integer> iconBacks;
+        final List<Integer> iconMasks;
+        final List<Integer> iconUpons;
+        final float scale;
+        final MaskedIconCache maskedIcons = new MaskedIconCache();
+
+        Data(IconPackIndex index) {
+            drawables = index;
+            clockMetadata = index.clockMetadata;
+            iconBacks = index.iconBacks;
+            iconMasks = index.iconMasks;
+            iconUpons = index.iconUpons;
+            scale = index.scale;
+        }
 
         boolean hasMasking() {
             return !iconBacks.isEmpty() || !iconMasks.isEmpty() || !iconUpons.isEmpty();
@@ -0,0 +1,288 @@
+package com.android.launcher3.icons.pack;
+
+import android.content.ComponentName;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact index of an icon pack, built once per pack version from its appfilter XML and
+ * memory-mapped afterwards. Drawable names are stored already resolved to resource ids, and
+ * components are found with a binary search on the hash of their flattened name.
+ */
+class IconPackIndex {
+    private static final String TAG = "IconPackIndex";
+
+    private static final int MAGIC = 0x49504958;
+    private static final int FORMAT_VERSION = 1;
+
+    // magic, format version, pack version code, pack update time
+    private static final int HEADER_SIZE = 2 * Integer.BYTES + 2 * Long.BYTES;
+
+    // hash, drawable id, component offset, calendar prefix offset
+    private static final int ENTRY_SIZE = 4 * Integer.BYTES;
+    private static final int NO_STRING = -1;
+
+    private final ByteBuffer mBuffer;
+    private final int mEntryCount;
+    private final int mEntriesStart;
+    private final int mStringsStart;
+
+    final float scale;
+    final List<Integer> iconBacks = new ArrayList<>();
+    final List<Integer> iconMasks = new ArrayList<>();
+    final List<Integer> iconUpons = new ArrayList<>();
+    final SparseArray<IconPack.Clock> clockMetadata = new SparseArray<>();
+
+    private IconPackIndex(ByteBuffer buffer) {
+        mBuffer = buffer;
+        scale = buffer.getFloat(HEADER_SIZE);
+        int pos = HEADER_SIZE + Float.BYTES;
+        pos = readIds(buffer, pos, iconBacks);
+        pos = readIds(buffer, pos, iconMasks);
+        pos = readIds(buffer, pos, iconUpons);
+
+        int clockCount = buffer.getInt(pos);
+        pos += Integer.BYTES;
+        for (int i = 0; i < clockCount; i++) {
+            clockMetadata.put(buffer.getInt(pos), new IconPack.Clock(
+                    buffer.getInt(pos + 4), buffer.getInt(pos + 8), buffer.getInt(pos + 12),
+                    buffer.getInt(pos + 16), buffer.getInt(pos + 20), buffer.getInt(pos + 24)));
+            pos += 7 * Integer.BYTES;
+        }
+
+        mEntryCount = buffer.getInt(pos);
+        mEntriesStart = pos + Integer.BYTES;
+        mStringsStart = mEntriesStart + mEntryCount * ENTRY_SIZE;
+    }
+
+    boolean contains(ComponentName cn) {
+        return findEntry(cn) >= 0;
+    }
+
+    /**
+     * Returns the resolved drawable id for {@param cn}, or 0 if it is not part of the pack.
+     */
+    int getDrawableId(ComponentName cn) {
+        int entry = findEntry(cn);
+        return entry < 0 ? 0 : mBuffer.getInt(entry + Integer.BYTES);
+    }
+
+    String getCalendarPrefix(ComponentName cn) {
+        int entry = findEntry(cn);
+        return entry < 0 ? null : readString(mBuffer.getInt(entry + 3 * Integer.BYTES));
+    }
+
+    /**
+     * Returns the absolute position of the entry for {@param cn}, or -1 if there is none.
+     */
+    private int findEntry(ComponentName cn) {
+        String name = cn.flattenToString();
+        int hash = name.hashCode();
+
+        int low = 0;
+        int high = mEntryCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int midHash = mBuffer.getInt(mEntriesStart + mid * ENTRY_SIZE);
+            if (midHash < hash) {
+                low = mid + 1;
+            } else if (midHash > hash) {
+                high = mid - 1;
+            } else {
+                // Check all the entries sharing this hash.
+                int first = mid;
+                while (first > 0
+                        && mBuffer.getInt(mEntriesStart + (first - 1) * ENTRY_SIZE) == hash) {
+                    first--;
+                }
+                for (int i = first; i < mEntryCount; i++) {
+                    int entry = mEntriesStart + i * ENTRY_SIZE;
+                    if (mBuffer.getInt(entry) != hash) {
+                        break;
+                    }
+                    if (name.equals(readString(mBuffer.getInt(entry + 2 * Integer.BYTES)))) {
+                        return entry;
+                    }
+                }
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    private String readString(int offset) {
+        if (offset == NO_STRING) {
+            return null;
+        }
+        int pos = mStringsStart + offset;
+        int length = mBuffer.getShort(pos) & 0xffff;
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = mBuffer.get(pos + Short.BYTES + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int readIds(ByteBuffer buffer, int pos, List<Integer> out) {
+        int count = buffer.getInt(pos);
+        pos += Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            out.add(buffer.getInt(pos));
+            pos += Integer.BYTES;
+        }
+        return pos;
+    }
+
+    /**
+     * Maps the index stored in {@param file}, or returns null if it is missing, corrupt or was
+     * built for a different version of the pack.
+     */
+    static IconPackIndex load(File file, long versionCode, long lastUpdateTime) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC
+                    || buffer.getInt(Integer.BYTES) != FORMAT_VERSION
+                    || buffer.getLong(2 * Integer.BYTES) != versionCode
+                    || buffer.getLong(2 * Integer.BYTES + Long.BYTES) != lastUpdateTime) {
+                return null;
+            }
+            IconPackIndex index = new IconPackIndex(buffer);
+            return index.mStringsStart <= buffer.limit() ? index : null;
+        } catch (IOException | IndexOutOfBoundsException e) {
+            Log.w(TAG, "Unable to load icon pack index " + file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Collects the contents of an icon pack while its appfilter XML is parsed.
+     */
+    static class Builder {
+        final Map<ComponentName, Integer> drawables = new HashMap<>();
+        final Map<ComponentName, String> calendarPrefix = new HashMap<>();
+        final SparseArray<IconPack.Clock> clockMetadata = new SparseArray<>();
+        final List<Integer> iconBacks = new ArrayList<>();
+        final List<Integer> iconMasks = new ArrayList<>();
+        final List<Integer> iconUpons = new ArrayList<>();
+        float scale = 1f;
+
+        /**
+         * Serializes the collected data and writes it to {@param file}. The returned index is
+         * usable even if the file could not be written.
+         */
+        IconPackIndex build(File file, long versionCode, long lastUpdateTime) {
+            ByteBuffer buffer;
+            try {
+                buffer = ByteBuffer.wrap(serialize(versionCode, lastUpdateTime));
+            } catch (IOException e) {
+                // Writing to a byte array does not fail.
+                throw new IllegalStateException(e);
+            }
+
+            File parent = file.getParentFile();
+            File tmp = new File(parent, file.getName() + ".tmp");
+            if (parent != null && (parent.isDirectory() || parent.mkdirs())) {
+                try (FileOutputStream out = new FileOutputStream(tmp)) {
+                    out.write(buffer.array());
+                    out.getFD().sync();
+                    if (!tmp.renameTo(file)) {
+                        Log.w(TAG, "Unable to save icon pack index " + file);
+                    }
+                } catch (IOException e) {
+                    Log.w(TAG, "Unable to save icon pack index " + file, e);
+                }
+            }
+            return new IconPackIndex(buffer);
+        }
+
+        private byte[] serialize(long versionCode, long lastUpdateTime) throws IOException {
+            int count = drawables.size();
+            long[] sortedEntries = new long[count];
+            ComponentName[] components = drawables.keySet().toArray(new ComponentName[0]);
+            String[] names = new String[count];
+            for (int i = 0; i < count; i++) {
+                names[i] = components[i].flattenToString();
+                // Sort by hash, keeping the position of the component in the low bits.
+                sortedEntries[i] = ((long) names[i].hashCode() << 32) | i;
+            }
+            Arrays.sort(sortedEntries);
+
+            ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+            DataOutputStream strings = new DataOutputStream(stringBytes);
+            ByteArrayOutputStream result = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(result);
+
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(versionCode);
+            out.writeLong(lastUpdateTime);
+            out.writeFloat(scale);
+            writeIds(out, iconBacks);
+            writeIds(out, iconMasks);
+            writeIds(out, iconUpons);
+
+            out.writeInt(clockMetadata.size());
+            for (int i = 0; i < clockMetadata.size(); i++) {
+                IconPack.Clock clock = clockMetadata.valueAt(i);
+                out.writeInt(clockMetadata.keyAt(i));
+                out.writeInt(clock.hourLayerIndex);
+                out.writeInt(clock.minuteLayerIndex);
+                out.writeInt(clock.secondLayerIndex);
+                out.writeInt(clock.defaultHour);
+                out.writeInt(clock.defaultMinute);
+                out.writeInt(clock.defaultSecond);
+            }
+
+            out.writeInt(count);
+            for (long sortedEntry : sortedEntries) {
+                int index = (int) sortedEntry;
+                ComponentName cn = components[index];
+                out.writeInt(names[index].hashCode());
+                out.writeInt(drawables.get(cn));
+                out.writeInt(writeString(strings, names[index]));
+                out.writeInt(writeString(strings, calendarPrefix.get(cn)));
+            }
+            strings.flush();
+            stringBytes.writeTo(out);
+            out.flush();
+            return result.toByteArray();
+        }
+
+        private static int writeString(DataOutputStream out, String value) throws IOException {
+            if (value == null) {
+                return NO_STRING;
+            }
+            int offset = out.size();
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+            return offset;
+        }
+
+        private static void writeIds(DataOutputStream out, List<Integer> ids) throws IOException {
+            out.writeInt(ids.size());
+            for (int id : ids) {
+                out.writeInt(id);
+            }
+        }
+    }
+}
@@ -18,6 +18,7 @@ import com.android.launcher3.util.ComponentKey;
 
 import org.xmlpull.v1.XmlPullParserException;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -29,6 +30,7 @@ import com.android.launcher3.util.AppReloader;
 
 public class IconPackManager extends BroadcastReceiver {
     private static final String TAG = "IconPackManager";
+    private static final String INDEX_DIR = "icon_pack_index";
 
     private static final String[] ICON_INTENT_ACTIONS = new String[] {
             "com.fede.launcher.THEME_ICONPACK",
@@ -90,6 +92,9 @@ public class IconPackManager extends BroadcastReceiver {
 
                 // Remove the changed package from the providers to reload the application info.
                 mProviders.remove(pkg);
+                if (Intent.ACTION_PACKAGE_FULLY_REMOVED.equals(intent.getAction())) {
+                    getIndexFile(pkg).delete();
+                }
 
                 // This can reset the global preference, so do this after creating the list.
                 reloadProviders();
@@ -128,7 +133,7 @@ public class IconPackManager extends BroadcastReceiver {
             if (!mProviders.containsKey(packageName)) {
                 ApplicationInfo ai = ri.activityInfo.applicationInfo;
                 CharSequence label = ai.loadLabel(pm);
-                mProviders.put(packageName, new IconPack(ai, label));
+                mProviders.put(packageName, new IconPack(ai, label, getIndexFile(packageName)));
             }
         }
 
@@ -142,6 +147,10 @@ public class IconPackManager extends BroadcastReceiver {
         }
     }
 
+    private File getIndexFile(String packageName) {
+        return new File(new File(mContext.getCacheDir(), INDEX_DIR), packageName);
+    }
+
     public Map<String, CharSequence> getProviderNames() {
         Map<String, CharSequence> providerTitles = new HashMap<>();
         for (Map.Entry<String, IconPack> pack : mProviders.entrySet()) {
@@ -154,7 +163,7 @@ public class IconPackManager extends BroadcastReceiver {
         try {
             IconPack pack = mProviders.get(packPackage);
             IconPack.Data data = pack.getData(mContext.getPackageManager());
-            return data.drawables.containsKey(componentName);
+            return data.drawables.contains(componentName);
         } catch (PackageManager.NameNotFoundException | XmlPullParserException | IOException ignored) {
             return false;
         }
@@ -174,14 +183,12 @@ public class IconPackManager extends BroadcastReceiver {
             try {
                 IconPack pack = mProviders.get(packPackage);
                 IconPack.Data data = pack.getData(mContext.getPackageManager());
-                if (data.drawables.containsKey(key.componentName)) {
-                    int drawableId = pack.getDrawableId(mContext.getPackageManager(), key.componentName);
-                    if (drawableId != 0) {
-                        return new IconResolverExternal(mContext.getPackageManager(), pack.getAi(),
-                                drawableId,
-                                data.calendarPrefix.get(key.componentName),
-                                data.clockMetadata.get(drawableId));
-                    }
+                int drawableId = data.drawables.getDrawableId(key.componentName);
+                if (drawableId != 0) {
+                    return new IconResolverExternal(mContext.getPackageManager(), pack.getAi(),
+                            drawableId,
+                            data.drawables.getCalendarPrefix(key.componentName),
+                            data.clockMetadata.get(drawableId));
                 }
                 if (data.hasMasking()) {
                     return new IconResolverMasked(mContext, data, pack.getAi(), key.hashCode());
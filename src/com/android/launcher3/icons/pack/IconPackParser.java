@@ -10,14 +10,18 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.IOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 class IconPackParser {
     private static final String TAG = "IconPackParser";
 
-    static IconPack.Data parsePackage(PackageManager pm, Resources res, String pkg)
+    static IconPackIndex.Builder parsePackage(PackageManager pm, Resources res, String pkg)
             throws IOException, XmlPullParserException {
-        IconPack.Data iconPack = new IconPack.Data();
+        IconPackIndex.Builder iconPack = new IconPackIndex.Builder();
+        // Many components share the same drawable, only resolve each name once.
+        Map<String, Integer> drawableIds = new HashMap<>();
 
         int resId = res.getIdentifier("appfilter", "xml", pkg);
         if (resId != 0) {
@@ -26,7 +30,7 @@ class IconPackParser {
                 if (parseXml.getEventType() == XmlPullParser.START_TAG) {
                     switch (parseXml.getName()) {
                         case "item":
-                            addItem(parseXml, iconPack);
+                            addItem(res, pkg, parseXml, iconPack, drawableIds);
                             break;
                         case "calendar":
                             addCalendar(parseXml, iconPack);
@@ -54,19 +58,22 @@ class IconPackParser {
         return iconPack;
     }
 
-    private static void addItem(XmlResourceParser parseXml,
-                                IconPack.Data iconPack) {
+    private static void addItem(Resources res, String pkg, XmlResourceParser parseXml,
+                                IconPackIndex.Builder iconPack,
+                                Map<String, Integer> drawableIds) {
         String component = parseXml.getAttributeValue(null, "component");
         String drawable = parseXml.getAttributeValue(null, "drawable");
         if (component != null && drawable != null) {
             ComponentName componentName = parseComponent(component);
             if (componentName != null) {
-                iconPack.drawables.put(componentName, drawable);
+                iconPack.drawables.put(componentName, drawableIds.computeIfAbsent(drawable,
+                        name -> res.getIdentifier(name, "drawable", pkg)));
             }
         }
     }
 
-    private static void addCalendar(XmlResourceParser parseXml, IconPack.Data iconPack) {
+    private static void addCalendar(XmlResourceParser parseXml,
+                                    IconPackIndex.Builder iconPack) {
         String component = parseXml.getAttributeValue(null, "component");
         String prefix = parseXml.getAttributeValue(null, "prefix");
         if (component != null && prefix != null) {
@@ -97,7 +104,7 @@ class IconPackParser {
         }
     }
 
-    private static void setScale(XmlResourceParser parseXml, IconPack.Data iconPack) {
+    private static void setScale(XmlResourceParser parseXml, IconPackIndex.Builder iconPack) {
         String factor = parseXml.getAttributeValue(null, "factor");
         if (factor != null) {
             try {
@@ -110,7 +117,7 @@ class IconPackParser {
     }
 
     private static void addClock(Resources res, String pkg, XmlResourceParser parseXml,
-                                 IconPack.Data iconPack) {
+                                 IconPackIndex.Builder iconPack) {
         String drawable = parseXml.getAttributeValue(null, "drawable");
         if (drawable != null) {
             int drawableId = res.getIdentifier(drawable, "drawable", pkg);
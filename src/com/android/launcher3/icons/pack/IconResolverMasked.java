@@ -27,7 +27,15 @@ public class IconResolverMasked implements IconResolver {
     private final ApplicationInfo mPackInfo;
     private final int mHashCode;
 
+    private static final PorterDuffXfermode DST_OUT =
+            new PorterDuffXfermode(PorterDuff.Mode.DST_OUT);
+    private static final PorterDuffXfermode DST_OVER =
+            new PorterDuffXfermode(PorterDuff.Mode.DST_OVER);
+    private static final PorterDuffXfermode SRC_ATOP =
+            new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP);
+
     private final Canvas mCanvas = new Canvas();
+    private final Matrix mMatrix = new Matrix();
     private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
 
     IconResolverMasked(Context context, IconPack.Data data, ApplicationInfo packInfo,
@@ -68,107 +76,93 @@ public class IconResolverMasked implements IconResolver {
             icon.setBounds(0, 0, iconBm.getWidth(), iconBm.getHeight());
             icon.draw(mCanvas);
 
-            // Scale the bitmap using the icon pack scale.
-            scaleBitmap(iconBm, mData.scale);
-
-            // Cut parts off using the mask image.
-            if (!mData.iconMasks.isEmpty()) {
-                int iconMask = mData.iconMasks.get(mHashCode % mData.iconMasks.size());
-                maskBitmap(iconBm, res.getDrawableForDensity(iconMask, iconDpi, null));
-            }
-
-            // Add icon back after scaling.
-            if (!mData.iconBacks.isEmpty()) {
-                int iconBack = mData.iconBacks.get(mHashCode % mData.iconBacks.size());
-                backBitmap(iconBm, res.getDrawableForDensity(iconBack, iconDpi, null), li);
-            }
-
-            // Render upon image onto icon. We use SRC_ATOP to make sure it stays within bounds.
-            if (!mData.iconUpons.isEmpty()) {
-                int iconUpon = mData.iconUpons.get(mHashCode % mData.iconUpons.size());
-                uponBitmap(iconBm, res.getDrawableForDensity(iconUpon, iconDpi, null));
+            int iconMask = mData.iconMasks.isEmpty()
+                    ? 0 : mData.iconMasks.get(mHashCode % mData.iconMasks.size());
+            int iconBack = mData.iconBacks.isEmpty()
+                    ? 0 : mData.iconBacks.get(mHashCode % mData.iconBacks.size());
+            int iconUpon = mData.iconUpons.isEmpty()
+                    ? 0 : mData.iconUpons.get(mHashCode % mData.iconUpons.size());
+
+            MaskedIconCache cache = mData.maskedIcons;
+            MaskedIconCache.Scratch scratch =
+                    cache.obtainScratch(iconBm.getWidth(), iconBm.getHeight());
+            try {
+                MaskedIconCache.Key key = new MaskedIconCache.Key(scratch.hashPixels(iconBm),
+                        iconMask, iconBack, iconUpon, iconDpi, iconBm.getWidth());
+                Bitmap cached = cache.get(key);
+                if (cached != null) {
+                    iconBm.recycle();
+                    return new BitmapDrawable(mContext.getResources(), cached);
+                }
+
+                // Scale the bitmap using the icon pack scale.
+                scaleBitmap(iconBm, mData.scale, scratch);
+
+                // Cut parts off using the mask image.
+                if (iconMask != 0) {
+                    drawLayer(iconBm, res.getDrawableForDensity(iconMask, iconDpi, null),
+                            scratch, DST_OUT);
+                }
+
+                // Add icon back after scaling.
+                if (iconBack != 0) {
+                    drawLayer(iconBm, res.getDrawableForDensity(iconBack, iconDpi, null),
+                            scratch, DST_OVER);
+                }
+
+                // Render upon image onto icon. We use SRC_ATOP to make sure it stays within
+                // bounds.
+                if (iconUpon != 0) {
+                    drawLayer(iconBm, res.getDrawableForDensity(iconUpon, iconDpi, null),
+                            scratch, SRC_ATOP);
+                }
+
+                cache.put(key, iconBm);
+            } finally {
+                cache.recycleScratch(scratch);
             }
 
             return new BitmapDrawable(mContext.getResources(), iconBm);
         } catch (PackageManager.NameNotFoundException | Resources.NotFoundException e) {
             e.printStackTrace();
+        } finally {
+            li.recycle();
         }
 
-        li.recycle();
         return icon;
     }
 
-    private void scaleBitmap(Bitmap bitmap, float scale) {
+    private void scaleBitmap(Bitmap bitmap, float scale, MaskedIconCache.Scratch scratch) {
         if (scale != 1f) {
-            Bitmap iconBmScaled = Bitmap.createScaledBitmap(bitmap,
-                    (int)(bitmap.getWidth() * mData.scale),
-                    (int)(bitmap.getHeight() * mData.scale),
-                    true);
+            float move = 0.5f * (1f - scale);
 
-            float move = 0.5f * (1f - mData.scale);
+            mMatrix.setScale(scale, scale);
+            mMatrix.postTranslate(move * bitmap.getWidth(), move * bitmap.getHeight());
 
-            Matrix matrix = new Matrix();
-            matrix.postTranslate(move * bitmap.getWidth(), move * bitmap.getHeight());
+            scratch.bitmap.eraseColor(Color.TRANSPARENT);
+            scratch.canvas.drawBitmap(bitmap, mMatrix, mPaint);
 
             bitmap.eraseColor(Color.TRANSPARENT);
             mCanvas.setBitmap(bitmap);
-            mCanvas.drawBitmap(iconBmScaled, matrix, null);
-
-            iconBmScaled.recycle();
-        }
-    }
-
-    private void maskBitmap(Bitmap bitmap, Drawable mask) {
-        if (mask != null) {
-            Bitmap maskBm = Bitmap.createBitmap(
-                    bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ARGB_8888);
-
-            // Render the mask image to a bitmap.
-            mCanvas.setBitmap(maskBm);
-            mask.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
-            mask.draw(mCanvas);
-
-            // Then use PorterDuff to remove black mask parts.
-            mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OUT));
-            mCanvas.setBitmap(bitmap);
-            mCanvas.drawBitmap(maskBm, 0f, 0f, mPaint);
-
-            maskBm.recycle();
+            mCanvas.drawBitmap(scratch.bitmap, 0f, 0f, null);
         }
     }
 
+    /**
+     * Renders {@param layer} and composes it onto {@param bitmap} using {@param mode}.
+     */
     @SuppressLint("WrongConstant")
-    private void backBitmap(Bitmap bitmap, Drawable back, LauncherIcons li) {
-        if (back != null) {
-            Bitmap backBm = Bitmap.createBitmap(
-                    bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ARGB_8888);
-
-            mCanvas.setBitmap(backBm);
-            back.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
-            back.draw(mCanvas);
-
-            mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.DST_OVER));
-            mCanvas.setBitmap(bitmap);
-            mCanvas.drawBitmap(backBm, 0f, 0f, mPaint);
-
-            backBm.recycle();
-        }
-    }
-
-    private void uponBitmap(Bitmap bitmap, Drawable upon) {
-        if (upon != null) {
-            Bitmap uponBm = Bitmap.createBitmap(
-                    bitmap.getWidth(), bitmap.getHeight(), Bitmap.Config.ARGB_8888);
-
-            mCanvas.setBitmap(uponBm);
-            upon.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
-            upon.draw(mCanvas);
-
-            mPaint.setXfermode(new PorterDuffXfermode(PorterDuff.Mode.SRC_ATOP));
+    private void drawLayer(Bitmap bitmap, Drawable layer, MaskedIconCache.Scratch scratch,
+            PorterDuffXfermode mode) {
+        if (layer != null) {
+            scratch.bitmap.eraseColor(Color.TRANSPARENT);
+            layer.setBounds(0, 0, bitmap.getWidth(), bitmap.getHeight());
+            layer.draw(scratch.canvas);
+
+            mPaint.setXfermode(mode);
             mCanvas.setBitmap(bitmap);
-            mCanvas.drawBitmap(uponBm, 0f, 0f, mPaint);
-
-            uponBm.recycle();
+            mCanvas.drawBitmap(scratch.bitmap, 0f, 0f, mPaint);
+            mPaint.setXfermode(null);
         }
     }
 }
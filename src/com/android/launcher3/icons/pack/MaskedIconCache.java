@@ -0,0 +1,116 @@
+package com.android.launcher3.icons.pack;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.util.LruCache;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+
+/**
+ * Cache of the icons composed by {@link IconResolverMasked} for one version of an icon pack.
+ * Entries are keyed by the content of the source icon and the pack images applied to it, so an
+ * icon refresh or theme change does not compose the same icon again. Also pools the scratch
+ * bitmaps used while composing.
+ */
+class MaskedIconCache {
+    private static final int MAX_SIZE_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_POOLED_SCRATCH = 2;
+
+    private final LruCache<Key, Bitmap> mIcons = new LruCache<>(MAX_SIZE_BYTES) {
+        @Override
+        protected int sizeOf(Key key, Bitmap value) {
+            return value.getAllocationByteCount();
+        }
+    };
+
+    private final ArrayDeque<Scratch> mScratchPool = new ArrayDeque<>();
+
+    Bitmap get(Key key) {
+        return mIcons.get(key);
+    }
+
+    void put(Key key, Bitmap icon) {
+        mIcons.put(key, icon);
+    }
+
+    synchronized Scratch obtainScratch(int width, int height) {
+        for (Scratch scratch : mScratchPool) {
+            if (scratch.bitmap.getWidth() == width && scratch.bitmap.getHeight() == height) {
+                mScratchPool.remove(scratch);
+                return scratch;
+            }
+        }
+        return new Scratch(width, height);
+    }
+
+    synchronized void recycleScratch(Scratch scratch) {
+        if (mScratchPool.size() >= MAX_POOLED_SCRATCH) {
+            mScratchPool.removeLast().bitmap.recycle();
+        }
+        mScratchPool.addFirst(scratch);
+    }
+
+    /**
+     * Bitmap, canvas and pixel buffer reused while composing an icon
+     */
+    static class Scratch {
+        final Bitmap bitmap;
+        final Canvas canvas;
+        private final int[] mPixels;
+
+        private Scratch(int width, int height) {
+            bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            canvas = new Canvas(bitmap);
+            mPixels = new int[width * height];
+        }
+
+        /**
+         * Returns a 64 bit hash of the pixels of {@param source}, which must have the same size
+         * as this scratch bitmap.
+         */
+        long hashPixels(Bitmap source) {
+            int width = source.getWidth();
+            source.getPixels(mPixels, 0, width, 0, 0, width, source.getHeight());
+            long hash = 0xcbf29ce484222325L;
+            for (int pixel : mPixels) {
+                hash = (hash ^ pixel) * 0x100000001b3L;
+            }
+            return hash;
+        }
+    }
+
+    static class Key {
+        private final long mSourceHash;
+        private final int mMask;
+        private final int mBack;
+        private final int mUpon;
+        private final int mIconDpi;
+        private final int mSize;
+
+        Key(long sourceHash, int mask, int back, int upon, int iconDpi, int size) {
+            mSourceHash = sourceHash;
+            mMask = mask;
+            mBack = back;
+            mUpon = upon;
+            mIconDpi = iconDpi;
+            mSize = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mSourceHash == other.mSourceHash && mMask == other.mMask
+                    && mBack == other.mBack && mUpon == other.mUpon
+                    && mIconDpi == other.mIconDpi && mSize == other.mSize;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mSourceHash, mMask, mBack, mUpon, mIconDpi, mSize);
+        }
+    }
+}
@@ -16,24 +16,49 @@
  */
 package com.android.launcher3.lineage.trust;
 
-import android.app.AppLockData;
+import static android.content.Intent.ACTION_PACKAGE_ADDED;
+import static android.content.Intent.ACTION_PACKAGE_CHANGED;
+import static android.content.Intent.ACTION_PACKAGE_REMOVED;
+
 import android.app.AppLockManager;
 import android.content.Context;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
-import java.util.List;
+import com.android.launcher3.util.SimpleBroadcastReceiver;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Wrapper around {@link AppLockManager} which keeps the hidden and protected state of packages in
+ * process, so that filtering apps doesn't need a binder call per app.
+ *
+ * <p>The state is fetched again after package broadcasts, changes made through this class are
+ * applied to it directly.
+ */
 public class AppLockHelper {
 
-    private AppLockManager mAppLockManager;
+    private final AppLockManager mAppLockManager;
+    private final SimpleBroadcastReceiver mPackageReceiver =
+            new SimpleBroadcastReceiver(i -> invalidate());
+
+    /** Immutable snapshot of the hidden packages, null until it is fetched. */
+    @Nullable
+    private volatile Set<String> mHiddenPackages;
+    /** Protected state of the packages queried so far. */
+    private final Map<String, Boolean> mProtectedPackages = new ConcurrentHashMap<>();
 
     @Nullable
     private static AppLockHelper sSingleton;
 
     private AppLockHelper(@NonNull Context context) {
         mAppLockManager = context.getSystemService(AppLockManager.class);
+        mPackageReceiver.registerPkgActions(context.getApplicationContext(), null,
+                ACTION_PACKAGE_ADDED, ACTION_PACKAGE_CHANGED, ACTION_PACKAGE_REMOVED);
     }
 
     public static synchronized AppLockHelper getInstance(@NonNull Context context) {
@@ -45,21 +70,57 @@ public class AppLockHelper {
 
     public void setShouldHideApp(@NonNull String packageName, boolean hide) {
         mAppLockManager.setPackageHidden(packageName, hide);
+        synchronized (this) {
+            Set<String> hiddenPackages = mHiddenPackages;
+            if (hiddenPackages != null && hiddenPackages.contains(packageName) != hide) {
+                Set<String> updated = new HashSet<>(hiddenPackages);
+                if (hide) {
+                    updated.add(packageName);
+                } else {
+                    updated.remove(packageName);
+                }
+                mHiddenPackages = Set.copyOf(updated);
+            }
+        }
     }
 
     public boolean isPackageHidden(@NonNull String packageName) {
-        return mAppLockManager.isPackageHidden(packageName);
+        return getHiddenPackages().contains(packageName);
     }
 
     public void setShouldProtectApp(@NonNull String packageName, boolean protect) {
         mAppLockManager.setShouldProtectApp(packageName, protect);
+        mProtectedPackages.put(packageName, protect);
     }
 
     public boolean isPackageProtected(@NonNull String packageName) {
-        return mAppLockManager.isPackageProtected(packageName);
+        return mProtectedPackages.computeIfAbsent(packageName, mAppLockManager::isPackageProtected);
     }
 
     public int getHiddenPackagesCount() {
-        return  mAppLockManager.getHiddenPackages().size();
+        return getHiddenPackages().size();
+    }
+
+    /**
+     * Drops the cached state, it is fetched again from {@link AppLockManager} on next use
+     */
+    public synchronized void invalidate() {
+        mHiddenPackages = null;
+        mProtectedPackages.clear();
+    }
+
+    @NonNull
+    private Set<String> getHiddenPackages() {
+        Set<String> hiddenPackages = mHiddenPackages;
+        if (hiddenPackages == null) {
+            synchronized (this) {
+                hiddenPackages = mHiddenPackages;
+                if (hiddenPackages == null) {
+                    hiddenPackages = Set.copyOf(mAppLockManager.getHiddenPackages());
+                    mHiddenPackages = hiddenPackages;
+                }
+            }
+        }
+        return hiddenPackages;
     }
 }
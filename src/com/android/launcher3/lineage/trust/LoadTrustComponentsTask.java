@@ -60,6 +60,8 @@ public class LoadTrustComponentsTask extends AsyncTask<Void, Integer, List<Trust
     @Override
     protected List<TrustComponent> doInBackground(Void... voids) {
         List<TrustComponent> list = new ArrayList<>();
+        // The app lock state may have been changed from outside of the launcher
+        mAppLockHelper.invalidate();
 
         List<PackageInfo> apps = mPackageManager.getInstalledPackages(
                     PackageInfoFlags.of(Long.valueOf(PackageManager.MATCH_ALL)));
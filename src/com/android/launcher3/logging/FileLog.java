@@ -13,11 +13,13 @@ import androidx.annotation.VisibleForTesting;
 import com.android.launcher3.util.IOUtils;
 
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.PrintWriter;
 import java.text.DateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.concurrent.CountDownLatch;
@@ -25,7 +27,8 @@ import java.util.concurrent.TimeUnit;
 
 /**
  * Wrapper around {@link Log} to allow writing to a file.
- * This class can safely be called from main thread.
+ * This class can safely be called from main thread: callers only append a record to an in-memory
+ * buffer, the records are formatted and written to the file in batches on a background thread.
  *
  * Note: This should only be used for logging errors which have a persistent effect on user's data,
  * but whose effect may not be visible immediately.
@@ -39,9 +42,17 @@ public final class FileLog {
 
     private static final long MAX_LOG_FILE_SIZE = 8 << 20;  // 4 mb
 
+    // Maximum number of records waiting to be written, further records are dropped
+    private static final int MAX_PENDING_RECORDS = 1024;
+
     private static Handler sHandler = null;
     private static File sLogsDirectory = null;
 
+    // Records appended by the callers, swapped with sWritingRecords by the writer thread
+    private static LogRecords sPendingRecords = new LogRecords(MAX_PENDING_RECORDS);
+    private static LogRecords sWritingRecords = new LogRecords(MAX_PENDING_RECORDS);
+    private static int sDroppedRecords = 0;
+
     public static final int LOG_DAYS = 4;
 
     public static void setDir(File logsDir) {
@@ -55,6 +66,16 @@ public final class FileLog {
             }
         }
         sLogsDirectory = logsDir;
+        if (ENABLED) {
+            boolean hasPendingRecords;
+            synchronized (LogRecords.class) {
+                hasPendingRecords = sPendingRecords.count > 0;
+            }
+            if (hasPendingRecords) {
+                // Write the records appended before the directory was set, or to the old thread
+                getHandler().sendEmptyMessage(LogWriterCallback.MSG_WRITE);
+            }
+        }
     }
 
     public static void d(String tag, String msg, Exception e) {
@@ -105,11 +126,21 @@ public final class FileLog {
         if (!ENABLED) {
             return;
         }
-        String out = String.format("%s %s %s", DATE_FORMAT.format(new Date()), tag, msg);
-        if (e != null) {
-            out += "\n" + Log.getStackTraceString(e);
+        long time = System.currentTimeMillis();
+        boolean wasEmpty;
+        synchronized (LogRecords.class) {
+            LogRecords records = sPendingRecords;
+            if (records.count == MAX_PENDING_RECORDS) {
+                sDroppedRecords++;
+                return;
+            }
+            wasEmpty = records.count == 0;
+            records.add(time, tag, msg, e);
+        }
+        if (wasEmpty) {
+            // The writer takes all the records appended until it runs
+            getHandler().sendEmptyMessage(LogWriterCallback.MSG_WRITE);
         }
-        Message.obtain(getHandler(), LogWriterCallback.MSG_WRITE, out).sendToTarget();
     }
 
     @VisibleForTesting
@@ -154,12 +185,88 @@ public final class FileLog {
 
         private String mCurrentFileName = null;
         private PrintWriter mCurrentWriter = null;
+        private final Date mDate = new Date();
 
         private void closeWriter() {
             IOUtils.closeSilently(mCurrentWriter);
             mCurrentWriter = null;
         }
 
+        /**
+         * Takes the pending records and writes them to the current log file
+         */
+        private void writePendingRecords() {
+            LogRecords records;
+            int dropped;
+            synchronized (LogRecords.class) {
+                records = sPendingRecords;
+                sPendingRecords = sWritingRecords;
+                sWritingRecords = records;
+                dropped = sDroppedRecords;
+                sDroppedRecords = 0;
+            }
+            if (records.count == 0 && dropped == 0) {
+                return;
+            }
+
+            Calendar cal = Calendar.getInstance();
+            // suffix with 0 or 1 based on the day of the year.
+            String fileName = FILE_NAME_PREFIX + (cal.get(Calendar.DAY_OF_YEAR) % LOG_DAYS);
+
+            if (!fileName.equals(mCurrentFileName)) {
+                closeWriter();
+            }
+
+            try {
+                if (mCurrentWriter == null) {
+                    mCurrentFileName = fileName;
+
+                    boolean append = false;
+                    File logFile = new File(sLogsDirectory, fileName);
+                    if (logFile.exists()) {
+                        Calendar modifiedTime = Calendar.getInstance();
+                        modifiedTime.setTimeInMillis(logFile.lastModified());
+
+                        // If the file was modified more that 36 hours ago, purge the file.
+                        // We use instead of 24 to account for day-365 followed by day-1
+                        modifiedTime.add(Calendar.HOUR, 36);
+                        append = cal.before(modifiedTime)
+                                && logFile.length() < MAX_LOG_FILE_SIZE;
+                    }
+                    mCurrentWriter = new PrintWriter(new BufferedWriter(
+                            new FileWriter(logFile, append)));
+                }
+
+                for (int i = 0; i < records.count; i++) {
+                    mDate.setTime(records.times[i]);
+                    mCurrentWriter.print(DATE_FORMAT.format(mDate));
+                    mCurrentWriter.print(' ');
+                    mCurrentWriter.print(records.tags[i]);
+                    mCurrentWriter.print(' ');
+                    mCurrentWriter.println(records.messages[i]);
+                    if (records.errors[i] != null) {
+                        mCurrentWriter.println(Log.getStackTraceString(records.errors[i]));
+                    }
+                }
+                if (dropped > 0) {
+                    mDate.setTime(System.currentTimeMillis());
+                    mCurrentWriter.println(DATE_FORMAT.format(mDate) + " FileLog " + dropped
+                            + " log lines dropped");
+                }
+                mCurrentWriter.flush();
+
+                // Auto close file stream after some time.
+                sHandler.removeMessages(MSG_CLOSE);
+                sHandler.sendEmptyMessageDelayed(MSG_CLOSE, CLOSE_DELAY);
+            } catch (Exception e) {
+                Log.e("FileLog", "Error writing logs to file", e);
+                // Close stream, will try reopening during next log
+                closeWriter();
+            } finally {
+                records.clear();
+            }
+        }
+
         @Override
         public boolean handleMessage(Message msg) {
             if (sLogsDirectory == null || !ENABLED) {
@@ -167,44 +274,7 @@ public final class FileLog {
             }
             switch (msg.what) {
                 case MSG_WRITE: {
-                    Calendar cal = Calendar.getInstance();
-                    // suffix with 0 or 1 based on the day of the year.
-                    String fileName = FILE_NAME_PREFIX + (cal.get(Calendar.DAY_OF_YEAR) % LOG_DAYS);
-
-                    if (!fileName.equals(mCurrentFileName)) {
-                        closeWriter();
-                    }
-
-                    try {
-                        if (mCurrentWriter == null) {
-                            mCurrentFileName = fileName;
-
-                            boolean append = false;
-                            File logFile = new File(sLogsDirectory, fileName);
-                            if (logFile.exists()) {
-                                Calendar modifiedTime = Calendar.getInstance();
-                                modifiedTime.setTimeInMillis(logFile.lastModified());
-
-                                // If the file was modified more that 36 hours ago, purge the file.
-                                // We use instead of 24 to account for day-365 followed by day-1
-                                modifiedTime.add(Calendar.HOUR, 36);
-                                append = cal.before(modifiedTime)
-                                        && logFile.length() < MAX_LOG_FILE_SIZE;
-                            }
-                            mCurrentWriter = new PrintWriter(new FileWriter(logFile, append));
-                        }
-
-                        mCurrentWriter.println((String) msg.obj);
-                        mCurrentWriter.flush();
-
-                        // Auto close file stream after some time.
-                        sHandler.removeMessages(MSG_CLOSE);
-                        sHandler.sendEmptyMessageDelayed(MSG_CLOSE, CLOSE_DELAY);
-                    } catch (Exception e) {
-                        Log.e("FileLog", "Error writing logs to file", e);
-                        // Close stream, will try reopening during next log
-                        closeWriter();
-                    }
+                    writePendingRecords();
                     return true;
                 }
                 case MSG_CLOSE: {
@@ -212,6 +282,7 @@ public final class FileLog {
                     return true;
                 }
                 case MSG_FLUSH: {
+                    writePendingRecords();
                     closeWriter();
                     Pair<PrintWriter, CountDownLatch> p =
                             (Pair<PrintWriter, CountDownLatch>) msg.obj;
@@ -229,6 +300,40 @@ public final class FileLog {
         }
     }
 
+    /**
+     * Log records waiting to be written, stored in parallel arrays to avoid allocating per record
+     */
+    private static class LogRecords {
+
+        final long[] times;
+        final String[] tags;
+        final String[] messages;
+        final Exception[] errors;
+        int count = 0;
+
+        LogRecords(int capacity) {
+            times = new long[capacity];
+            tags = new String[capacity];
+            messages = new String[capacity];
+            errors = new Exception[capacity];
+        }
+
+        void add(long time, String tag, String msg, Exception e) {
+            times[count] = time;
+            tags[count] = tag;
+            messages[count] = msg;
+            errors[count] = e;
+            count++;
+        }
+
+        void clear() {
+            Arrays.fill(tags, 0, count, null);
+            Arrays.fill(messages, 0, count, null);
+            Arrays.fill(errors, 0, count, null);
+            count = 0;
+        }
+    }
+
     private static void dumpFile(PrintWriter out, String fileName) {
         File logFile = new File(sLogsDirectory, fileName);
         if (logFile.exists()) {
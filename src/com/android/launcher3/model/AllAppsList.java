@@ -32,7 +32,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import com.android.launcher3.AppFilter;
-import com.android.launcher3.compat.AlphabeticIndexCompat;
+import com.android.launcher3.compat.SectionNameCache;
 import com.android.launcher3.icons.IconCache;
 import com.android.launcher3.lineage.trust.AppLockHelper;
 import com.android.launcher3.model.BgDataModel.Callbacks;
@@ -40,14 +40,18 @@ import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.ItemInfo;
 import com.android.launcher3.pm.PackageInstallInfo;
 import com.android.launcher3.pm.UserCache;
+import com.android.launcher3.search.AppSearchIndex;
 import com.android.launcher3.util.ApiWrapper;
 import com.android.launcher3.util.FlagOp;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.SafeCloseable;
 
+import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -78,7 +82,19 @@ public class AllAppsList {
     private Consumer<AppInfo> mRemoveListener = NO_OP_CONSUMER;
     private AppLockHelper mAppLockHelper;
 
-    private AlphabeticIndexCompat mIndex;
+    private SectionNameCache mSectionNames;
+    private Collator mCollator;
+
+    /**
+     * Apps whose title changed since their section name and sort key were computed. AppInfo uses
+     * identity equality, so an app queued several times is only kept once.
+     */
+    private final LinkedHashSet<AppInfo> mPendingTitleKeys = new LinkedHashSet<>();
+
+    private final AppSearchIndex mSearchIndex = new AppSearchIndex();
+
+    /** Apps of {@link #data} by package name */
+    private final HashMap<String, ArrayList<AppInfo>> mAppsByPackage = new HashMap<>();
 
     /**
      * @see Callbacks#FLAG_HAS_SHORTCUT_PERMISSION
@@ -96,7 +112,15 @@ public class AllAppsList {
         mIconCache = iconCache;
         mAppFilter = appFilter;
         mAppLockHelper = appLockHelper;
-        mIndex = new AlphabeticIndexCompat(LocaleList.getDefault());
+        mSectionNames = new SectionNameCache(LocaleList.getDefault());
+        mCollator = Collator.getInstance();
+    }
+
+    /**
+     * Returns the number of apps in the list
+     */
+    public int size() {
+        return data.size();
     }
 
     /**
@@ -157,12 +181,14 @@ public class AllAppsList {
         }
         if (loadIcon) {
             mIconCache.getTitleAndIcon(info, activityInfo, false /* useLowResIcon */);
-            info.sectionName = mIndex.computeSectionName(info.title);
+            updateTitleKeys(info);
         } else {
             info.title = "";
         }
 
         data.add(info);
+        mSearchIndex.update(info);
+        addToPackageIndex(info);
         mDataChanged = true;
     }
 
@@ -183,20 +209,49 @@ public class AllAppsList {
 
         if (loadIcon) {
             mIconCache.getTitleAndIcon(promiseAppInfo, promiseAppInfo.usingLowResIcon());
-            promiseAppInfo.sectionName = mIndex.computeSectionName(promiseAppInfo.title);
+            updateTitleKeys(promiseAppInfo);
         } else {
             promiseAppInfo.title = "";
         }
 
         data.add(promiseAppInfo);
+        mSearchIndex.update(promiseAppInfo);
+        addToPackageIndex(promiseAppInfo);
         mDataChanged = true;
 
         return promiseAppInfo;
     }
 
+    /**
+     * Updates the section name, sort key and search entry of the app after its title changed
+     */
     public void updateSectionName(AppInfo appInfo) {
-        appInfo.sectionName = mIndex.computeSectionName(appInfo.title);
+        updateTitleKeys(appInfo);
+        mSearchIndex.update(appInfo);
+    }
+
+    /**
+     * Schedules the section name and sort key of the app to be computed before the apps are
+     * next copied, as they are only needed by the UI. This way an app whose title changes several
+     * times between binds is only processed once.
+     */
+    private void updateTitleKeys(AppInfo appInfo) {
+        mPendingTitleKeys.add(appInfo);
+    }
 
+    private void computePendingTitleKeys() {
+        for (AppInfo appInfo : mPendingTitleKeys) {
+            appInfo.sectionName = mSectionNames.getSectionName(appInfo.title);
+            appInfo.sortKey = mCollator.getCollationKey(appInfo.getSortingTitle());
+        }
+        mPendingTitleKeys.clear();
+    }
+
+    /**
+     * Returns the search index over the titles of {@link #data}
+     */
+    public AppSearchIndex getSearchIndex() {
+        return mSearchIndex;
     }
 
     /** Updates the given PackageInstallInfo's associated AppInfo's installation info. */
@@ -241,6 +296,9 @@ public class AllAppsList {
     private void removeApp(int index) {
         AppInfo removed = data.remove(index);
         if (removed != null) {
+            mSearchIndex.remove(removed);
+            removeFromPackageIndex(removed);
+            mPendingTitleKeys.remove(removed);
             mDataChanged = true;
             mRemoveListener.accept(removed);
         }
@@ -248,9 +306,17 @@ public class AllAppsList {
 
     public void clear() {
         data.clear();
+        mSearchIndex.clear();
+        mAppsByPackage.clear();
         mDataChanged = false;
-        // Reset the index as locales might have changed
-        mIndex = new AlphabeticIndexCompat(LocaleList.getDefault());
+        mPendingTitleKeys.clear();
+        // Reset the index if locales changed, otherwise the section names of the reloaded
+        // apps are found in the cache.
+        LocaleList locales = LocaleList.getDefault();
+        if (!mSectionNames.isFor(locales)) {
+            mSectionNames = new SectionNameCache(locales);
+            mCollator = Collator.getInstance();
+        }
     }
 
     /**
@@ -299,7 +365,7 @@ public class AllAppsList {
         for (AppInfo info : data) {
             if (info.user.equals(user) && packages.contains(info.componentName.getPackageName())) {
                 mIconCache.updateTitleAndIcon(info);
-                info.sectionName = mIndex.computeSectionName(info.title);
+                updateSectionName(info);
                 mDataChanged = true;
             }
         }
@@ -342,7 +408,7 @@ public class AllAppsList {
                     Intent launchIntent = AppInfo.makeLaunchIntent(info);
 
                     mIconCache.getTitleAndIcon(applicationInfo, info, false /* useLowResIcon */);
-                    applicationInfo.sectionName = mIndex.computeSectionName(applicationInfo.title);
+                    updateSectionName(applicationInfo);
                     applicationInfo.intent = launchIntent;
                     AppInfo.updateRuntimeFlagsForActivityTarget(applicationInfo, info,
                             userCache.getUserInfo(user), apiWrapper, pmHelper);
@@ -381,6 +447,43 @@ public class AllAppsList {
         return false;
     }
 
+    private void addToPackageIndex(AppInfo info) {
+        if (info.componentName != null) {
+            mAppsByPackage.computeIfAbsent(info.componentName.getPackageName(),
+                    k -> new ArrayList<>(1)).add(info);
+        }
+    }
+
+    private void removeFromPackageIndex(AppInfo info) {
+        if (info.componentName == null) {
+            return;
+        }
+        String packageName = info.componentName.getPackageName();
+        ArrayList<AppInfo> apps = mAppsByPackage.get(packageName);
+        if (apps != null && apps.remove(info) && apps.isEmpty()) {
+            mAppsByPackage.remove(packageName);
+        }
+    }
+
+    /**
+     * Returns the app of {@param packageName}, for any user, which comes first in
+     * {@link #copyData()}, or null if the package has no app in the list.
+     */
+    @Nullable
+    public AppInfo findAppForPackage(@NonNull String packageName) {
+        ArrayList<AppInfo> apps = mAppsByPackage.get(packageName);
+        if (apps == null) {
+            return null;
+        }
+        AppInfo first = null;
+        for (AppInfo info : apps) {
+            if (first == null || COMPONENT_KEY_COMPARATOR.compare(info, first) < 0) {
+                first = info;
+            }
+        }
+        return first;
+    }
+
     /**
      * Find an AppInfo object for the given componentName
      *
@@ -397,6 +500,7 @@ public class AllAppsList {
     }
 
     public AppInfo[] copyData() {
+        computePendingTitleKeys();
         AppInfo[] result = data.toArray(EMPTY_ARRAY);
         Arrays.sort(result, COMPONENT_KEY_COMPARATOR);
         return result;
@@ -139,6 +139,14 @@ public class BgDataModel {
     public int lastLoadId = -1;
     public boolean isFirstPagePinnedItemEnabled = FeatureFlags.USE_QUICKSPACE_VIEW;
 
+    /**
+     * Latest published copy of the items, read without holding the model lock
+     */
+    private volatile Snapshot mSnapshot = Snapshot.EMPTY;
+    private int mSnapshotVersion = 0;
+    private int mBatchUpdateDepth = 0;
+    private boolean mSnapshotDirty = false;
+
     /**
      * Clears all the data
      */
@@ -149,6 +157,56 @@ public class BgDataModel {
         itemsIdMap.clear();
         deepShortcutMap.clear();
         extraItems.clear();
+        markItemsChanged();
+        publishSnapshot();
+    }
+
+    /**
+     * Returns an immutable copy of the items as of the last published change. It can be called
+     * from any thread without blocking the model thread, but may not yet reflect a change which
+     * is being applied.
+     */
+    @NonNull
+    public Snapshot getSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Records that the item collections have changed, so that the next
+     * {@link #publishSnapshot()} copies them. Must be called after modifying the public item
+     * collections directly; the mutators of this class call it themselves.
+     */
+    public synchronized void markItemsChanged() {
+        mSnapshotDirty = true;
+    }
+
+    /**
+     * Publishes a new {@link Snapshot} of the current items if they changed since the last one.
+     * This is called once at the end of each model task, so a series of changes only publishes
+     * once and tasks which only read the model do not copy it.
+     */
+    public synchronized void publishSnapshot() {
+        if (mBatchUpdateDepth > 0 || !mSnapshotDirty) {
+            return;
+        }
+        mSnapshotDirty = false;
+        mSnapshot = new Snapshot(++mSnapshotVersion, this);
+    }
+
+    /**
+     * Defers publishing snapshots until the matching {@link #endBatchUpdate()}, so that a series
+     * of changes, like a full load, only publishes once.
+     */
+    public synchronized void beginBatchUpdate() {
+        mBatchUpdateDepth++;
+    }
+
+    /**
+     * Ends a batch started with {@link #beginBatchUpdate()}, publishing any deferred change
+     */
+    public synchronized void endBatchUpdate() {
+        mBatchUpdateDepth--;
+        publishSnapshot();
     }
 
     /**
@@ -239,6 +297,7 @@ public class BgDataModel {
             }
             itemsIdMap.remove(item.id);
         }
+        markItemsChanged();
         updatedDeepShortcuts.forEach(user -> updateShortcutPinnedState(context, user));
     }
 
@@ -290,6 +349,7 @@ public class BgDataModel {
                 appWidgets.add((LauncherAppWidgetInfo) item);
                 break;
         }
+        markItemsChanged();
         if (newItem && item.itemType == LauncherSettings.Favorites.ITEM_TYPE_DEEP_SHORTCUT) {
             updateShortcutPinnedState(context, item.user);
         }
@@ -386,6 +446,7 @@ public class BgDataModel {
             // pair is getting processed, in WorkspaceItemProcessor.processFolderOrAppPair().
             collectionInfo = new FolderInfo();
             collections.put(id, collectionInfo);
+            markItemsChanged();
         }
         return collectionInfo;
     }
@@ -422,7 +483,8 @@ public class BgDataModel {
     }
 
     /**
-     * Returns a list containing all workspace items including widgets.
+     * Returns a list containing all workspace items including widgets. Callers off the model
+     * thread should use {@link Snapshot#allWorkspaceItems} instead, which does not lock the model.
      */
     public synchronized ArrayList<ItemInfo> getAllWorkspaceItems() {
         ArrayList<ItemInfo> items = new ArrayList<>(workspaceItems.size() + appWidgets.size());
@@ -452,6 +514,75 @@ public class BgDataModel {
         }
     }
 
+    /**
+     * An immutable copy of the workspace items, collections and widgets of the model. The lists
+     * and maps are copies, but the items themselves are shared with the model and should only be
+     * read.
+     */
+    public static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot();
+
+        /** Incremented for every published snapshot */
+        public final int version;
+        /** Folders and shortcuts directly on the home screen or hotseat */
+        public final List<ItemInfo> workspaceItems;
+        public final List<LauncherAppWidgetInfo> appWidgets;
+        /** {@link #workspaceItems} followed by {@link #appWidgets} */
+        public final List<ItemInfo> allWorkspaceItems;
+        /** All the shortcuts, folders, app pairs and widgets, including the ones in folders */
+        public final List<ItemInfo> items;
+
+        private final IntSparseArrayMap<ItemInfo> mItemsIdMap;
+        private final IntSparseArrayMap<CollectionInfo> mCollections;
+
+        private Snapshot() {
+            version = 0;
+            workspaceItems = Collections.emptyList();
+            appWidgets = Collections.emptyList();
+            allWorkspaceItems = Collections.emptyList();
+            items = Collections.emptyList();
+            mItemsIdMap = new IntSparseArrayMap<>();
+            mCollections = new IntSparseArrayMap<>();
+        }
+
+        private Snapshot(int version, BgDataModel model) {
+            this.version = version;
+            workspaceItems = Collections.unmodifiableList(new ArrayList<>(model.workspaceItems));
+            appWidgets = Collections.unmodifiableList(new ArrayList<>(model.appWidgets));
+            ArrayList<ItemInfo> all = new ArrayList<>(workspaceItems.size() + appWidgets.size());
+            all.addAll(workspaceItems);
+            all.addAll(appWidgets);
+            allWorkspaceItems = Collections.unmodifiableList(all);
+            mItemsIdMap = model.itemsIdMap.clone();
+            mCollections = model.collections.clone();
+            ArrayList<ItemInfo> itemList = new ArrayList<>(mItemsIdMap.size());
+            for (ItemInfo info : mItemsIdMap) {
+                itemList.add(info);
+            }
+            items = Collections.unmodifiableList(itemList);
+        }
+
+        @Nullable
+        public ItemInfo getItem(int id) {
+            return mItemsIdMap.get(id);
+        }
+
+        @Nullable
+        public CollectionInfo getCollection(int id) {
+            return mCollections.get(id);
+        }
+
+        /**
+         * Calls {@param op} for every folder and app pair
+         */
+        public void forEachCollection(Consumer<CollectionInfo> op) {
+            for (CollectionInfo info : mCollections) {
+                op.accept(info);
+            }
+        }
+    }
+
     /**
      * An object containing items corresponding to a fixed container
      */
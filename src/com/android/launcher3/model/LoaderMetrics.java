@@ -0,0 +1,319 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import android.os.Debug;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+
+/**
+ * Records per-stage timing and memory metrics of the last few runs of {@link LoaderTask}, so that
+ * cold load regressions can be tracked through dumpsys or {@link #getRecentLoads()}.
+ */
+public class LoaderMetrics {
+
+    public static final int MAX_LOADS_TRACKED = 10;
+
+    public static final String STAGE_LOAD_WORKSPACE = "loadWorkspace";
+    public static final String STAGE_BIND_WORKSPACE = "bindWorkspace";
+    public static final String STAGE_LOAD_ALL_APPS = "loadAllApps";
+    public static final String STAGE_BIND_ALL_APPS = "bindAllApps";
+    public static final String STAGE_UPDATE_ICON_CACHE = "updateIconCache";
+    public static final String STAGE_LOAD_DEEP_SHORTCUTS = "loadDeepShortcuts";
+    public static final String STAGE_LOAD_WIDGETS = "loadWidgets";
+    public static final String STAGE_BIND_WIDGETS = "bindWidgets";
+
+    private static final String RUNTIME_STAT_BYTES_ALLOCATED = "art.gc.bytes-allocated";
+    private static final String RUNTIME_STAT_GC_COUNT = "art.gc.gc-count";
+
+    private final ArrayDeque<LoadRecord> mLoads = new ArrayDeque<>(MAX_LOADS_TRACKED);
+
+    /**
+     * Starts recording a new load, dropping the oldest one if needed
+     */
+    @NonNull
+    public LoadRecord beginLoad() {
+        LoadRecord record = new LoadRecord();
+        synchronized (mLoads) {
+            if (mLoads.size() >= MAX_LOADS_TRACKED) {
+                mLoads.removeFirst();
+            }
+            mLoads.addLast(record);
+        }
+        return record;
+    }
+
+    /**
+     * Returns a copy of the recorded loads, oldest first
+     */
+    @NonNull
+    public List<LoadRecord> getRecentLoads() {
+        synchronized (mLoads) {
+            return new ArrayList<>(mLoads);
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        List<LoadRecord> loads = getRecentLoads();
+        writer.println(prefix + "LoaderMetrics: last " + loads.size() + " loads");
+        SimpleDateFormat format = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+        for (LoadRecord load : loads) {
+            writer.println(prefix + "  load at " + format.format(new Date(load.startTimeMillis))
+                    + " status=" + load.getStatus());
+            for (StageMetrics stage : load.getStages()) {
+                writer.println(prefix + "    " + stage);
+            }
+        }
+    }
+
+    /**
+     * Metrics of a single {@link LoaderTask} run
+     */
+    public static class LoadRecord {
+
+        public static final int STATUS_RUNNING = 0;
+        public static final int STATUS_COMPLETED = 1;
+        public static final int STATUS_CANCELLED = 2;
+        public static final int STATUS_FAILED = 3;
+
+        public final long startTimeMillis = System.currentTimeMillis();
+
+        // Stages in the order they were started, null until they end
+        private final ArrayList<StageMetrics> mStages = new ArrayList<>();
+        @Nullable
+        private StageTracker mCurrentStage;
+        private int mStatus = STATUS_RUNNING;
+
+        /**
+         * Starts measuring the stage {@param name} on the calling thread. The previous stage is
+         * ended if it was still open.
+         */
+        public synchronized void beginStage(String name) {
+            if (mCurrentStage != null) {
+                endStage(StageMetrics.UNKNOWN_COUNT);
+            }
+            mCurrentStage = new StageTracker(name, mStages.size());
+            mStages.add(null);
+        }
+
+        /**
+         * Ends the current stage, recording the number of items it processed
+         */
+        public synchronized void endStage(int itemCount) {
+            endStage(StageMetrics.UNKNOWN_COUNT, itemCount);
+        }
+
+        /**
+         * Ends the current stage, recording the number of database rows or framework records it
+         * read in addition to the items it produced
+         */
+        public synchronized void endStage(int rowCount, int itemCount) {
+            if (mCurrentStage != null) {
+                mStages.set(mCurrentStage.index,
+                        mCurrentStage.end(rowCount, itemCount, false /* cancelled */));
+                mCurrentStage = null;
+            }
+        }
+
+        /**
+         * Ends the current stage once {@param executor} has run all the tasks posted to it so far,
+         * for stages which only post their work to another thread, like binding. The wall time
+         * then covers that work, while the cpu time only covers the calling thread.
+         */
+        public synchronized void endStageAfter(Executor executor, int itemCount) {
+            StageTracker stage = mCurrentStage;
+            if (stage == null) {
+                return;
+            }
+            mCurrentStage = null;
+            long cpuTimeNanos = stage.getCpuTimeNanos();
+            executor.execute(() -> {
+                synchronized (this) {
+                    mStages.set(stage.index, stage.end(cpuTimeNanos, StageMetrics.UNKNOWN_COUNT,
+                            itemCount, false /* cancelled */));
+                }
+            });
+        }
+
+        /**
+         * Marks the load as finished with the given status, ending any open stage. If the load
+         * was cancelled, the open stage is marked as cancelled.
+         */
+        public synchronized void finish(int status) {
+            if (mCurrentStage != null) {
+                mStages.set(mCurrentStage.index, mCurrentStage.end(StageMetrics.UNKNOWN_COUNT,
+                        StageMetrics.UNKNOWN_COUNT, status == STATUS_CANCELLED));
+                mCurrentStage = null;
+            }
+            mStatus = status;
+        }
+
+        public synchronized int getStatus() {
+            return mStatus;
+        }
+
+        /**
+         * Returns the stages which ended, in the order they were started
+         */
+        @NonNull
+        public synchronized List<StageMetrics> getStages() {
+            ArrayList<StageMetrics> stages = new ArrayList<>(mStages.size());
+            for (StageMetrics stage : mStages) {
+                if (stage != null) {
+                    stages.add(stage);
+                }
+            }
+            return Collections.unmodifiableList(stages);
+        }
+    }
+
+    /**
+     * Values of a stage at the time it started
+     */
+    private static class StageTracker {
+
+        final String name;
+        final int index;
+
+        private final long mStartWallNanos;
+        private final long mStartCpuNanos;
+        private final long mStartAllocatedBytes;
+        private final long mStartGcCount;
+
+        StageTracker(String name, int index) {
+            this.name = name;
+            this.index = index;
+            mStartWallNanos = SystemClock.elapsedRealtimeNanos();
+            mStartCpuNanos = Debug.threadCpuTimeNanos();
+            mStartAllocatedBytes = getRuntimeStat(RUNTIME_STAT_BYTES_ALLOCATED);
+            mStartGcCount = getRuntimeStat(RUNTIME_STAT_GC_COUNT);
+        }
+
+        long getCpuTimeNanos() {
+            return Debug.threadCpuTimeNanos() - mStartCpuNanos;
+        }
+
+        StageMetrics end(int rowCount, int itemCount, boolean cancelled) {
+            return end(getCpuTimeNanos(), rowCount, itemCount, cancelled);
+        }
+
+        StageMetrics end(long cpuTimeNanos, int rowCount, int itemCount, boolean cancelled) {
+            return new StageMetrics(name,
+                    SystemClock.elapsedRealtimeNanos() - mStartWallNanos,
+                    cpuTimeNanos,
+                    getRuntimeStat(RUNTIME_STAT_BYTES_ALLOCATED) - mStartAllocatedBytes,
+                    getRuntimeStat(RUNTIME_STAT_GC_COUNT) - mStartGcCount,
+                    rowCount, itemCount, cancelled);
+        }
+
+        private static long getRuntimeStat(String name) {
+            try {
+                String value = Debug.getRuntimeStat(name);
+                return value == null ? 0 : Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Metrics of one stage of a load. Allocations and GC counts are process wide.
+     */
+    public static final class StageMetrics {
+
+        public static final int UNKNOWN_COUNT = -1;
+
+        private final String mName;
+        private final long mWallTimeNanos;
+        private final long mCpuTimeNanos;
+        private final long mAllocatedBytes;
+        private final long mGcCount;
+        private final int mRowCount;
+        private final int mItemCount;
+        private final boolean mCancelled;
+
+        StageMetrics(String name, long wallTimeNanos, long cpuTimeNanos, long allocatedBytes,
+                long gcCount, int rowCount, int itemCount, boolean cancelled) {
+            mName = name;
+            mWallTimeNanos = wallTimeNanos;
+            mCpuTimeNanos = cpuTimeNanos;
+            mAllocatedBytes = allocatedBytes;
+            mGcCount = gcCount;
+            mRowCount = rowCount;
+            mItemCount = itemCount;
+            mCancelled = cancelled;
+        }
+
+        public String getName() {
+            return mName;
+        }
+
+        public long getWallTimeNanos() {
+            return mWallTimeNanos;
+        }
+
+        /** Returns the cpu time of the thread which ran the loader during this stage */
+        public long getCpuTimeNanos() {
+            return mCpuTimeNanos;
+        }
+
+        public long getAllocatedBytes() {
+            return mAllocatedBytes;
+        }
+
+        public long getGcCount() {
+            return mGcCount;
+        }
+
+        /** Returns the number of rows or records read, or {@link #UNKNOWN_COUNT} */
+        public int getRowCount() {
+            return mRowCount;
+        }
+
+        /** Returns the number of items produced or bound, or {@link #UNKNOWN_COUNT} */
+        public int getItemCount() {
+            return mItemCount;
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+
+        @Override
+        public String toString() {
+            return mName
+                    + ": wall=" + mWallTimeNanos / 1_000_000 + "ms"
+                    + " cpu=" + mCpuTimeNanos / 1_000_000 + "ms"
+                    + " alloc=" + mAllocatedBytes / 1024 + "KB"
+                    + " gc=" + mGcCount
+                    + (mRowCount != UNKNOWN_COUNT ? " rows=" + mRowCount : "")
+                    + (mItemCount != UNKNOWN_COUNT ? " items=" + mItemCount : "")
+                    + (mCancelled ? " cancelled" : "");
+        }
+    }
+}
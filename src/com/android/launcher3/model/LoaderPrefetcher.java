@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import android.os.Trace;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs independent queries needed by later stages of {@code LoaderTask#run} on a background
+ * executor, so that they overlap with the earlier stages. The results are still consumed, and
+ * bound, on the loader thread in the usual order.
+ */
+public class LoaderPrefetcher {
+
+    private static final String TAG = "LoaderPrefetcher";
+
+    /** How long to wait for a result before checking if the loader was stopped. */
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final Executor mExecutor;
+    private final List<Future<?>> mStarted = new ArrayList<>();
+    private boolean mCancelled;
+
+    public LoaderPrefetcher(Executor executor) {
+        mExecutor = executor;
+    }
+
+    /**
+     * Starts running {@param task} in the background, or returns null if the prefetcher was
+     * already cancelled.
+     */
+    @Nullable
+    public synchronized <T> Future<T> start(String name, Callable<T> task) {
+        if (mCancelled) {
+            return null;
+        }
+        FutureTask<T> future = new FutureTask<>(() -> {
+            Trace.beginSection("LoaderPrefetch: " + name);
+            try {
+                return task.call();
+            } finally {
+                Trace.endSection();
+            }
+        });
+        mStarted.add(future);
+        mExecutor.execute(future);
+        return future;
+    }
+
+    /**
+     * Waits for the result of {@param future}, calling {@param verifyNotStopped} periodically
+     * so that a stopped loader is not blocked on a prefetch.
+     *
+     * @return the result, or null if the prefetch was not started or failed. In that case the
+     *         caller should load the data itself.
+     * @throws CancellationException if {@param verifyNotStopped} throws it
+     */
+    @Nullable
+    public <T> T await(@Nullable Future<T> future, Runnable verifyNotStopped)
+            throws CancellationException {
+        if (future == null) {
+            return null;
+        }
+        while (true) {
+            verifyNotStopped.run();
+            try {
+                return future.get(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                // Check again if the loader was stopped
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Prefetch failed, loading on the loader thread", e.getCause());
+                return null;
+            } catch (CancellationException e) {
+                // Prefetches are only cancelled when the loader is stopped
+                verifyNotStopped.run();
+                return null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for prefetch");
+            }
+        }
+    }
+
+    /**
+     * Cancels all the running prefetches and prevents new ones from starting
+     */
+    public synchronized void cancelAll() {
+        mCancelled = true;
+        for (Future<?> future : mStarted) {
+            future.cancel(false /* mayInterruptIfRunning */);
+        }
+        mStarted.clear();
+    }
+}
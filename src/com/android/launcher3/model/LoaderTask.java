@@ -16,6 +16,7 @@
 
 package com.android.launcher3.model;
 
+import static com.android.launcher3.BuildConfig.WIDGETS_ENABLED;
 import static com.android.launcher3.BuildConfig.WIDGET_ON_FIRST_SCREEN;
 import static com.android.launcher3.Flags.enableLauncherBrMetricsFixed;
 import static com.android.launcher3.Flags.enableSmartspaceAsAWidget;
@@ -29,9 +30,19 @@ import static com.android.launcher3.model.BgDataModel.Callbacks.FLAG_PRIVATE_PRO
 import static com.android.launcher3.model.BgDataModel.Callbacks.FLAG_QUIET_MODE_CHANGE_PERMISSION;
 import static com.android.launcher3.model.BgDataModel.Callbacks.FLAG_QUIET_MODE_ENABLED;
 import static com.android.launcher3.model.BgDataModel.Callbacks.FLAG_WORK_PROFILE_QUIET_MODE_ENABLED;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_BIND_ALL_APPS;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_BIND_WIDGETS;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_BIND_WORKSPACE;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_LOAD_ALL_APPS;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_LOAD_DEEP_SHORTCUTS;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_LOAD_WIDGETS;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_LOAD_WORKSPACE;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_UPDATE_ICON_CACHE;
 import static com.android.launcher3.model.ModelUtils.filterCurrentWorkspaceItems;
 import static com.android.launcher3.model.data.ItemInfoWithIcon.FLAG_INSTALL_SESSION_ACTIVE;
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
+import static com.android.launcher3.util.Executors.PREFETCH_EXECUTOR;
 import static com.android.launcher3.util.PackageManagerHelper.hasShortcutsPermission;
 
 import android.appwidget.AppWidgetProviderInfo;
@@ -77,6 +88,7 @@ import com.android.launcher3.icons.LauncherActivityCachingLogic;
 import com.android.launcher3.icons.ShortcutCachingLogic;
 import com.android.launcher3.icons.cache.IconCacheUpdateHandler;
 import com.android.launcher3.logging.FileLog;
+import com.android.launcher3.model.LoaderMetrics.LoadRecord;
 import com.android.launcher3.model.data.AppInfo;
 import com.android.launcher3.model.data.AppPairInfo;
 import com.android.launcher3.model.data.CollectionInfo;
@@ -101,6 +113,7 @@ import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.PackageUserKey;
 import com.android.launcher3.util.TraceHelper;
 import com.android.launcher3.widget.WidgetInflater;
+import com.android.launcher3.widget.WidgetManagerHelper;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -110,6 +123,7 @@ import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.Future;
 
 /**
  * Runnable for the thread that loads the contents of the launcher:
@@ -156,6 +170,16 @@ public class LoaderTask implements Runnable {
     private boolean mItemsDeleted = false;
     private String mDbName;
 
+    private final LoaderPrefetcher mPrefetcher = new LoaderPrefetcher(PREFETCH_EXECUTOR);
+    @Nullable
+    private Future<Map<UserHandle, List<LauncherActivityInfo>>> mActivityListsPrefetch;
+    @Nullable
+    private Future<Map<UserHandle, List<ShortcutInfo>>> mDeepShortcutsPrefetch;
+    @Nullable
+    private Future<List<AppWidgetProviderInfo>> mWidgetProvidersPrefetch;
+
+    private int mWorkspaceRowCount;
+
     public LoaderTask(@NonNull LauncherAppState app, AllAppsList bgAllAppsList, BgDataModel bgModel,
             ModelDelegate modelDelegate, @NonNull BaseLauncherBinder launcherBinder) {
         this(app, bgAllAppsList, bgModel, modelDelegate, launcherBinder, new UserManagerState());
@@ -242,10 +266,14 @@ public class LoaderTask implements Runnable {
             restoreEventLogger = LauncherRestoreEventLogger.Companion
                     .newInstance(mApp.getContext());
         }
+        LoadRecord metrics = mApp.getModel().getLoaderMetrics().beginLoad();
         try (LauncherModel.LoaderTransaction transaction = mApp.getModel().beginLoader(this)) {
+            startPrefetch();
 
             List<ShortcutInfo> allShortcuts = new ArrayList<>();
+            metrics.beginStage(STAGE_LOAD_WORKSPACE);
             loadWorkspace(allShortcuts, "", memoryLogger, restoreEventLogger);
+            metrics.endStage(mWorkspaceRowCount, mBgDataModel.itemsIdMap.size());
 
             // Sanitize data re-syncs widgets/shortcuts based on the workspace loaded from db.
             // sanitizeData should not be invoked if the workspace is loaded from a db different
@@ -256,11 +284,15 @@ public class LoaderTask implements Runnable {
                 sanitizeFolders(mItemsDeleted);
                 sanitizeAppPairs();
                 sanitizeWidgetsShortcutsAndPackages();
+                mBgDataModel.publishSnapshot();
                 logASplit("sanitizeData");
             }
 
             verifyNotStopped();
+            metrics.beginStage(STAGE_BIND_WORKSPACE);
             mLauncherBinder.bindWorkspace(true /* incrementBindId */, /* isBindSync= */ false);
+            // The binder only posts the binding to the main thread
+            metrics.endStageAfter(MAIN_EXECUTOR, mBgDataModel.itemsIdMap.size());
             logASplit("bindWorkspace");
 
             mModelDelegate.workspaceLoadComplete();
@@ -276,11 +308,13 @@ public class LoaderTask implements Runnable {
             // second step
             Trace.beginSection("LoadAllApps");
             List<LauncherActivityInfo> allActivityList;
+            metrics.beginStage(STAGE_LOAD_ALL_APPS);
             try {
                 allActivityList = loadAllApps();
             } finally {
                 Trace.endSection();
             }
+            metrics.endStage(allActivityList.size(), mBgAllAppsList.size());
             logASplit("loadAllApps");
 
             if (FeatureFlags.CHANGE_MODEL_DELEGATE_LOADING_ORDER.get()) {
@@ -289,10 +323,13 @@ public class LoaderTask implements Runnable {
                 logASplit("allAppsDelegateItems");
             }
             verifyNotStopped();
+            metrics.beginStage(STAGE_BIND_ALL_APPS);
             mLauncherBinder.bindAllApps();
+            metrics.endStageAfter(MAIN_EXECUTOR, mBgAllAppsList.size());
             logASplit("bindAllApps");
 
             verifyNotStopped();
+            metrics.beginStage(STAGE_UPDATE_ICON_CACHE);
             IconCacheUpdateHandler updateHandler = mIconCache.getUpdateHandler();
             setIgnorePackages(updateHandler);
             updateHandler.updateIcons(allActivityList,
@@ -304,6 +341,7 @@ public class LoaderTask implements Runnable {
             logASplit("save shortcuts in icon cache");
             updateHandler.updateIcons(allShortcuts, new ShortcutCachingLogic(),
                     mApp.getModel()::onPackageIconsUpdated);
+            metrics.endStage(allActivityList.size() + allShortcuts.size());
 
             // Take a break
             waitForIdle();
@@ -311,7 +349,9 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
 
             // third step
+            metrics.beginStage(STAGE_LOAD_DEEP_SHORTCUTS);
             List<ShortcutInfo> allDeepShortcuts = loadDeepShortcuts();
+            metrics.endStage(allDeepShortcuts.size());
             logASplit("loadDeepShortcuts");
 
             verifyNotStopped();
@@ -329,12 +369,17 @@ public class LoaderTask implements Runnable {
             verifyNotStopped();
 
             // fourth step
+            metrics.beginStage(STAGE_LOAD_WIDGETS);
             List<ComponentWithLabelAndIcon> allWidgetsList =
-                    mBgDataModel.widgetsModel.update(mApp, null);
+                    mBgDataModel.widgetsModel.update(mApp, null,
+                            mPrefetcher.await(mWidgetProvidersPrefetch, this::verifyNotStopped));
+            metrics.endStage(allWidgetsList.size());
             logASplit("load widgets");
 
             verifyNotStopped();
+            metrics.beginStage(STAGE_BIND_WIDGETS);
             mLauncherBinder.bindWidgets();
+            metrics.endStageAfter(MAIN_EXECUTOR, allWidgetsList.size());
             logASplit("bindWidgets");
             verifyNotStopped();
             LauncherPrefs prefs = LauncherPrefs.get(mApp.getContext());
@@ -371,6 +416,7 @@ public class LoaderTask implements Runnable {
 
             mModelDelegate.modelLoadComplete();
             transaction.commit();
+            metrics.finish(LoadRecord.STATUS_COMPLETED);
             memoryLogger.clearLogs();
             if (mIsRestoreFromBackup) {
                 mIsRestoreFromBackup = false;
@@ -381,19 +427,57 @@ public class LoaderTask implements Runnable {
             }
         } catch (CancellationException e) {
             // Loader stopped, ignore
+            metrics.finish(LoadRecord.STATUS_CANCELLED);
             logASplit("Cancelled");
         } catch (Exception e) {
+            metrics.finish(LoadRecord.STATUS_FAILED);
             memoryLogger.printLogs();
             throw e;
+        } finally {
+            mPrefetcher.cancelAll();
         }
         TraceHelper.INSTANCE.endSection();
     }
 
     public synchronized void stopLocked() {
         mStopped = true;
+        mPrefetcher.cancelAll();
         this.notify();
     }
 
+    /**
+     * Starts the queries which do not depend on the workspace, so that they run while the
+     * workspace is loaded and bound. Each stage falls back to querying on the loader thread if
+     * its prefetch fails.
+     */
+    private void startPrefetch() {
+        final List<UserHandle> profiles = mUserCache.getUserProfiles();
+        mActivityListsPrefetch = mPrefetcher.start("activityLists", () -> {
+            Map<UserHandle, List<LauncherActivityInfo>> result = new HashMap<>();
+            for (UserHandle user : profiles) {
+                result.put(user, mLauncherApps.getActivityList(null, user));
+            }
+            return result;
+        });
+        if (hasShortcutsPermission(mApp.getContext())) {
+            mDeepShortcutsPrefetch = mPrefetcher.start("deepShortcuts", () -> {
+                Map<UserHandle, List<ShortcutInfo>> result = new HashMap<>();
+                for (UserHandle user : profiles) {
+                    if (mUserManager.isUserUnlocked(user)) {
+                        result.put(user, new ShortcutRequest(mApp.getContext(), user)
+                                .query(ShortcutRequest.ALL));
+                    }
+                }
+                return result;
+            });
+        }
+        if (WIDGETS_ENABLED) {
+            // Skipped like the widgets stage itself, which loads nothing without widgets
+            mWidgetProvidersPrefetch = mPrefetcher.start("widgetProviders",
+                    () -> new WidgetManagerHelper(mApp.getContext()).getAllProviders(null));
+        }
+    }
+
     protected void loadWorkspace(
             List<ShortcutInfo> allDeepShortcuts,
             String selection,
@@ -401,9 +485,11 @@ public class LoaderTask implements Runnable {
             @Nullable LauncherRestoreEventLogger restoreEventLogger
     ) {
         Trace.beginSection("LoadWorkspace");
+        mBgDataModel.beginBatchUpdate();
         try {
             loadWorkspaceImpl(allDeepShortcuts, selection, memoryLogger, restoreEventLogger);
         } finally {
+            mBgDataModel.endBatchUpdate();
             Trace.endSection();
         }
         logASplit("loadWorkspace");
@@ -467,7 +553,9 @@ public class LoaderTask implements Runnable {
                         widgetInflater, mPmHelper, iconRequestInfos, unlockedUsers,
                         allDeepShortcuts);
 
+                mWorkspaceRowCount = 0;
                 while (!mStopped && c.moveToNext()) {
+                    mWorkspaceRowCount++;
                     itemProcessor.processItem();
                 }
                 tryLoadWorkspaceIconsInBulk(iconRequestInfos);
@@ -643,6 +731,7 @@ public class LoaderTask implements Runnable {
                     mBgDataModel.collections.remove(folderId);
                     mBgDataModel.itemsIdMap.remove(folderId);
                 }
+                mBgDataModel.markItemsChanged();
             }
         }
     }
@@ -662,6 +751,7 @@ public class LoaderTask implements Runnable {
                 mBgDataModel.collections.remove(id);
                 mBgDataModel.itemsIdMap.remove(id);
             }
+            mBgDataModel.markItemsChanged();
         }
     }
 
@@ -692,9 +782,14 @@ public class LoaderTask implements Runnable {
         List<IconRequestInfo<AppInfo>> iconRequestInfos = new ArrayList<>();
         boolean isWorkProfileQuiet = false;
         boolean isPrivateProfileQuiet = false;
+        Map<UserHandle, List<LauncherActivityInfo>> prefetchedApps =
+                mPrefetcher.await(mActivityListsPrefetch, this::verifyNotStopped);
         for (UserHandle user : profiles) {
             // Query for the set of apps
-            final List<LauncherActivityInfo> apps = mLauncherApps.getActivityList(null, user);
+            final List<LauncherActivityInfo> apps =
+                    prefetchedApps != null && prefetchedApps.containsKey(user)
+                            ? prefetchedApps.get(user)
+                            : mLauncherApps.getActivityList(null, user);
             // Fail if we don't have any apps
             // TODO: Fix this. Only fail for the current user.
             if (apps == null || apps.isEmpty()) {
@@ -789,10 +884,15 @@ public class LoaderTask implements Runnable {
         mBgDataModel.deepShortcutMap.clear();
 
         if (mBgAllAppsList.hasShortcutHostPermission()) {
+            Map<UserHandle, List<ShortcutInfo>> prefetchedShortcuts =
+                    mPrefetcher.await(mDeepShortcutsPrefetch, this::verifyNotStopped);
             for (UserHandle user : mUserCache.getUserProfiles()) {
                 if (mUserManager.isUserUnlocked(user)) {
-                    List<ShortcutInfo> shortcuts = new ShortcutRequest(mApp.getContext(), user)
-                            .query(ShortcutRequest.ALL);
+                    List<ShortcutInfo> shortcuts =
+                            prefetchedShortcuts != null && prefetchedShortcuts.containsKey(user)
+                                    ? prefetchedShortcuts.get(user)
+                                    : new ShortcutRequest(mApp.getContext(), user)
+                                            .query(ShortcutRequest.ALL);
                     allShortcuts.addAll(shortcuts);
                     mBgDataModel.updateDeepShortcutCounts(null, user, shortcuts);
                 }
@@ -803,7 +903,7 @@ public class LoaderTask implements Runnable {
 
     private void loadFolderNames() {
         FolderNameProvider provider = FolderNameProvider.newInstance(mApp.getContext(),
-                mBgAllAppsList.data, mBgDataModel.collections);
+                mBgAllAppsList, mBgDataModel.collections);
 
         synchronized (mBgDataModel) {
             for (int i = 0; i < mBgDataModel.collections.size(); i++) {
@@ -18,10 +18,12 @@ package com.android.launcher3.model;
 
 import static com.android.launcher3.LauncherSettings.Favorites.TABLE_NAME;
 import static com.android.launcher3.provider.LauncherDbUtils.itemIdMatch;
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
 import static com.android.launcher3.util.Executors.MODEL_EXECUTOR;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.util.Log;
 
@@ -52,7 +54,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
@@ -60,6 +64,12 @@ import java.util.stream.StreamSupport;
 
 /**
  * Class for handling model updates.
+ *
+ * Updates to existing items made on the UI thread are queued and written together at the end of
+ * the current frame, in a single transaction where the updates to the same item are merged. The
+ * queue is shared by all the writers of a model, see {@link UpdateQueue}. Any other write first
+ * flushes the queued updates, so the writes still reach the model thread in the order they were
+ * made.
  */
 public class ModelWriter {
 
@@ -80,11 +90,16 @@ public class ModelWriter {
     private boolean mPreparingToUndo;
     private final CellPosMapper mCellPosMapper;
 
+    // Shared by all the writers of the model
+    private final UpdateQueue mUpdateQueue;
+
     public ModelWriter(Context context, LauncherModel model, BgDataModel dataModel,
-            boolean verifyChanges, CellPosMapper cellPosMapper, @Nullable Callbacks owner) {
+            UpdateQueue updateQueue, boolean verifyChanges, CellPosMapper cellPosMapper,
+            @Nullable Callbacks owner) {
         mContext = context;
         mModel = model;
         mBgDataModel = dataModel;
+        mUpdateQueue = updateQueue;
         mVerifyChanges = verifyChanges;
         mOwner = owner;
         mCellPosMapper = cellPosMapper;
@@ -378,11 +393,21 @@ public class ModelWriter {
     public void abortDelete() {
         mPreparingToUndo = false;
         mDeleteRunnables.clear();
+        flushPendingUpdates();
         // We do a full reload here instead of just a rebind because Folders change their internal
         // state when dragging an item out, which clobbers the rebind unless we load from the DB.
         mModel.forceReload();
     }
 
+    /**
+     * Sends the item updates queued by all the writers of the model to the model thread right
+     * away. Any task posted to the model thread after this call runs after these updates are
+     * written.
+     */
+    public void flushPendingUpdates() {
+        mUpdateQueue.flush();
+    }
+
     private void notifyOtherCallbacks(CallbackTask task) {
         if (mOwner == null) {
             // If the call is happening from a model, it will take care of updating the callbacks
@@ -408,6 +433,15 @@ public class ModelWriter {
             mItemId = item.id;
         }
 
+        @Override
+        public void executeOnModelThread() {
+            mUpdateQueue.enqueue(this);
+        }
+
+        ContentValues getValues() {
+            return mWriter.get().getValues(mContext);
+        }
+
         @Override
         public void runImpl() {
             mModel.getModelDbController().update(
@@ -445,7 +479,7 @@ public class ModelWriter {
 
     private abstract class UpdateItemBaseRunnable extends ModelTask {
         private final StackTraceElement[] mStackTrace;
-        private final ModelVerifier mVerifier = new ModelVerifier();
+        final ModelVerifier mVerifier = new ModelVerifier();
 
         UpdateItemBaseRunnable() {
             mStackTrace = new Throwable().getStackTrace();
@@ -454,50 +488,56 @@ public class ModelWriter {
         protected void updateItemArrays(ItemInfo item, int itemId) {
             // Lock on mBgLock *after* the db operation
             synchronized (mBgDataModel) {
-                checkItemInfoLocked(itemId, item, mStackTrace);
-
-                if (item.container != Favorites.CONTAINER_DESKTOP &&
-                        item.container != Favorites.CONTAINER_HOTSEAT) {
-                    // Item is in a collection, make sure this collection exists
-                    if (!mBgDataModel.collections.containsKey(item.container)) {
-                        // An items container is being set to a that of an item which is not in
-                        // the list of Folders.
-                        String msg = "item: " + item + " container being set to: " +
-                                item.container + ", not in the list of collections";
-                        Log.e(TAG, msg);
-                    }
+                updateItemArraysLocked(item, itemId);
+                mBgDataModel.publishSnapshot();
+                mVerifier.verifyModel();
+            }
+        }
+
+        protected void updateItemArraysLocked(ItemInfo item, int itemId) {
+            checkItemInfoLocked(itemId, item, mStackTrace);
+
+            if (item.container != Favorites.CONTAINER_DESKTOP &&
+                    item.container != Favorites.CONTAINER_HOTSEAT) {
+                // Item is in a collection, make sure this collection exists
+                if (!mBgDataModel.collections.containsKey(item.container)) {
+                    // An items container is being set to a that of an item which is not in
+                    // the list of Folders.
+                    String msg = "item: " + item + " container being set to: " +
+                            item.container + ", not in the list of collections";
+                    Log.e(TAG, msg);
                 }
+            }
 
-                // Items are added/removed from the corresponding FolderInfo elsewhere, such
-                // as in Workspace.onDrop. Here, we just add/remove them from the list of items
-                // that are on the desktop, as appropriate
-                ItemInfo modelItem = mBgDataModel.itemsIdMap.get(itemId);
-                if (modelItem != null &&
-                        (modelItem.container == Favorites.CONTAINER_DESKTOP ||
-                                modelItem.container == Favorites.CONTAINER_HOTSEAT)) {
-                    switch (modelItem.itemType) {
-                        case Favorites.ITEM_TYPE_APPLICATION:
-                        case Favorites.ITEM_TYPE_DEEP_SHORTCUT:
-                        case Favorites.ITEM_TYPE_FOLDER:
-                        case Favorites.ITEM_TYPE_APP_PAIR:
-                            if (!mBgDataModel.workspaceItems.contains(modelItem)) {
-                                mBgDataModel.workspaceItems.add(modelItem);
-                            }
-                            break;
-                        default:
-                            break;
-                    }
-                } else {
-                    mBgDataModel.workspaceItems.remove(modelItem);
+            // Items are added/removed from the corresponding FolderInfo elsewhere, such
+            // as in Workspace.onDrop. Here, we just add/remove them from the list of items
+            // that are on the desktop, as appropriate
+            ItemInfo modelItem = mBgDataModel.itemsIdMap.get(itemId);
+            if (modelItem != null &&
+                    (modelItem.container == Favorites.CONTAINER_DESKTOP ||
+                            modelItem.container == Favorites.CONTAINER_HOTSEAT)) {
+                switch (modelItem.itemType) {
+                    case Favorites.ITEM_TYPE_APPLICATION:
+                    case Favorites.ITEM_TYPE_DEEP_SHORTCUT:
+                    case Favorites.ITEM_TYPE_FOLDER:
+                    case Favorites.ITEM_TYPE_APP_PAIR:
+                        if (!mBgDataModel.workspaceItems.contains(modelItem)) {
+                            mBgDataModel.workspaceItems.add(modelItem);
+                            mBgDataModel.markItemsChanged();
+                        }
+                        break;
+                    default:
+                        break;
                 }
-                mVerifier.verifyModel();
+            } else if (mBgDataModel.workspaceItems.remove(modelItem)) {
+                mBgDataModel.markItemsChanged();
             }
         }
     }
 
     private abstract class ModelTask implements Runnable {
 
-        private final int mLoadId = mBgDataModel.lastLoadId;
+        final int mLoadId = mBgDataModel.lastLoadId;
 
         @Override
         public final void run() {
@@ -506,9 +546,13 @@ public class ModelWriter {
                 return;
             }
             runImpl();
+            // Publishes the changes made by the task, if any
+            mBgDataModel.publishSnapshot();
         }
 
-        public final void executeOnModelThread() {
+        public void executeOnModelThread() {
+            // Keep the writes in order with the updates queued before this task
+            flushPendingUpdates();
             MODEL_EXECUTOR.execute(this);
         }
 
@@ -558,4 +602,106 @@ public class ModelWriter {
             });
         }
     }
+
+    /**
+     * Item updates queued by all the writers of a model. {@link LauncherModel} flushes it before
+     * posting its own tasks or reloading, so that they never read a position still in the queue.
+     */
+    public static class UpdateQueue {
+
+        private final LauncherModel mModel;
+        private final BgDataModel mBgDataModel;
+
+        // Updates waiting to be written, guarded by itself
+        private final ArrayList<UpdateItemRunnable> mPendingUpdates = new ArrayList<>();
+        private boolean mFlushScheduled;
+        private final Runnable mFlushRunnable = this::flush;
+
+        public UpdateQueue(LauncherModel model, BgDataModel dataModel) {
+            mModel = model;
+            mBgDataModel = dataModel;
+        }
+
+        /**
+         * Sends the queued item updates to the model thread right away. Any task posted to the
+         * model thread after this call runs after these updates are written.
+         */
+        public void flush() {
+            ArrayList<UpdateItemRunnable> updates;
+            synchronized (mPendingUpdates) {
+                mFlushScheduled = false;
+                if (mPendingUpdates.isEmpty()) {
+                    return;
+                }
+                updates = new ArrayList<>(mPendingUpdates);
+                mPendingUpdates.clear();
+            }
+            MODEL_EXECUTOR.execute(() -> writeUpdates(updates));
+        }
+
+        /**
+         * Queues the update to be written with the other updates of the current frame
+         */
+        private void enqueue(UpdateItemRunnable update) {
+            boolean onUiThread = Looper.myLooper() == MAIN_EXECUTOR.getLooper();
+            boolean scheduleFlush = false;
+            synchronized (mPendingUpdates) {
+                mPendingUpdates.add(update);
+                if (onUiThread && !mFlushScheduled) {
+                    mFlushScheduled = true;
+                    scheduleFlush = true;
+                }
+            }
+            if (!onUiThread) {
+                // Nothing to batch with outside of the UI thread
+                flush();
+            } else if (scheduleFlush) {
+                MAIN_EXECUTOR.post(mFlushRunnable);
+            }
+        }
+
+        /**
+         * Writes {@param updates} in a single transaction, merging the values of the same item
+         */
+        private void writeUpdates(ArrayList<UpdateItemRunnable> updates) {
+            int loadId = mModel.getLastLoadId();
+            ArrayList<UpdateItemRunnable> validUpdates = new ArrayList<>(updates.size());
+            Map<Integer, ContentValues> itemValues = new LinkedHashMap<>();
+            for (UpdateItemRunnable update : updates) {
+                if (update.mLoadId != loadId) {
+                    Log.d(TAG, "Model changed before the task could execute");
+                    continue;
+                }
+                validUpdates.add(update);
+                // Later updates of an item override the values written by the earlier ones
+                ContentValues values = update.getValues();
+                ContentValues existing = itemValues.putIfAbsent(update.mItemId, values);
+                if (existing != null) {
+                    existing.putAll(values);
+                }
+            }
+            if (validUpdates.isEmpty()) {
+                return;
+            }
+
+            try (SQLiteTransaction t = mModel.getModelDbController().newTransaction()) {
+                for (Map.Entry<Integer, ContentValues> entry : itemValues.entrySet()) {
+                    mModel.getModelDbController().update(
+                            TABLE_NAME, entry.getValue(), itemIdMatch(entry.getKey()), null);
+                }
+                t.commit();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+
+            synchronized (mBgDataModel) {
+                for (UpdateItemRunnable update : validUpdates) {
+                    update.updateItemArraysLocked(update.mItem, update.mItemId);
+                }
+                mBgDataModel.publishSnapshot();
+                // The first update started before the others, so it detects any bind they missed
+                validUpdates.get(0).mVerifier.verifyModel();
+            }
+        }
+    }
 }
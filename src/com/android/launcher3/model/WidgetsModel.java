@@ -15,6 +15,7 @@ import android.appwidget.AppWidgetProviderInfo;
 import android.content.ComponentName;
 import android.content.Context;
 import android.content.pm.PackageManager;
+import android.os.LocaleList;
 import android.os.UserHandle;
 import android.util.Log;
 import android.util.Pair;
@@ -26,7 +27,7 @@ import com.android.launcher3.AppFilter;
 import com.android.launcher3.InvariantDeviceProfile;
 import com.android.launcher3.LauncherAppState;
 import com.android.launcher3.Utilities;
-import com.android.launcher3.compat.AlphabeticIndexCompat;
+import com.android.launcher3.compat.SectionNameCache;
 import com.android.launcher3.config.FeatureFlags;
 import com.android.launcher3.icons.ComponentWithLabelAndIcon;
 import com.android.launcher3.icons.IconCache;
@@ -70,6 +71,18 @@ public class WidgetsModel {
     /* Map of widgets and shortcuts that are tracked per package. */
     private final Map<PackageItemInfo, List<WidgetItem>> mWidgetsList = new HashMap<>();
 
+    /* Picker entries of each package, built on demand and dropped when the package changes. */
+    private final Map<PackageItemInfo, Pair<WidgetsListHeaderEntry, WidgetsListContentEntry>>
+            mPickerEntries = new HashMap<>();
+    /* Incremented every time the widgets or shortcuts of a package change. */
+    private int mVersion;
+    /* List returned by the last call to getWidgetsListForPicker, if still valid. */
+    @Nullable
+    private ArrayList<WidgetsListBaseEntry> mPickerList;
+    private int mPickerListVersion;
+    @Nullable
+    private SectionNameCache mSectionNames;
+
     /**
      * Returns a list of {@link WidgetsListBaseEntry} filtered using given widget item filter. All
      * {@link WidgetItem}s in a single row are sorted (based on label and user), but the overall
@@ -84,16 +97,25 @@ public class WidgetsModel {
             return new ArrayList<>();
         }
         ArrayList<WidgetsListBaseEntry> result = new ArrayList<>();
-        AlphabeticIndexCompat indexer = new AlphabeticIndexCompat(context);
+        updateSectionNames(context);
 
         for (Map.Entry<PackageItemInfo, List<WidgetItem>> entry : mWidgetsList.entrySet()) {
             PackageItemInfo pkgItem = entry.getKey();
-            List<WidgetItem> widgetItems = entry.getValue()
+            List<WidgetItem> allItems = entry.getValue();
+            List<WidgetItem> widgetItems = allItems
                     .stream()
                     .filter(widgetItemFilter).toList();
-            if (!widgetItems.isEmpty()) {
-                String sectionName = (pkgItem.title == null) ? "" :
-                        indexer.computeSectionName(pkgItem.title);
+            if (widgetItems.isEmpty()) {
+                continue;
+            }
+            if (widgetItems.size() == allItems.size()) {
+                // Nothing was filtered out, the entries can be shared
+                Pair<WidgetsListHeaderEntry, WidgetsListContentEntry> entries =
+                        getPickerEntries(pkgItem, allItems);
+                result.add(entries.first);
+                result.add(entries.second);
+            } else {
+                String sectionName = getSectionName(pkgItem);
                 result.add(WidgetsListHeaderEntry.create(pkgItem, sectionName, widgetItems));
                 result.add(new WidgetsListContentEntry(pkgItem, sectionName, widgetItems));
             }
@@ -101,6 +123,45 @@ public class WidgetsModel {
         return result;
     }
 
+    private Pair<WidgetsListHeaderEntry, WidgetsListContentEntry> getPickerEntries(
+            PackageItemInfo pkgItem, List<WidgetItem> items) {
+        Pair<WidgetsListHeaderEntry, WidgetsListContentEntry> entries =
+                mPickerEntries.get(pkgItem);
+        if (entries == null) {
+            String sectionName = getSectionName(pkgItem);
+            entries = Pair.create(WidgetsListHeaderEntry.create(pkgItem, sectionName, items),
+                    new WidgetsListContentEntry(pkgItem, sectionName, items));
+            mPickerEntries.put(pkgItem, entries);
+        }
+        return entries;
+    }
+
+    private String getSectionName(PackageItemInfo pkgItem) {
+        return pkgItem.title == null ? "" : mSectionNames.getSectionName(pkgItem.title);
+    }
+
+    /**
+     * Makes sure section names are computed for the current locales, dropping the entries built
+     * for other locales.
+     */
+    private void updateSectionNames(Context context) {
+        LocaleList locales = context.getResources().getConfiguration().getLocales();
+        if (mSectionNames == null || !mSectionNames.isFor(locales)) {
+            mSectionNames = new SectionNameCache(locales);
+            invalidateAllPickerEntries();
+        }
+    }
+
+    private void invalidatePickerEntries(PackageItemInfo pkgItem) {
+        mPickerEntries.remove(pkgItem);
+        mVersion++;
+    }
+
+    private void invalidateAllPickerEntries() {
+        mPickerEntries.clear();
+        mVersion++;
+    }
+
     /**
      * Returns a list of {@link WidgetsListBaseEntry}. All {@link WidgetItem} in a single row
      * are sorted (based on label and user), but the overall list of
@@ -109,8 +170,17 @@ public class WidgetsModel {
      * @see com.android.launcher3.widget.picker.WidgetsListAdapter#setWidgets(List)
      */
     public synchronized ArrayList<WidgetsListBaseEntry> getWidgetsListForPicker(Context context) {
-        // return all items
-        return getFilteredWidgetsListForPicker(context, /*widgetItemFilter=*/ item -> true);
+        if (!WIDGETS_ENABLED) {
+            return new ArrayList<>();
+        }
+        updateSectionNames(context);
+        if (mPickerList == null || mPickerListVersion != mVersion) {
+            // return all items
+            mPickerList = getFilteredWidgetsListForPicker(
+                    context, /*widgetItemFilter=*/ item -> true);
+            mPickerListVersion = mVersion;
+        }
+        return new ArrayList<>(mPickerList);
     }
 
     /** Returns a mapping of packages to their widgets without static shortcuts. */
@@ -154,6 +224,16 @@ public class WidgetsModel {
      */
     public List<ComponentWithLabelAndIcon> update(
             LauncherAppState app, @Nullable PackageUserKey packageUser) {
+        return update(app, packageUser, null);
+    }
+
+    /**
+     * Same as {@link #update(LauncherAppState, PackageUserKey)}, using {@param providers} as the
+     * list of widget providers instead of querying them, if not null.
+     */
+    public List<ComponentWithLabelAndIcon> update(LauncherAppState app,
+            @Nullable PackageUserKey packageUser,
+            @Nullable List<AppWidgetProviderInfo> providers) {
         if (!WIDGETS_ENABLED) {
             return Collections.emptyList();
         }
@@ -168,7 +248,10 @@ public class WidgetsModel {
 
             // Widgets
             WidgetManagerHelper widgetManager = new WidgetManagerHelper(context);
-            for (AppWidgetProviderInfo widgetInfo : widgetManager.getAllProviders(packageUser)) {
+            if (providers == null) {
+                providers = widgetManager.getAllProviders(packageUser);
+            }
+            for (AppWidgetProviderInfo widgetInfo : providers) {
                 LauncherAppWidgetProviderInfo launcherWidgetInfo =
                         LauncherAppWidgetProviderInfo.fromProviderInfo(context, widgetInfo);
 
@@ -212,9 +295,12 @@ public class WidgetsModel {
         if (packageUser == null) {
             // Clear the list if this is an update on all widgets and shortcuts.
             mWidgetsList.clear();
+            invalidateAllPickerEntries();
         } else {
             // Otherwise, only clear the widgets and shortcuts for the changed package.
-            mWidgetsList.remove(packageItemInfoCache.getOrCreate(packageUser));
+            PackageItemInfo pkgItem = packageItemInfoCache.getOrCreate(packageUser);
+            mWidgetsList.remove(pkgItem);
+            invalidatePickerEntries(pkgItem);
         }
 
         // add and update.
@@ -229,10 +315,11 @@ public class WidgetsModel {
         IconCache iconCache = app.getIconCache();
         for (PackageItemInfo p : packageItemInfoCache.values()) {
             iconCache.getTitleAndIconForApp(p, true /* userLowResIcon */);
+            invalidatePickerEntries(p);
         }
     }
 
-    public void onPackageIconsUpdated(Set<String> packageNames, UserHandle user,
+    public synchronized void onPackageIconsUpdated(Set<String> packageNames, UserHandle user,
             LauncherAppState app) {
         if (!WIDGETS_ENABLED) {
             return;
@@ -240,6 +327,7 @@ public class WidgetsModel {
         WidgetManagerHelper widgetManager = new WidgetManagerHelper(app.getContext());
         for (Entry<PackageItemInfo, List<WidgetItem>> entry : mWidgetsList.entrySet()) {
             if (packageNames.contains(entry.getKey().packageName)) {
+                invalidatePickerEntries(entry.getKey());
                 List<WidgetItem> items = entry.getValue();
                 int count = items.size();
                 for (int i = 0; i < count; i++) {
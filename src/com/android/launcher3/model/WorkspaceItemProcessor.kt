@@ -394,6 +394,7 @@ class WorkspaceItemProcessor(
             // Remove the placeholder and add the app pair into the data model.
             bgDataModel.collections.remove(c.id)
             bgDataModel.collections.put(c.id, collection)
+            bgDataModel.markItemsChanged()
         }
 
         c.applyCommonProperties(collection)
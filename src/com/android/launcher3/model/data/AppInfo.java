@@ -25,6 +25,7 @@ import android.content.pm.ApplicationInfo;
 import android.content.pm.LauncherActivityInfo;
 import android.os.UserHandle;
 import android.os.UserManager;
+import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -39,6 +40,7 @@ import com.android.launcher3.util.ApiWrapper;
 import com.android.launcher3.util.PackageManagerHelper;
 import com.android.launcher3.util.UserIconInfo;
 
+import java.text.CollationKey;
 import java.util.Comparator;
 
 /**
@@ -68,6 +70,10 @@ public class AppInfo extends ItemInfoWithIcon implements WorkspaceItemFactory {
     // Section name used for indexing.
     public String sectionName = "";
 
+    // Collation key of the sorting title in the current locale, used for sorting.
+    @Nullable
+    public CollationKey sortKey;
+
     /**
      * The uid of the application.
      * The kernel user-ID that has been assigned to this application. Currently this is not a unique
@@ -85,6 +91,20 @@ public class AppInfo extends ItemInfoWithIcon implements WorkspaceItemFactory {
         return intent;
     }
 
+    /**
+     * Returns the title used to sort the app
+     */
+    @NonNull
+    public String getSortingTitle() {
+        if (!TextUtils.isEmpty(appTitle)) {
+            return appTitle.toString();
+        }
+        if (title != null) {
+            return title.toString();
+        }
+        return "";
+    }
+
     /**
      * Must not hold the Context.
      */
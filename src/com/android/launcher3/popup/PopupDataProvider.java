@@ -19,6 +19,8 @@ package com.android.launcher3.popup;
 import android.content.ComponentName;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
+import android.view.Choreographer;
+import android.view.Choreographer.FrameCallback;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -37,15 +39,16 @@ import com.android.launcher3.widget.model.WidgetsListContentEntry;
 import com.android.launcher3.widget.picker.WidgetRecommendationCategory;
 
 import java.io.PrintWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
+import java.util.Set;
 import java.util.function.Consumer;
-import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.stream.Collectors;
 
 /**
  * Provides data for the popup menu that appears after long-clicking on apps.
@@ -67,14 +70,66 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
     /** Widgets that can be recommended to the users. */
     private List<ItemInfo> mRecommendedWidgets = List.of();
 
+    /** Indexes of {@link #mAllWidgets}, rebuilt when the widgets are bound. */
+    private Map<PackageUserKey, WidgetsListContentEntry> mContentEntriesByPackageUser = Map.of();
+    private Map<PackageUserKey, List<WidgetItem>> mWidgetsByPackageUser = Map.of();
+    private Map<ComponentKey, WidgetItem> mWidgetsByComponent = Map.of();
+
+    /** Recommended widgets resolved against the indexes, computed lazily. */
+    @Nullable
+    private List<WidgetItem> mRecommendedWidgetItems;
+    @Nullable
+    private Map<WidgetRecommendationCategory, List<WidgetItem>> mCategorizedRecommendedWidgetItems;
+
+    /** Keys whose dot changed since the last batch was dispatched. */
+    private final Set<PackageUserKey> mPendingDotUpdates = new HashSet<>();
+    private final FrameCallback mDispatchDotUpdates = frameTimeNanos -> dispatchNotificationDots();
+    private boolean mDotUpdateScheduled;
+
+    private int mDotUpdateBatches;
+    private int mCoalescedDotUpdates;
+    private int mSuppressedDotUpdates;
+
     private PopupDataChangeListener mChangeListener = PopupDataChangeListener.INSTANCE;
 
     public PopupDataProvider(Consumer<Predicate<PackageUserKey>> notificationDotsChangeListener) {
         mNotificationDotsChangeListener = notificationDotsChangeListener;
     }
 
-    private void updateNotificationDots(Predicate<PackageUserKey> updatedDots) {
-        mNotificationDotsChangeListener.accept(updatedDots);
+    /**
+     * Marks the dot of {@param packageUserKey} as changed. Changes are dispatched to the listener
+     * in a single batch on the next frame, so that a burst of notifications only updates each
+     * icon once.
+     */
+    private void updateNotificationDot(PackageUserKey packageUserKey) {
+        if (!mPendingDotUpdates.add(packageUserKey)) {
+            mCoalescedDotUpdates++;
+        }
+        if (!mDotUpdateScheduled) {
+            mDotUpdateScheduled = true;
+            Choreographer.getInstance().postFrameCallback(mDispatchDotUpdates);
+        }
+    }
+
+    /**
+     * Dispatches the pending dot changes right away instead of waiting for the next frame
+     */
+    public void flushNotificationDots() {
+        if (mDotUpdateScheduled) {
+            Choreographer.getInstance().removeFrameCallback(mDispatchDotUpdates);
+        }
+        dispatchNotificationDots();
+    }
+
+    private void dispatchNotificationDots() {
+        mDotUpdateScheduled = false;
+        if (mPendingDotUpdates.isEmpty()) {
+            return;
+        }
+        Set<PackageUserKey> updatedDots = new HashSet<>(mPendingDotUpdates);
+        mPendingDotUpdates.clear();
+        mDotUpdateBatches++;
+        mNotificationDotsChangeListener.accept(updatedDots::contains);
     }
 
     @Override
@@ -86,7 +141,9 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             mPackageUserToDotInfos.put(postedPackageUserKey, dotInfo);
         }
         if (dotInfo.addOrUpdateNotificationKey(notificationKey)) {
-            updateNotificationDots(postedPackageUserKey::equals);
+            updateNotificationDot(postedPackageUserKey);
+        } else {
+            mSuppressedDotUpdates++;
         }
     }
 
@@ -98,44 +155,42 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
             if (oldDotInfo.getNotificationKeys().size() == 0) {
                 mPackageUserToDotInfos.remove(removedPackageUserKey);
             }
-            updateNotificationDots(removedPackageUserKey::equals);
+            updateNotificationDot(removedPackageUserKey);
+        } else {
+            mSuppressedDotUpdates++;
         }
     }
 
     @Override
     public void onNotificationFullRefresh(List<StatusBarNotification> activeNotifications) {
         if (activeNotifications == null) return;
-        // This will contain the PackageUserKeys which have updated dots.
-        HashMap<PackageUserKey, DotInfo> updatedDots = new HashMap<>(mPackageUserToDotInfos);
-        mPackageUserToDotInfos.clear();
+        HashMap<PackageUserKey, DotInfo> newDots = new HashMap<>();
         for (StatusBarNotification notification : activeNotifications) {
             PackageUserKey packageUserKey = PackageUserKey.fromNotification(notification);
-            DotInfo dotInfo = mPackageUserToDotInfos.get(packageUserKey);
+            DotInfo dotInfo = newDots.get(packageUserKey);
             if (dotInfo == null) {
                 dotInfo = new DotInfo();
-                mPackageUserToDotInfos.put(packageUserKey, dotInfo);
+                newDots.put(packageUserKey, dotInfo);
             }
             dotInfo.addOrUpdateNotificationKey(NotificationKeyData.fromNotification(notification));
         }
 
-        // Add and remove from updatedDots so it contains the PackageUserKeys of updated dots.
-        for (PackageUserKey packageUserKey : mPackageUserToDotInfos.keySet()) {
-            DotInfo prevDot = updatedDots.get(packageUserKey);
-            DotInfo newDot = mPackageUserToDotInfos.get(packageUserKey);
-            if (prevDot == null
-                    || prevDot.getNotificationCount() != newDot.getNotificationCount()) {
-                updatedDots.put(packageUserKey, newDot);
+        // Only the keys whose dot appeared, disappeared or changed count need a visual update.
+        for (Map.Entry<PackageUserKey, DotInfo> entry : mPackageUserToDotInfos.entrySet()) {
+            DotInfo newDot = newDots.get(entry.getKey());
+            if (newDot == null
+                    || newDot.getNotificationCount() != entry.getValue().getNotificationCount()) {
+                updateNotificationDot(entry.getKey());
             } else {
-                // No need to update the dot if it already existed (no visual change).
-                // Note that if the dot was removed entirely, we wouldn't reach this point because
-                // this loop only includes active notifications added above.
-                updatedDots.remove(packageUserKey);
+                mSuppressedDotUpdates++;
             }
         }
-
-        if (!updatedDots.isEmpty()) {
-            updateNotificationDots(updatedDots::containsKey);
+        for (PackageUserKey packageUserKey : newDots.keySet()) {
+            if (!mPackageUserToDotInfos.containsKey(packageUserKey)) {
+                updateNotificationDot(packageUserKey);
+            }
         }
+        mPackageUserToDotInfos = newDots;
     }
 
     public void setDeepShortcutMap(HashMap<ComponentKey, Integer> deepShortcutMapCopy) {
@@ -189,14 +244,40 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
      */
     public void setRecommendedWidgets(List<ItemInfo> recommendedWidgets) {
         mRecommendedWidgets = recommendedWidgets;
+        invalidateRecommendations();
         mChangeListener.onRecommendedWidgetsBound();
     }
 
     public void setAllWidgets(List<WidgetsListBaseEntry> allWidgets) {
         mAllWidgets = allWidgets;
+        HashMap<PackageUserKey, WidgetsListContentEntry> entriesByPackageUser = new HashMap<>();
+        HashMap<PackageUserKey, List<WidgetItem>> widgetsByPackageUser = new HashMap<>();
+        HashMap<ComponentKey, WidgetItem> widgetsByComponent = new HashMap<>();
+        for (WidgetsListBaseEntry entry : allWidgets) {
+            if (!(entry instanceof WidgetsListContentEntry contentEntry)) {
+                continue;
+            }
+            entriesByPackageUser.putIfAbsent(
+                    PackageUserKey.fromPackageItemInfo(entry.mPkgItem), contentEntry);
+            for (WidgetItem widget : contentEntry.mWidgets) {
+                widgetsByPackageUser.computeIfAbsent(
+                        new PackageUserKey(entry.mPkgItem.packageName, widget.user),
+                        k -> new ArrayList<>()).add(widget);
+                widgetsByComponent.put(new ComponentKey(widget.componentName, widget.user), widget);
+            }
+        }
+        mContentEntriesByPackageUser = entriesByPackageUser;
+        mWidgetsByPackageUser = widgetsByPackageUser;
+        mWidgetsByComponent = widgetsByComponent;
+        invalidateRecommendations();
         mChangeListener.onWidgetsBound();
     }
 
+    private void invalidateRecommendations() {
+        mRecommendedWidgetItems = null;
+        mCategorizedRecommendedWidgetItems = null;
+    }
+
     public void setChangeListener(PopupDataChangeListener listener) {
         mChangeListener = listener == null ? PopupDataChangeListener.INSTANCE : listener;
     }
@@ -207,69 +288,62 @@ public class PopupDataProvider implements NotificationListener.NotificationsChan
 
     /** Returns a list of recommended widgets. */
     public List<WidgetItem> getRecommendedWidgets() {
-        HashMap<ComponentKey, WidgetItem> allWidgetItems = new HashMap<>();
-        mAllWidgets.stream()
-                .filter(entry -> entry instanceof WidgetsListContentEntry)
-                .forEach(entry -> ((WidgetsListContentEntry) entry).mWidgets
-                        .forEach(widget -> allWidgetItems.put(
-                                new ComponentKey(widget.componentName, widget.user), widget)));
-        return mRecommendedWidgets.stream()
-                .map(recommendedWidget -> allWidgetItems.get(
-                        new ComponentKey(recommendedWidget.getTargetComponent(),
-                                recommendedWidget.user)))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toList());
+        if (mRecommendedWidgetItems == null) {
+            List<WidgetItem> widgets = new ArrayList<>(mRecommendedWidgets.size());
+            for (ItemInfo recommendedWidget : mRecommendedWidgets) {
+                WidgetItem widget = getWidgetForItem(recommendedWidget);
+                if (widget != null) {
+                    widgets.add(widget);
+                }
+            }
+            mRecommendedWidgetItems = Collections.unmodifiableList(widgets);
+        }
+        return mRecommendedWidgetItems;
     }
 
     /** Returns the recommended widgets mapped by their category. */
     @NonNull
     public Map<WidgetRecommendationCategory, List<WidgetItem>> getCategorizedRecommendedWidgets() {
-        Map<ComponentKey, WidgetItem> allWidgetItems = mAllWidgets.stream()
-                .filter(entry -> entry instanceof WidgetsListContentEntry)
-                .flatMap(entry -> entry.mWidgets.stream())
-                .distinct()
-                .collect(Collectors.toMap(
-                        widget -> new ComponentKey(widget.componentName, widget.user),
-                        Function.identity()
-                ));
-        return mRecommendedWidgets.stream()
-                .filter(itemInfo -> itemInfo instanceof PendingAddWidgetInfo
-                        && ((PendingAddWidgetInfo) itemInfo).recommendationCategory != null)
-                .collect(Collectors.groupingBy(
-                        it -> ((PendingAddWidgetInfo) it).recommendationCategory,
-                        Collectors.collectingAndThen(
-                                Collectors.toList(),
-                                list -> list.stream()
-                                        .map(it -> allWidgetItems.get(
-                                                new ComponentKey(it.getTargetComponent(),
-                                                        it.user)))
-                                        .filter(Objects::nonNull)
-                                        .collect(Collectors.toList())
-                        )
-                ));
+        if (mCategorizedRecommendedWidgetItems == null) {
+            Map<WidgetRecommendationCategory, List<WidgetItem>> categories = new HashMap<>();
+            for (ItemInfo itemInfo : mRecommendedWidgets) {
+                if (!(itemInfo instanceof PendingAddWidgetInfo pendingInfo)
+                        || pendingInfo.recommendationCategory == null) {
+                    continue;
+                }
+                List<WidgetItem> widgets = categories.computeIfAbsent(
+                        pendingInfo.recommendationCategory, k -> new ArrayList<>());
+                WidgetItem widget = getWidgetForItem(itemInfo);
+                if (widget != null) {
+                    widgets.add(widget);
+                }
+            }
+            mCategorizedRecommendedWidgetItems = Collections.unmodifiableMap(categories);
+        }
+        return mCategorizedRecommendedWidgetItems;
+    }
+
+    @Nullable
+    private WidgetItem getWidgetForItem(ItemInfo info) {
+        return mWidgetsByComponent.get(new ComponentKey(info.getTargetComponent(), info.user));
     }
 
     public List<WidgetItem> getWidgetsForPackageUser(PackageUserKey packageUserKey) {
-        return mAllWidgets.stream()
-                .filter(row -> row instanceof WidgetsListContentEntry
-                        && row.mPkgItem.packageName.equals(packageUserKey.mPackageName))
-                .flatMap(row -> ((WidgetsListContentEntry) row).mWidgets.stream())
-                .filter(widget -> packageUserKey.mUser.equals(widget.user))
-                .collect(Collectors.toList());
+        List<WidgetItem> widgets = mWidgetsByPackageUser.get(packageUserKey);
+        return widgets == null ? new ArrayList<>() : new ArrayList<>(widgets);
     }
 
     /** Gets the WidgetsListContentEntry for the currently selected header. */
     public WidgetsListContentEntry getSelectedAppWidgets(PackageUserKey packageUserKey) {
-        return (WidgetsListContentEntry) mAllWidgets.stream()
-                .filter(row -> row instanceof WidgetsListContentEntry
-                        && PackageUserKey.fromPackageItemInfo(row.mPkgItem).equals(packageUserKey))
-                .findAny()
-                .orElse(null);
+        return mContentEntriesByPackageUser.get(packageUserKey);
     }
 
     public void dump(String prefix, PrintWriter writer) {
         writer.println(prefix + "PopupDataProvider:");
         writer.println(prefix + "\tmPackageUserToDotInfos:" + mPackageUserToDotInfos);
+        writer.println(prefix + "\tdotUpdates: batches=" + mDotUpdateBatches
+                + " coalesced=" + mCoalescedDotUpdates
+                + " suppressed=" + mSuppressedDotUpdates);
     }
 
     public interface PopupDataChangeListener {
@@ -15,6 +15,8 @@
  */
 package com.android.launcher3.quickspace;
 
+import static com.android.launcher3.util.Executors.ORDERED_BG_EXECUTOR;
+
 import android.annotation.NonNull;
 import android.content.Context;
 import android.graphics.drawable.Drawable;
@@ -25,8 +27,10 @@ import android.media.session.MediaSession;
 import android.media.session.MediaSessionManager;
 import android.media.session.PlaybackState;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 
 import com.android.internal.util.crdroid.OmniJawsClient;
 
@@ -35,9 +39,9 @@ import com.android.launcher3.Utilities;
 import com.android.launcher3.util.PackageUserKey;
 
 import java.util.ArrayList;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ExecutorService;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
 
@@ -46,6 +50,9 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
     private static final boolean DEBUG = false;
     private static final String TAG = "Launcher3:QuickspaceController";
 
+    // Weather queried less than this long ago is not queried again when the view resumes
+    private static final long WEATHER_FRESHNESS_MS = TimeUnit.MINUTES.toMillis(5);
+
     private final Context mContext;
     private final Handler mHandler;
     private QuickEventsController mEventsController;
@@ -58,34 +65,29 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
     private MediaController mController;
     private MediaMetadata mMediaMetadata;
     private String mLastTrackTitle = null;
+    private String mLastTrackArtist = null;
+    private boolean mLastIsPlaying;
 
-    private ExecutorService executorService = Executors.newSingleThreadExecutor();
+    private long mLastWeatherQueryTime;
+    private boolean mWeatherQueryPending;
+    // Decoded condition images by condition code, only accessed on ORDERED_BG_EXECUTOR
+    private final SparseArray<Drawable> mConditionImages = new SparseArray<>();
+
+    // Weather values the listeners were last notified with
+    private String mRenderedWeatherTemp;
+    private Drawable mRenderedWeatherIcon;
 
     private Runnable mOnDataUpdatedRunnable = new Runnable() {
             @Override
             public void run() {
+                mRenderedWeatherTemp = getWeatherTemp();
+                mRenderedWeatherIcon = mConditionImage;
                 for (OnDataListener list : mListeners) {
                     list.onDataUpdated();
                 }
             }
         };
 
-    private Runnable mWeatherRunnable = new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    mWeatherClient.queryWeather();
-                    mWeatherInfo = mWeatherClient.getWeatherInfo();
-                    if (mWeatherInfo != null) {
-                        mConditionImage = mWeatherClient.getWeatherConditionImage(mWeatherInfo.conditionCode);
-                    }
-                    notifyListeners();
-                } catch(Exception e) {
-                    // Do nothing
-                }
-            }
-        };
-
     public interface OnDataListener {
         void onDataUpdated();
     }
@@ -94,13 +96,13 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
         @Override
         public void onPlaybackStateChanged(PlaybackState state) {
             super.onPlaybackStateChanged(state);
-            updateMediaController();
+            updateMediaController(false /* force */);
         }
 
         @Override
         public void onMetadataChanged(MediaMetadata metadata) {
             super.onMetadataChanged(metadata);
-            updateMediaController();
+            updateMediaController(false /* force */);
         }
     };
 
@@ -114,7 +116,7 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
     private void addWeatherProvider() {
         if (!Utilities.isQuickspaceWeather(mContext)) return;
         mWeatherClient.addObserver(this);
-        queryAndUpdateWeather();
+        queryAndUpdateWeather(false /* force */);
     }
 
     public void addListener(OnDataListener listener) {
@@ -188,18 +190,11 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
     }
 
     public void onResume() {
-        maybeInitExecutor();
         mEventsController.onResume();
-        updateMediaController();
+        updateMediaController(true /* force */);
         notifyListeners();
     }
 
-    private void maybeInitExecutor() {
-        if (executorService == null || executorService.isShutdown()) {
-            executorService = Executors.newSingleThreadExecutor();
-        }
-    }
-
     private void cancelListeners() {
         if (mEventsController != null) {
             mEventsController.onPause();
@@ -209,9 +204,9 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
         }
         unregisterMediaController();
         mHandler.removeCallbacksAndMessages(null);
-        if (executorService != null && !executorService.isShutdown()) {
-            executorService.shutdownNow();
-        }
+        // A result already posted is dropped with the callbacks above. As the query time is only
+        // recorded when a result is applied, the weather is queried again on resume.
+        mWeatherQueryPending = false;
     }
 
     public void onDestroy() {
@@ -220,12 +215,11 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
         mWeatherInfo = null;
         mConditionImage = null;
         mMediaMetadata = null;
-        executorService = null;
     }
 
     @Override
     public void weatherUpdated() {
-        queryAndUpdateWeather();
+        queryAndUpdateWeather(true /* force */);
     }
 
     @Override
@@ -240,15 +234,72 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
     @Override
     public void updateSettings() {
         Log.i(TAG, "updateSettings");
-        queryAndUpdateWeather();
+        // Condition images depend on the selected icon pack
+        ORDERED_BG_EXECUTOR.execute(mConditionImages::clear);
+        queryAndUpdateWeather(true /* force */);
+    }
+
+    /**
+     * Queries the weather on the shared background executor. Unless {@param force} is set, the
+     * query is skipped if one is already pending or the current weather is recent enough.
+     */
+    private void queryAndUpdateWeather(boolean force) {
+        final OmniJawsClient weatherClient = mWeatherClient;
+        if (weatherClient == null) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        if (!force && (mWeatherQueryPending || (mWeatherInfo != null
+                && now - mLastWeatherQueryTime < WEATHER_FRESHNESS_MS))) {
+            return;
+        }
+        mWeatherQueryPending = true;
+        ORDERED_BG_EXECUTOR.execute(() -> queryWeather(weatherClient));
+    }
+
+    private void queryWeather(OmniJawsClient weatherClient) {
+        OmniJawsClient.WeatherInfo weatherInfo;
+        Drawable conditionImage = null;
+        try {
+            weatherClient.queryWeather();
+            weatherInfo = weatherClient.getWeatherInfo();
+            if (weatherInfo != null) {
+                conditionImage = mConditionImages.get(weatherInfo.conditionCode);
+                if (conditionImage == null) {
+                    conditionImage = weatherClient.getWeatherConditionImage(
+                            weatherInfo.conditionCode);
+                    mConditionImages.put(weatherInfo.conditionCode, conditionImage);
+                }
+            }
+        } catch (Exception e) {
+            mHandler.post(() -> mWeatherQueryPending = false);
+            return;
+        }
+        final Drawable image = conditionImage;
+        mHandler.post(() -> onWeatherQueried(weatherInfo, image));
     }
 
-    private void queryAndUpdateWeather() {
-        maybeInitExecutor();
-        executorService.execute(mWeatherRunnable);
+    private void onWeatherQueried(OmniJawsClient.WeatherInfo weatherInfo,
+            Drawable conditionImage) {
+        mWeatherQueryPending = false;
+        if (mWeatherClient == null) {
+            // Destroyed while querying
+            return;
+        }
+        mLastWeatherQueryTime = SystemClock.elapsedRealtime();
+        mWeatherInfo = weatherInfo;
+        mConditionImage = conditionImage;
+        if (mConditionImage == mRenderedWeatherIcon
+                && Objects.equals(getWeatherTemp(), mRenderedWeatherTemp)) {
+            if (DEBUG) Log.d(TAG, "Weather unchanged, skipping update");
+            return;
+        }
+        notifyListeners();
     }
 
     public void notifyListeners() {
+        // Coalesce with an update which is already pending
+        mHandler.removeCallbacks(mOnDataUpdatedRunnable);
         mHandler.post(mOnDataUpdatedRunnable);
     }
 
@@ -300,7 +351,11 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
         }
     }
 
-    private void updateMediaController() {
+    /**
+     * Updates the now playing info from the active media session. Unless {@param force} is set,
+     * the quick events are only updated if the shown track or playback state changed.
+     */
+    private void updateMediaController(boolean force) {
         if (!Utilities.isQuickspaceNowPlaying(mContext)) {
             unregisterMediaController();
             return;
@@ -312,6 +367,14 @@ public class QuickspaceController implements OmniJawsClient.OmniJawsObserver {
         boolean isPlaying = PlaybackState.STATE_PLAYING == getMediaControllerPlaybackState(mController);
         String trackArtist = isPlaying && mMediaMetadata != null ? mMediaMetadata.getString(MediaMetadata.METADATA_KEY_ARTIST) : "";
         String trackTitle = isPlaying && mMediaMetadata != null ? mMediaMetadata.getString(MediaMetadata.METADATA_KEY_TITLE) : "";
+        if (!force && isPlaying == mLastIsPlaying && TextUtils.equals(trackTitle, mLastTrackTitle)
+                && TextUtils.equals(trackArtist, mLastTrackArtist)) {
+            // Playback state or metadata changes which are not shown
+            return;
+        }
+        mLastIsPlaying = isPlaying;
+        mLastTrackTitle = trackTitle;
+        mLastTrackArtist = trackArtist;
         mEventsController.setMediaInfo(trackTitle, trackArtist, isPlaying);
         mEventsController.updateQuickEvents();
         notifyListeners();
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.search;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.search.StringMatcherUtility.StringMatcher;
+import com.android.launcher3.util.IntArray;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Search index over the titles of all apps. Each title is tokenized once, when it is added or
+ * changes, and a single {@link StringMatcher} is shared across queries until the locale changes.
+ * When a query extends the previous query, only the previous results are matched again.
+ *
+ * Titles are only tokenized again through {@link #update}, searches do not look for titles which
+ * changed. The entries are rebuilt from the searched apps when the locale changes or when they
+ * no longer match the searched apps, which also drops the entries of removed apps.
+ *
+ * The index is not thread safe and is only accessed on the model thread.
+ */
+@WorkerThread
+public class AppSearchIndex {
+
+    private StringMatcher mMatcher;
+    // Locale of the collator used by mMatcher
+    private Locale mLocale;
+    private final HashMap<AppInfo, Entry> mEntries = new HashMap<>();
+    // Set when the entries were dropped for a new locale and must be created for all apps
+    private boolean mRebuildNeeded;
+
+    private String mLastQuery;
+    private List<AppInfo> mLastSource;
+    private final ArrayList<AppInfo> mLastResult = new ArrayList<>();
+
+    /**
+     * Adds or refreshes the entry for the provided app. Must be called whenever the title of an
+     * app changes.
+     */
+    public void update(@NonNull AppInfo info) {
+        updateMatcherForLocale();
+        mEntries.put(info, createEntry(info));
+        invalidateLastResult();
+    }
+
+    /**
+     * Removes the entry for the provided app
+     */
+    public void remove(@NonNull AppInfo info) {
+        if (mEntries.remove(info) != null) {
+            invalidateLastResult();
+        }
+    }
+
+    /**
+     * Removes all entries from the index
+     */
+    public void clear() {
+        mEntries.clear();
+        mRebuildNeeded = false;
+        // Picks up the collator of the current locale on next use
+        mMatcher = null;
+        mLocale = null;
+        invalidateLastResult();
+    }
+
+    /**
+     * Returns all the apps in {@code apps} whose title matches {@code query}, in the same order.
+     * {@code apps} is expected to be the list of apps kept in sync with this index.
+     */
+    public List<AppInfo> search(@NonNull List<AppInfo> apps, @NonNull String query) {
+        updateMatcherForLocale();
+        if (mRebuildNeeded || mEntries.size() != apps.size()) {
+            // Apps were added or removed without going through the index
+            rebuild(apps);
+        }
+        final String queryTextLower = query.toLowerCase();
+        final boolean canNarrow = mLastQuery != null && !mLastQuery.isEmpty()
+                && mLastSource == apps
+                && queryTextLower.startsWith(mLastQuery)
+                && (StringMatcherUtility.requestSimpleFuzzySearch(queryTextLower)
+                        == StringMatcherUtility.requestSimpleFuzzySearch(mLastQuery));
+
+        final ArrayList<AppInfo> result = new ArrayList<>();
+        if (canNarrow) {
+            // Any title matching the new query also matched the previous one.
+            int total = mLastResult.size();
+            for (int i = 0; i < total; i++) {
+                AppInfo info = mLastResult.get(i);
+                if (matches(queryTextLower, info)) {
+                    result.add(info);
+                }
+            }
+        } else {
+            int total = apps.size();
+            for (int i = 0; i < total; i++) {
+                AppInfo info = apps.get(i);
+                if (matches(queryTextLower, info)) {
+                    result.add(info);
+                }
+            }
+        }
+
+        mLastQuery = queryTextLower;
+        mLastSource = apps;
+        mLastResult.clear();
+        mLastResult.addAll(result);
+        return result;
+    }
+
+    private boolean matches(String queryTextLower, AppInfo info) {
+        Entry entry = mEntries.get(info);
+        if (entry == null) {
+            entry = createEntry(info);
+            mEntries.put(info, entry);
+        }
+        return StringMatcherUtility.matchesAtOffsets(
+                queryTextLower, entry.title, entry.titleLowerCase, entry.offsets, mMatcher);
+    }
+
+    /**
+     * Recreates the entries for exactly {@code apps}
+     */
+    private void rebuild(List<AppInfo> apps) {
+        mEntries.clear();
+        int total = apps.size();
+        for (int i = 0; i < total; i++) {
+            AppInfo info = apps.get(i);
+            mEntries.put(info, createEntry(info));
+        }
+        mRebuildNeeded = false;
+        invalidateLastResult();
+    }
+
+    /**
+     * Recreates the matcher and the entries if the locale changed, as the collator and the match
+     * offsets depend on it
+     */
+    private void updateMatcherForLocale() {
+        Locale locale = Locale.getDefault();
+        if (mMatcher != null && locale.equals(mLocale)) {
+            return;
+        }
+        mMatcher = StringMatcher.getInstance();
+        mLocale = locale;
+        mRebuildNeeded = !mEntries.isEmpty();
+        mEntries.clear();
+        invalidateLastResult();
+    }
+
+    private void invalidateLastResult() {
+        mLastQuery = null;
+        mLastSource = null;
+        mLastResult.clear();
+    }
+
+    private Entry createEntry(AppInfo info) {
+        String title = info.title == null ? "" : info.title.toString();
+        return new Entry(title, title.toLowerCase(),
+                StringMatcherUtility.getMatchOffsets(title, mMatcher));
+    }
+
+    private static class Entry {
+
+        final String title;
+        final String titleLowerCase;
+        final IntArray offsets;
+
+        Entry(String title, String titleLowerCase, IntArray offsets) {
+            this.title = title;
+            this.titleLowerCase = titleLowerCase;
+            this.offsets = offsets;
+        }
+    }
+}
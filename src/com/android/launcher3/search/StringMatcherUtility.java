@@ -67,6 +67,65 @@ public class StringMatcherUtility {
         return false;
     }
 
+    /**
+     * Returns the offsets in {@code target} at which {@link #matches} would try to match a query.
+     * The offsets only depend on the target string, so they can be computed once per target and
+     * reused across queries using {@link #matchesAtOffsets}.
+     */
+    public static IntArray getMatchOffsets(String target, StringMatcher matcher) {
+        int targetLength = target.length();
+        IntArray offsets = new IntArray();
+        if (targetLength <= 0) {
+            return offsets;
+        }
+
+        int lastType;
+        int thisType = Character.UNASSIGNED;
+        int nextType = Character.getType(target.codePointAt(0));
+        for (int i = 0; i < targetLength; i++) {
+            lastType = thisType;
+            thisType = nextType;
+            nextType = i < (targetLength - 1)
+                    ? Character.getType(target.codePointAt(i + 1)) : Character.UNASSIGNED;
+            if (matcher.isBreak(thisType, lastType, nextType)) {
+                offsets.add(i);
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Same as {@link #matches(String, String, StringMatcher)}, but uses the offsets precomputed
+     * by {@link #getMatchOffsets} and the lower case version of the target.
+     */
+    public static boolean matchesAtOffsets(String query, String target, String targetLowerCase,
+            IntArray offsets, StringMatcher matcher) {
+        int queryLength = query.length();
+        int targetLength = target.length();
+
+        if (targetLength < queryLength || queryLength <= 0) {
+            return false;
+        }
+
+        if (requestSimpleFuzzySearch(query)) {
+            return targetLowerCase.contains(query);
+        }
+
+        int end = targetLength - queryLength;
+        int count = offsets.size();
+        for (int j = 0; j < count; j++) {
+            int i = offsets.get(j);
+            if (i > end) {
+                // Offsets are sorted, none of the remaining ones can fit the query
+                return false;
+            }
+            if (matcher.matches(query, target.substring(i, i + queryLength))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns a list of breakpoints wherever the string contains a break. For example:
      * "t-mobile" would have breakpoints at [0, 1]
@@ -222,7 +281,7 @@ public class StringMatcherUtility {
     /**
      * Matching optimization to search in Chinese.
      */
-    private static boolean requestSimpleFuzzySearch(String s) {
+    static boolean requestSimpleFuzzySearch(String s) {
         for (int i = 0; i < s.length(); ) {
             int codepoint = s.codePointAt(i);
             i += Character.charCount(codepoint);
@@ -10,7 +10,7 @@ import java.util.function.Function;
 import com.android.launcher3.settings.SettingsIcons;
 
 import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
-import static com.android.launcher3.util.Executors.THREAD_POOL_EXECUTOR;
+import static com.android.launcher3.util.Executors.USER_VISIBLE_EXECUTOR;
 
 @SuppressWarnings("unused")
 public class ReloadingListPreference extends ListPreference
@@ -60,7 +60,7 @@ public class ReloadingListPreference extends ListPreference
     private void loadEntries(boolean async) {
         if (mOnReloadListener != null) {
             if (async) {
-                THREAD_POOL_EXECUTOR.execute(
+                USER_VISIBLE_EXECUTOR.execute(
                         () -> MAIN_EXECUTOR.execute(mOnReloadListener.listUpdater(this)));
             } else {
                 mOnReloadListener.listUpdater(this).run();
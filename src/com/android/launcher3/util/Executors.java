@@ -21,13 +21,11 @@ import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Process;
 
+import java.io.PrintWriter;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadFactory;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -37,16 +35,47 @@ public class Executors {
 
     private static final int POOL_SIZE =
             Math.max(Runtime.getRuntime().availableProcessors(), 2);
-    private static final int KEEP_ALIVE = 1;
+
+    /** How long a released package executor is kept around before its thread is stopped. */
+    private static final long PACKAGE_EXECUTOR_IDLE_TIMEOUT_MS = 10_000;
 
     /** Dedicated executor instances for work depending on other packages. */
-    private static final Map<String, LooperExecutor> PACKAGE_EXECUTORS = new ConcurrentHashMap<>();
+    private static final Map<String, PackageExecutor> PACKAGE_EXECUTORS = new HashMap<>();
+
+    /**
+     * Lane for async work the user is waiting on, like loading a view's content.
+     */
+    public static final LaneExecutor USER_VISIBLE_EXECUTOR = new LaneExecutor(
+            "lane-user-visible", POOL_SIZE, 64, Process.THREAD_PRIORITY_DEFAULT);
 
     /**
-     * An {@link ThreadPoolExecutor} to be used with async task with no limit on the queue size.
+     * Lane for work whose result is likely, but not yet, needed, like loader prefetches.
      */
-    public static final ThreadPoolExecutor THREAD_POOL_EXECUTOR = new ThreadPoolExecutor(
-            POOL_SIZE, POOL_SIZE, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    public static final LaneExecutor PREFETCH_EXECUTOR = new LaneExecutor(
+            "lane-prefetch", POOL_SIZE, 128, THREAD_PRIORITY_BACKGROUND);
+
+    /**
+     * Lane for deferrable work like cache trimming and persistence.
+     */
+    public static final LaneExecutor MAINTENANCE_EXECUTOR = new LaneExecutor(
+            "lane-maintenance", Math.max(POOL_SIZE / 4, 1), 256,
+            Process.THREAD_PRIORITY_LOWEST);
+
+    /**
+     * Lane dedicated to rendering widget previews, so that the widget picker does not compete
+     * with other user visible work.
+     */
+    public static final LaneExecutor WIDGET_PREVIEW_EXECUTOR = new LaneExecutor(
+            "lane-widget-preview", Math.max(POOL_SIZE / 2, 2), 64,
+            Process.THREAD_PRIORITY_DEFAULT);
+
+    /**
+     * Lane for loading icons in bulk. The thread requesting the load also picks up work, so this
+     * only needs the remaining threads of a load split across at most four threads.
+     */
+    public static final LaneExecutor ICON_BULK_LOAD_EXECUTOR = new LaneExecutor(
+            "lane-icon-bulk-load", Math.min(POOL_SIZE - 1, 3), 64,
+            Process.THREAD_PRIORITY_DEFAULT);
 
     /**
      * An {@link LooperExecutor} to be used with async task where order is important.
@@ -97,14 +126,69 @@ public class Executors {
             new LooperExecutor(createAndStartNewLooper("launcher-loader"));
 
     /**
-     * Returns and caches a single thread executor for a given package.
+     * Returns and caches a single thread executor for a given package. Every call must be
+     * balanced with a call to {@link #releasePackageExecutor(String)} once the executor is no
+     * longer used, after which its thread is stopped if it stays unused.
      *
      * @param packageName Package associated with the executor.
      */
     public static LooperExecutor getPackageExecutor(String packageName) {
-        return PACKAGE_EXECUTORS.computeIfAbsent(
-                packageName, p -> new LooperExecutor(
-                        createAndStartNewLooper(p, Process.THREAD_PRIORITY_DEFAULT)));
+        synchronized (PACKAGE_EXECUTORS) {
+            PackageExecutor executor = PACKAGE_EXECUTORS.get(packageName);
+            if (executor == null) {
+                executor = new PackageExecutor(packageName);
+                PACKAGE_EXECUTORS.put(packageName, executor);
+            }
+            executor.refCount++;
+            return executor.executor;
+        }
+    }
+
+    /**
+     * Releases an executor obtained from {@link #getPackageExecutor(String)}
+     */
+    public static void releasePackageExecutor(String packageName) {
+        synchronized (PACKAGE_EXECUTORS) {
+            PackageExecutor executor = PACKAGE_EXECUTORS.get(packageName);
+            if (executor == null || --executor.refCount > 0) {
+                return;
+            }
+            executor.executor.getHandler().postDelayed(() -> {
+                synchronized (PACKAGE_EXECUTORS) {
+                    if (executor.refCount == 0
+                            && PACKAGE_EXECUTORS.get(packageName) == executor) {
+                        PACKAGE_EXECUTORS.remove(packageName);
+                        executor.executor.getLooper().quitSafely();
+                    }
+                }
+            }, PACKAGE_EXECUTOR_IDLE_TIMEOUT_MS);
+        }
+    }
+
+    /**
+     * Prints the state of the executor lanes and package executors
+     */
+    public static void dump(String prefix, PrintWriter writer) {
+        writer.println(prefix + "Executors:");
+        USER_VISIBLE_EXECUTOR.dump(prefix + "  ", writer);
+        PREFETCH_EXECUTOR.dump(prefix + "  ", writer);
+        MAINTENANCE_EXECUTOR.dump(prefix + "  ", writer);
+        WIDGET_PREVIEW_EXECUTOR.dump(prefix + "  ", writer);
+        ICON_BULK_LOAD_EXECUTOR.dump(prefix + "  ", writer);
+        synchronized (PACKAGE_EXECUTORS) {
+            writer.println(prefix + "  package executors: " + PACKAGE_EXECUTORS.keySet());
+        }
+    }
+
+    private static class PackageExecutor {
+
+        final LooperExecutor executor;
+        int refCount;
+
+        PackageExecutor(String packageName) {
+            executor = new LooperExecutor(
+                    createAndStartNewLooper(packageName, Process.THREAD_PRIORITY_DEFAULT));
+        }
     }
 
     /**
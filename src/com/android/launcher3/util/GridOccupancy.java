@@ -2,22 +2,39 @@ package com.android.launcher3.util;
 
 import android.graphics.Rect;
 
+import androidx.annotation.Nullable;
+
 import com.android.launcher3.model.data.ItemInfo;
 
+import java.util.Arrays;
+
 /**
  * Utility object to manage the occupancy in a grid.
+ *
+ * Each row is stored as a bit mask, bit x being set if the cell at column x is occupied, so
+ * that region queries check a whole row at once.
  */
 public class GridOccupancy {
 
+    /** Maximum number of columns, one bit per column in a row mask. */
+    public static final int MAX_COUNT_X = Long.SIZE;
+
     private final int mCountX;
     private final int mCountY;
 
-    public final boolean[][] cells;
+    private final long[] mRows;
 
     public GridOccupancy(int countX, int countY) {
+        if (countX > MAX_COUNT_X) {
+            throw new IllegalArgumentException("Grid has more than " + MAX_COUNT_X + " columns");
+        }
         mCountX = countX;
         mCountY = countY;
-        cells = new boolean[countX][countY];
+        mRows = new long[countY];
+    }
+
+    public boolean isOccupied(int x, int y) {
+        return (mRows[y] & (1L << x)) != 0;
     }
 
     /**
@@ -30,32 +47,39 @@ public class GridOccupancy {
      * @return true if a vacant cell was found
      */
     public boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
+        if (spanX <= 0 || spanY <= 0 || spanX > mCountX) {
+            return false;
+        }
+        long columns = spanMask(mCountX);
         for (int y = 0; (y + spanY) <= mCountY; y++) {
-            for (int x = 0; (x + spanX) <= mCountX; x++) {
-                boolean available = !cells[x][y];
-                out:
-                for (int i = x; i < x + spanX; i++) {
-                    for (int j = y; j < y + spanY; j++) {
-                        available = available && !cells[i][j];
-                        if (!available) break out;
-                    }
-                }
-                if (available) {
-                    vacantOut[0] = x;
-                    vacantOut[1] = y;
-                    return true;
-                }
+            long occupied = 0;
+            for (int j = y; j < y + spanY; j++) {
+                occupied |= mRows[j];
+            }
+            // Bit x is set if the spanX columns starting at x are all vacant
+            long vacant = ~occupied & columns;
+            long fits = vacant;
+            for (int i = 1; i < spanX && fits != 0; i++) {
+                fits &= vacant >>> i;
+            }
+            if (fits != 0) {
+                vacantOut[0] = Long.numberOfTrailingZeros(fits);
+                vacantOut[1] = y;
+                return true;
             }
         }
         return false;
     }
 
     public void copyTo(GridOccupancy dest) {
-        for (int i = 0; i < mCountX; i++) {
-            for (int j = 0; j < mCountY; j++) {
-                dest.cells[i][j] = cells[i][j];
-            }
-        }
+        System.arraycopy(mRows, 0, dest.mRows, 0, mCountY);
+    }
+
+    /**
+     * Returns true if {@param other} has the same size and the same occupied cells as this grid
+     */
+    public boolean contentEquals(GridOccupancy other) {
+        return mCountX == other.mCountX && Arrays.equals(mRows, other.mRows);
     }
 
     public boolean isRegionVacant(int x, int y, int spanX, int spanY) {
@@ -64,11 +88,32 @@ public class GridOccupancy {
         if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
             return false;
         }
-        for (int i = x; i <= x2; i++) {
-            for (int j = y; j <= y2; j++) {
-                if (cells[i][j]) {
-                    return false;
-                }
+        long mask = spanMask(spanX) << x;
+        for (int j = y; j <= y2; j++) {
+            if ((mRows[j] & mask) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if {@param block} can be placed with its top left corner at (x, y): the cells
+     * occupied in the first spanX columns and spanY rows of {@param block} are all vacant in
+     * this grid. If {@param block} is null, the whole region must be vacant.
+     */
+    public boolean isRegionVacant(int x, int y, int spanX, int spanY,
+            @Nullable GridOccupancy block) {
+        if (block == null) {
+            return isRegionVacant(x, y, spanX, spanY);
+        }
+        if (x < 0 || y < 0 || x + spanX > mCountX || y + spanY > mCountY) {
+            return false;
+        }
+        long mask = spanMask(spanX);
+        for (int j = 0; j < spanY; j++) {
+            if (((mRows[y + j] >>> x) & block.mRows[j] & mask) != 0) {
+                return false;
             }
         }
         return true;
@@ -76,9 +121,14 @@ public class GridOccupancy {
 
     public void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
         if (cellX < 0 || cellY < 0) return;
-        for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
-            for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
-                cells[x][y] = value;
+        int width = Math.min(cellX + spanX, mCountX) - cellX;
+        if (width <= 0) return;
+        long mask = spanMask(width) << cellX;
+        for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
+            if (value) {
+                mRows[y] |= mask;
+            } else {
+                mRows[y] &= ~mask;
             }
         }
     }
@@ -96,7 +146,17 @@ public class GridOccupancy {
     }
 
     public void clear() {
-        markCells(0, 0, mCountX, mCountY, false);
+        Arrays.fill(mRows, 0);
+    }
+
+    /**
+     * Returns a mask with the lowest {@param span} bits set
+     */
+    private static long spanMask(int span) {
+        if (span <= 0) {
+            return 0;
+        }
+        return span >= Long.SIZE ? -1L : (1L << span) - 1;
     }
 
     @Override
@@ -104,7 +164,7 @@ public class GridOccupancy {
         StringBuilder s = new StringBuilder("Grid: \n");
         for (int y = 0; y < mCountY; y++) {
             for (int x = 0; x < mCountX; x++) {
-                s.append(cells[x][y] ? 1 : 0).append(" ");
+                s.append(isOccupied(x, y) ? 1 : 0).append(" ");
             }
             s.append("\n");
         }
@@ -15,6 +15,9 @@
  */
 package com.android.launcher3.util;
 
+import androidx.annotation.Nullable;
+
+import java.text.CollationKey;
 import java.text.Collator;
 import java.util.Comparator;
 
@@ -28,6 +31,16 @@ public class LabelComparator implements Comparator<String> {
 
     @Override
     public int compare(String titleA, String titleB) {
+        return compare(titleA, null, titleB, null);
+    }
+
+    /**
+     * Same as {@link #compare(String, String)}, but compares the provided collation keys instead
+     * of the titles when both are available. The keys must have been created by a collator for
+     * the current locale.
+     */
+    public int compare(String titleA, @Nullable CollationKey keyA,
+            String titleB, @Nullable CollationKey keyB) {
         // Ensure that we de-prioritize any titles that don't start with a
         // linguistic letter or digit
         boolean aStartsWithLetter = (titleA.length() > 0) &&
@@ -41,6 +54,9 @@ public class LabelComparator implements Comparator<String> {
         }
 
         // Order by the title in the current locale
+        if (keyA != null && keyB != null) {
+            return keyA.compareTo(keyB);
+        }
         return mCollator.compare(titleA, titleB);
     }
 }
@@ -0,0 +1,297 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
+
+import com.android.launcher3.util.Executors.SimpleThreadFactory;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ThreadPoolExecutor} serving one priority lane, with a bounded queue and metrics about
+ * its queue depth and queueing latency.
+ *
+ * When the queue is full, a task posted by one of the lane's own workers is run by that worker,
+ * which slows down tasks that fan out faster than the lane drains. Any other caller (the main
+ * thread, a looper or a binder thread) must not be blocked or made to run the task, so the task
+ * is parked instead. Parked tasks keep their order: they move to the queue as workers make room
+ * for them, and tasks executed by other callers in the meantime are parked behind them.
+ */
+public class LaneExecutor extends ThreadPoolExecutor {
+
+    private static final int KEEP_ALIVE_SECONDS = 1;
+
+    /** The lane whose task is running on the current thread, if any */
+    private static final ThreadLocal<LaneExecutor> sCurrentLane = new ThreadLocal<>();
+
+    private final String mName;
+
+    // Parking a task and moving parked tasks to the queue both happen under this lock, so a task
+    // can't be parked right after the last worker looked for parked tasks.
+    private final Object mOverflowLock = new Object();
+    // Guarded by mOverflowLock. Tasks are only parked after the queue was found full, so there
+    // is always a queued or running task whose worker requeues them once it finishes.
+    private final ArrayDeque<Runnable> mOverflow = new ArrayDeque<>();
+    // Set by the BackPressurePolicy, which only runs under mOverflowLock
+    private boolean mRejected;
+
+    // Tasks which were executed and did not finish yet, including the parked ones
+    private final Object mIdleLock = new Object();
+    private int mUnfinishedCount;
+
+    private final AtomicInteger mPeakQueueDepth = new AtomicInteger();
+    private final AtomicLong mExecutedCount = new AtomicLong();
+    private final AtomicLong mCallerRunsCount = new AtomicLong();
+    private final AtomicLong mOverflowCount = new AtomicLong();
+    private final AtomicLong mTotalQueueLatencyMs = new AtomicLong();
+    private final AtomicLong mMaxQueueLatencyMs = new AtomicLong();
+
+    public LaneExecutor(String name, int poolSize, int queueCapacity, int threadPriority) {
+        super(poolSize, poolSize, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(queueCapacity),
+                new SimpleThreadFactory(name + "-", threadPriority));
+        mName = name;
+        allowCoreThreadTimeOut(true);
+        setRejectedExecutionHandler(new BackPressurePolicy());
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        synchronized (mIdleLock) {
+            mUnfinishedCount++;
+        }
+        Runnable task = new TimedRunnable(command);
+        boolean isOwnWorker = sCurrentLane.get() == this;
+        boolean runInline = false;
+        synchronized (mOverflowLock) {
+            // Other callers queue behind the parked tasks. Own workers never park, so they try
+            // the queue right away and fall back to running the task.
+            boolean rejected = true;
+            if (isOwnWorker || mOverflow.isEmpty()) {
+                mRejected = false;
+                super.execute(task);
+                rejected = mRejected;
+            }
+            if (rejected) {
+                if (isOwnWorker) {
+                    runInline = true;
+                } else {
+                    mOverflowCount.incrementAndGet();
+                    mOverflow.addLast(task);
+                }
+            }
+        }
+
+        if (runInline) {
+            mCallerRunsCount.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                onTaskFinished();
+            }
+            return;
+        }
+
+        int depth = getQueueDepth();
+        int peak;
+        while (depth > (peak = mPeakQueueDepth.get())
+                && !mPeakQueueDepth.compareAndSet(peak, depth)) {
+            // Retry until the peak is updated
+        }
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        boolean removed;
+        synchronized (mOverflowLock) {
+            // Tasks are wrapped when they are queued, look for the wrapper instead
+            removed = removeWrapper(getQueue(), task) || removeWrapper(mOverflow, task);
+            if (removed) {
+                requeueParkedLocked();
+            }
+        }
+        if (removed) {
+            onTaskFinished();
+        }
+        return removed;
+    }
+
+    private static boolean removeWrapper(Iterable<Runnable> tasks, Runnable task) {
+        Iterator<Runnable> it = tasks.iterator();
+        while (it.hasNext()) {
+            Runnable queued = it.next();
+            if (queued == task || (queued instanceof TimedRunnable
+                    && ((TimedRunnable) queued).mTask == task)) {
+                it.remove();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        sCurrentLane.set(this);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        sCurrentLane.remove();
+        int dropped = 0;
+        synchronized (mOverflowLock) {
+            if (isShutdown()) {
+                dropped = mOverflow.size();
+                mOverflow.clear();
+            } else {
+                requeueParkedLocked();
+            }
+        }
+        for (int i = 0; i < dropped; i++) {
+            onTaskFinished();
+        }
+        onTaskFinished();
+    }
+
+    /**
+     * Moves parked tasks to the queue, oldest first, until the queue is full again.
+     */
+    private void requeueParkedLocked() {
+        boolean requeued = false;
+        Runnable parked;
+        while ((parked = mOverflow.peekFirst()) != null && getQueue().offer(parked)) {
+            mOverflow.pollFirst();
+            requeued = true;
+        }
+        if (requeued && getPoolSize() == 0) {
+            // Only happens after a removal, when no worker is left to pick up the queue
+            prestartCoreThread();
+        }
+    }
+
+    /**
+     * Waits until all the tasks executed so far, and the tasks they executed in turn, have
+     * finished.
+     *
+     * @return false if the lane was still busy after {@param timeoutMs}
+     */
+    @VisibleForTesting
+    public boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        long deadline = SystemClock.uptimeMillis() + timeoutMs;
+        synchronized (mIdleLock) {
+            while (mUnfinishedCount > 0) {
+                long remaining = deadline - SystemClock.uptimeMillis();
+                if (remaining <= 0) {
+                    return false;
+                }
+                mIdleLock.wait(remaining);
+            }
+            return true;
+        }
+    }
+
+    private void onTaskFinished() {
+        synchronized (mIdleLock) {
+            mUnfinishedCount--;
+            if (mUnfinishedCount == 0) {
+                mIdleLock.notifyAll();
+            }
+        }
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * Returns the number of tasks waiting to run, including the parked ones
+     */
+    public int getQueueDepth() {
+        synchronized (mOverflowLock) {
+            return getQueue().size() + mOverflow.size();
+        }
+    }
+
+    public void dump(String prefix, PrintWriter writer) {
+        long executed = mExecutedCount.get();
+        writer.println(prefix + mName
+                + ": threads=" + getPoolSize() + "/" + getMaximumPoolSize()
+                + " active=" + getActiveCount()
+                + " queued=" + getQueueDepth()
+                + " peakQueued=" + mPeakQueueDepth.get()
+                + " executed=" + executed
+                + " avgLatency=" + (executed == 0 ? 0 : mTotalQueueLatencyMs.get() / executed)
+                + "ms maxLatency=" + mMaxQueueLatencyMs.get()
+                + "ms callerRuns=" + mCallerRunsCount.get()
+                + " parked=" + mOverflowCount.get());
+    }
+
+    private void onTaskStarted(long enqueueTime) {
+        long latency = SystemClock.uptimeMillis() - enqueueTime;
+        mExecutedCount.incrementAndGet();
+        mTotalQueueLatencyMs.addAndGet(latency);
+        long max;
+        while (latency > (max = mMaxQueueLatencyMs.get())
+                && !mMaxQueueLatencyMs.compareAndSet(max, latency)) {
+            // Retry until the max is updated
+        }
+    }
+
+    private class TimedRunnable implements Runnable {
+
+        private final Runnable mTask;
+        private final long mEnqueueTime = SystemClock.uptimeMillis();
+
+        TimedRunnable(Runnable task) {
+            mTask = task;
+        }
+
+        @Override
+        public void run() {
+            onTaskStarted(mEnqueueTime);
+            mTask.run();
+        }
+    }
+
+    /**
+     * Only flags the rejection, {@link #execute} then decides whether the task is parked or run
+     * by the caller, once it no longer holds the overflow lock.
+     */
+    private class BackPressurePolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (executor.isShutdown()) {
+                onTaskFinished();
+                return;
+            }
+            mRejected = true;
+        }
+    }
+}
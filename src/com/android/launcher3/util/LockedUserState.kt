@@ -56,14 +56,14 @@ class LockedUserState(private val mContext: Context) : SafeCloseable {
 
     private fun notifyUserUnlocked() {
         mUserUnlockedActions.executeAllAndDestroy()
-        Executors.THREAD_POOL_EXECUTOR.execute {
+        Executors.MAINTENANCE_EXECUTOR.execute {
             mUserUnlockedReceiver.unregisterReceiverSafely(mContext)
         }
     }
 
     /** Stops the receiver from listening for ACTION_USER_UNLOCK broadcasts. */
     override fun close() {
-        Executors.THREAD_POOL_EXECUTOR.execute {
+        Executors.MAINTENANCE_EXECUTOR.execute {
             mUserUnlockedReceiver.unregisterReceiverSafely(mContext)
         }
     }
@@ -65,7 +65,7 @@ public abstract class BaseLauncherAppWidgetHostView extends NavigableAppWidgetHo
     public BaseLauncherAppWidgetHostView(Context context) {
         super(context);
 
-        setExecutor(Executors.THREAD_POOL_EXECUTOR);
+        setExecutor(Executors.USER_VISIBLE_EXECUTOR);
         setClipToOutline(true);
 
         mInflater = LayoutInflater.from(context);
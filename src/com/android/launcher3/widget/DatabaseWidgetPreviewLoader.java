@@ -27,11 +27,12 @@ import android.graphics.PorterDuff;
 import android.graphics.PorterDuffXfermode;
 import android.graphics.RectF;
 import android.graphics.drawable.Drawable;
-import android.os.Handler;
 import android.util.Log;
 import android.util.Size;
+import android.view.View;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.VisibleForTesting;
 
 import com.android.launcher3.DeviceProfile;
@@ -45,17 +46,18 @@ import com.android.launcher3.model.WidgetItem;
 import com.android.launcher3.pm.ShortcutConfigActivityInfo;
 import com.android.launcher3.util.CancellableTask;
 import com.android.launcher3.util.Executors;
-import com.android.launcher3.util.LooperExecutor;
 import com.android.launcher3.views.ActivityContext;
 import com.android.launcher3.widget.util.WidgetSizes;
 
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
 
 /** Utility class to load widget previews */
 public class DatabaseWidgetPreviewLoader {
 
     private static final String TAG = "WidgetPreviewLoader";
+    private static final long PENDING_PREVIEWS_TIMEOUT_MS = 10_000;
 
     private final Context mContext;
     private final float mPreviewBoxCornerRadius;
@@ -69,7 +71,7 @@ public class DatabaseWidgetPreviewLoader {
     }
 
     /**
-     * Generates the widget preview on {@link Executors#UI_HELPER_EXECUTOR}.
+     * Generates the widget preview on {@link Executors#WIDGET_PREVIEW_EXECUTOR}.
      *
      * @return a request id which can be used to cancel the request.
      */
@@ -78,31 +80,67 @@ public class DatabaseWidgetPreviewLoader {
             @NonNull WidgetItem item,
             @NonNull Size previewSize,
             @NonNull Consumer<Bitmap> callback) {
-        Handler handler = getLoaderExecutor().getHandler();
-        CancellableTask<Bitmap> request = new CancellableTask<>(
-                () -> generatePreview(item, previewSize.getWidth(), previewSize.getHeight()),
-                MAIN_EXECUTOR,
+        return loadPreview(item, previewSize, null, callback);
+    }
+
+    /**
+     * Generates the widget preview on {@link Executors#WIDGET_PREVIEW_EXECUTOR}, prioritized by
+     * the distance of {@param anchor} to the visible area of the list containing it.
+     *
+     * @return a request id which can be used to cancel the request.
+     */
+    @NonNull
+    public CancellableTask loadPreview(
+            @NonNull WidgetItem item,
+            @NonNull Size previewSize,
+            @Nullable View anchor,
+            @NonNull Consumer<Bitmap> callback) {
+        // Fetched here as the singleton is created on the main thread
+        WidgetPreviewCache cache = WidgetPreviewCache.INSTANCE.get(mContext);
+        return WidgetPreviewRenderQueue.INSTANCE.enqueue(item, previewSize, anchor,
+                () -> generatePreview(
+                        cache, item, previewSize.getWidth(), previewSize.getHeight()),
                 callback);
-        Utilities.postAsyncCallback(handler, request);
-        return request;
     }
 
+    /**
+     * Notifies that a list showing widget previews scrolled, so that the previews closest to the
+     * visible area are rendered first.
+     */
+    public static void onPreviewListScrolled() {
+        WidgetPreviewRenderQueue.INSTANCE.onViewportChanged();
+    }
+
+    /**
+     * Waits until all the requested previews are loaded, and their callbacks posted on the main
+     * thread.
+     */
     @VisibleForTesting
-    @NonNull
-    public static LooperExecutor getLoaderExecutor() {
-        return Executors.UI_HELPER_EXECUTOR;
+    public static void waitForPendingPreviews() throws InterruptedException, TimeoutException {
+        if (!WidgetPreviewRenderQueue.INSTANCE.awaitIdle(PENDING_PREVIEWS_TIMEOUT_MS)) {
+            throw new TimeoutException("Widget previews still pending");
+        }
     }
 
     /**
-     * Returns a generated preview for a widget and if the preview should be saved in persistent
-     * storage.
+     * Returns a preview for a widget, from {@link WidgetPreviewCache} if it was generated before.
      */
-    private Bitmap generatePreview(WidgetItem item, int previewWidth, int previewHeight) {
+    private Bitmap generatePreview(WidgetPreviewCache cache, WidgetItem item, int previewWidth,
+            int previewHeight) {
+        String key = cache.getKey(item, previewWidth, previewHeight);
+        Bitmap preview = key == null ? null : cache.get(key);
+        if (preview != null) {
+            return preview;
+        }
         if (item.widgetInfo != null) {
-            return generateWidgetPreview(item.widgetInfo, previewWidth, null);
+            preview = generateWidgetPreview(item.widgetInfo, previewWidth, null);
         } else {
-            return generateShortcutPreview(item.activityInfo, previewWidth, previewHeight);
+            preview = generateShortcutPreview(item.activityInfo, previewWidth, previewHeight);
+        }
+        if (key != null && preview != null) {
+            cache.put(key, preview);
         }
+        return preview;
     }
 
     /**
@@ -294,7 +294,8 @@ public class WidgetCell extends LinearLayout {
             applyPreview(cachedPreview);
         } else {
             if (mActiveRequest == null) {
-                mActiveRequest = mWidgetPreviewLoader.loadPreview(mItem, mWidgetSize, callback);
+                mActiveRequest = mWidgetPreviewLoader.loadPreview(
+                        mItem, mWidgetSize, this, callback);
             }
         }
     }
@@ -0,0 +1,320 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static android.content.Intent.ACTION_PACKAGE_ADDED;
+import static android.content.Intent.ACTION_PACKAGE_CHANGED;
+import static android.content.Intent.ACTION_PACKAGE_REMOVED;
+
+import static com.android.launcher3.util.Executors.MAINTENANCE_EXECUTOR;
+
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.PackageManager.NameNotFoundException;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.UserHandle;
+import android.util.Log;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+
+import com.android.launcher3.Utilities;
+import com.android.launcher3.model.WidgetItem;
+import com.android.launcher3.util.MainThreadInitializedObject;
+import com.android.launcher3.util.SafeCloseable;
+import com.android.launcher3.util.SimpleBroadcastReceiver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Two level cache of generated widget and shortcut previews: an in-memory LRU in front of a size
+ * bounded directory of compressed previews, so that reopening the widget picker does not render
+ * the previews again.
+ *
+ * Entries are keyed by the provider component, user, last update time of the provider package,
+ * preview size and the configuration and theme colors the preview was rendered for, so updating
+ * the package or changing the locale, font scale, density, night mode or wallpaper colors never
+ * returns a stale preview.
+ */
+public class WidgetPreviewCache implements SafeCloseable {
+
+    private static final String TAG = "WidgetPreviewCache";
+
+    public static final MainThreadInitializedObject<WidgetPreviewCache> INSTANCE =
+            new MainThreadInitializedObject<>(WidgetPreviewCache::new);
+
+    /** Must be incremented when the preview rendering or the file format changes. */
+    private static final int FORMAT_VERSION = 3;
+    private static final int FILE_MAGIC = 0x57505643;
+
+    private static final String CACHE_DIR = "widget_previews";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int MAX_MEMORY_BYTES = 16 * 1024 * 1024;
+    private static final long MAX_DISK_BYTES = 32 * 1024 * 1024;
+    /** Trimming the disk cache stops once it is below this fraction of the maximum. */
+    @VisibleForTesting
+    static final float DISK_TRIM_TARGET = 0.75f;
+
+    /** Dynamic colors which previews may be tinted with, following the wallpaper. */
+    private static final int[] THEME_COLORS = {
+            android.R.color.system_accent1_500,
+            android.R.color.system_accent2_500,
+            android.R.color.system_accent3_500,
+            android.R.color.system_neutral1_500,
+            android.R.color.system_neutral2_500,
+    };
+
+    private final Context mContext;
+    private final PackageManager mPackageManager;
+    private final File mCacheDir;
+    private final long mMaxDiskBytes;
+    /** Writes run on several maintenance threads, only one of them trims at a time. */
+    private final Object mTrimLock = new Object();
+
+    /** Last update time of the packages queried so far, dropped when the package changes. */
+    private final Map<String, Long> mLastUpdateTimes = new ConcurrentHashMap<>();
+    private final SimpleBroadcastReceiver mPackageReceiver =
+            new SimpleBroadcastReceiver(this::onPackageChanged);
+
+    private final LruCache<String, Bitmap> mMemoryCache = new LruCache<>(MAX_MEMORY_BYTES) {
+        @Override
+        protected int sizeOf(String key, Bitmap value) {
+            return value.getAllocationByteCount();
+        }
+    };
+
+    private WidgetPreviewCache(Context context) {
+        this(context, new File(context.getCacheDir(), CACHE_DIR), MAX_DISK_BYTES);
+    }
+
+    @VisibleForTesting
+    WidgetPreviewCache(Context context, File cacheDir, long maxDiskBytes) {
+        mContext = context;
+        mPackageManager = context.getPackageManager();
+        mCacheDir = cacheDir;
+        mMaxDiskBytes = maxDiskBytes;
+        mPackageReceiver.registerPkgActions(context, null,
+                ACTION_PACKAGE_ADDED, ACTION_PACKAGE_CHANGED, ACTION_PACKAGE_REMOVED);
+    }
+
+    @VisibleForTesting
+    void onPackageChanged(Intent intent) {
+        if (intent.getData() != null) {
+            mLastUpdateTimes.remove(intent.getData().getSchemeSpecificPart());
+        }
+    }
+
+    /**
+     * Returns the key identifying the preview of {@param item} at the provided size, or null if
+     * the preview should not be cached.
+     */
+    @WorkerThread
+    @Nullable
+    public String getKey(@NonNull WidgetItem item, int width, int height) {
+        String packageName = item.componentName.getPackageName();
+        Long lastUpdateTime = mLastUpdateTimes.get(packageName);
+        if (lastUpdateTime == null) {
+            try {
+                lastUpdateTime = mPackageManager.getPackageInfo(packageName,
+                        PackageManager.GET_UNINSTALLED_PACKAGES).lastUpdateTime;
+            } catch (NameNotFoundException e) {
+                return null;
+            }
+            mLastUpdateTimes.put(packageName, lastUpdateTime);
+        }
+        return buildKey(item.componentName.flattenToString(), item.user, lastUpdateTime,
+                width, height, mContext.getResources().getConfiguration(), getThemeColorsHash());
+    }
+
+    @VisibleForTesting
+    static String buildKey(String component, UserHandle user, long lastUpdateTime, int width,
+            int height, Configuration config, int themeColorsHash) {
+        return FORMAT_VERSION
+                + "|" + component
+                + "|" + user.hashCode()
+                + "|" + lastUpdateTime
+                + "|" + width + "x" + height
+                + "|" + config.densityDpi
+                + "|" + (config.uiMode & Configuration.UI_MODE_NIGHT_MASK)
+                + "|" + config.getLocales().toLanguageTags()
+                + "|" + config.fontScale
+                + "|" + Integer.toHexString(themeColorsHash);
+    }
+
+    /**
+     * Returns a hash of the current dynamic colors, which change with the wallpaper without any
+     * change to the configuration the key is built from.
+     */
+    private int getThemeColorsHash() {
+        if (!Utilities.ATLEAST_S) {
+            return 0;
+        }
+        int hash = 0;
+        for (int color : THEME_COLORS) {
+            hash = 31 * hash + mContext.getColor(color);
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the cached preview for {@param key}, reading it from disk if needed
+     */
+    @WorkerThread
+    @Nullable
+    public Bitmap get(@NonNull String key) {
+        Bitmap preview = mMemoryCache.get(key);
+        if (preview != null) {
+            return preview;
+        }
+        File file = getFile(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || !key.equals(in.readUTF())) {
+                // Stale or colliding entry
+                return null;
+            }
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            // Decode to the config the preview was rendered in
+            options.inPreferredConfig = Bitmap.Config.valueOf(in.readUTF());
+            preview = BitmapFactory.decodeStream(in, null, options);
+        } catch (IOException | IllegalArgumentException e) {
+            Log.w(TAG, "Unable to read widget preview " + file, e);
+            return null;
+        }
+        if (preview != null) {
+            mMemoryCache.put(key, preview);
+            // Keep track of the use for trimming
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return preview;
+    }
+
+    /**
+     * Adds {@param preview} to the cache. It is written to disk in the background.
+     */
+    public void put(@NonNull String key, @NonNull Bitmap preview) {
+        mMemoryCache.put(key, preview);
+        MAINTENANCE_EXECUTOR.execute(() -> writeToDisk(key, preview));
+    }
+
+    @WorkerThread
+    private void writeToDisk(String key, Bitmap preview) {
+        if (!mCacheDir.isDirectory() && !mCacheDir.mkdirs()) {
+            return;
+        }
+        Bitmap software = preview.getConfig() == Bitmap.Config.HARDWARE
+                ? preview.copy(Bitmap.Config.ARGB_8888, false) : preview;
+        if (software == null) {
+            return;
+        }
+        File file = getFile(key);
+        File tmp = new File(mCacheDir, file.getName() + TMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeUTF(key);
+            out.writeUTF(preview.getConfig().name());
+            software.compress(Bitmap.CompressFormat.PNG, 100, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write widget preview " + file, e);
+            tmp.delete();
+            return;
+        } finally {
+            if (software != preview) {
+                software.recycle();
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            return;
+        }
+        trimDiskCache();
+    }
+
+    @VisibleForTesting
+    @WorkerThread
+    void trimDiskCache() {
+        synchronized (mTrimLock) {
+            trimDiskCacheLocked();
+        }
+    }
+
+    private void trimDiskCacheLocked() {
+        // Previews still being written are left to their writer
+        File[] files = mCacheDir.listFiles((dir, name) -> !name.endsWith(TMP_SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File f : files) {
+            total += f.length();
+        }
+        if (total <= mMaxDiskBytes) {
+            return;
+        }
+        // Remove the least recently used previews first
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        long target = (long) (mMaxDiskBytes * DISK_TRIM_TARGET);
+        for (File f : files) {
+            if (total <= target) {
+                break;
+            }
+            long length = f.length();
+            if (f.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    File getFile(String key) {
+        return new File(mCacheDir, Long.toHexString(hash(key)));
+    }
+
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @Override
+    public void close() {
+        mPackageReceiver.unregisterReceiverSafely(mContext);
+        mMemoryCache.evictAll();
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static com.android.launcher3.util.Executors.MAIN_EXECUTOR;
+import static com.android.launcher3.util.Executors.WIDGET_PREVIEW_EXECUTOR;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.util.Size;
+import android.view.View;
+import android.view.ViewParent;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.VisibleForTesting;
+import androidx.annotation.WorkerThread;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.android.launcher3.model.WidgetItem;
+import com.android.launcher3.util.CancellableTask;
+import com.android.launcher3.util.ComponentKey;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Renders widget previews on {@link com.android.launcher3.util.Executors#WIDGET_PREVIEW_EXECUTOR},
+ * starting with the previews closest to the visible area of their list.
+ *
+ * Identical requests made while a preview is pending share a single render, and a preview is
+ * dropped without being rendered once all its requests are cancelled, like when the row showing
+ * it is recycled.
+ */
+class WidgetPreviewRenderQueue {
+
+    static final WidgetPreviewRenderQueue INSTANCE = new WidgetPreviewRenderQueue();
+
+    /** Priority of previews which are not attached to a list, they are rendered last. */
+    private static final int PRIORITY_DETACHED = Integer.MAX_VALUE;
+
+    private final Object mLock = new Object();
+    // Jobs waiting to be rendered
+    private final ArrayList<RenderJob> mPending = new ArrayList<>();
+    // Jobs waiting or being rendered, to deduplicate requests
+    private final HashMap<RenderKey, RenderJob> mJobs = new HashMap<>();
+    private long mNextSequence;
+
+    private final Rect mTempRect = new Rect();
+    private final Runnable mUpdatePriorities = this::updatePriorities;
+    private boolean mPriorityUpdatePosted;
+
+    private WidgetPreviewRenderQueue() { }
+
+    /**
+     * Queues the render of the preview of {@param item}, unless the same preview is already
+     * pending.
+     *
+     * @param anchor the view showing the preview, used to prioritize the render
+     * @return a request which can be used to cancel the callback
+     */
+    @UiThread
+    @NonNull
+    CancellableTask<Bitmap> enqueue(@NonNull WidgetItem item, @NonNull Size size,
+            @Nullable View anchor, @NonNull Supplier<Bitmap> renderer,
+            @NonNull Consumer<Bitmap> callback) {
+        RenderKey key = new RenderKey(item, size);
+        boolean added = false;
+        CancellableTask<Bitmap> request;
+        synchronized (mLock) {
+            RenderJob job = mJobs.get(key);
+            if (job == null) {
+                job = new RenderJob(key, renderer, mNextSequence++);
+                mJobs.put(key, job);
+                mPending.add(job);
+                added = true;
+            }
+            RenderJob target = job;
+            request = new CancellableTask<>(() -> target.mResult, MAIN_EXECUTOR, callback);
+            job.mRequests.add(request);
+            job.mAnchors.add(anchor);
+        }
+        if (added) {
+            WIDGET_PREVIEW_EXECUTOR.execute(this::renderNext);
+        }
+        onViewportChanged();
+        return request;
+    }
+
+    /**
+     * Called when the list showing previews scrolled, to update the order of pending renders
+     */
+    @UiThread
+    void onViewportChanged() {
+        if (!mPriorityUpdatePosted) {
+            mPriorityUpdatePosted = true;
+            // Posted so that the views requesting a preview are laid out first
+            MAIN_EXECUTOR.getHandler().post(mUpdatePriorities);
+        }
+    }
+
+    /**
+     * Waits until all the queued previews are rendered or dropped. Their callbacks are then
+     * posted on the main thread.
+     *
+     * @return false if previews were still pending after {@param timeoutMs}
+     */
+    @VisibleForTesting
+    boolean awaitIdle(long timeoutMs) throws InterruptedException {
+        // Every queued preview has a render task on the lane, which either renders or drops it
+        return WIDGET_PREVIEW_EXECUTOR.awaitIdle(timeoutMs);
+    }
+
+    @UiThread
+    private void updatePriorities() {
+        mPriorityUpdatePosted = false;
+        synchronized (mLock) {
+            for (int i = 0; i < mPending.size(); i++) {
+                RenderJob job = mPending.get(i);
+                int priority = PRIORITY_DETACHED;
+                for (int j = 0; j < job.mRequests.size(); j++) {
+                    if (!job.mRequests.get(j).getCanceled()) {
+                        priority = Math.min(priority, getDistanceToViewport(job.mAnchors.get(j)));
+                    }
+                }
+                job.mPriority = priority;
+            }
+        }
+    }
+
+    /**
+     * Returns the distance in pixels between {@param anchor} and the visible area of the list
+     * containing it.
+     */
+    @UiThread
+    private int getDistanceToViewport(@Nullable View anchor) {
+        if (anchor == null) {
+            return 0;
+        }
+        if (!anchor.isAttachedToWindow()) {
+            return PRIORITY_DETACHED;
+        }
+        ViewParent parent = anchor.getParent();
+        while (parent != null && !(parent instanceof RecyclerView)) {
+            parent = parent.getParent();
+        }
+        if (parent == null) {
+            return 0;
+        }
+        RecyclerView list = (RecyclerView) parent;
+        mTempRect.set(0, 0, anchor.getWidth(), anchor.getHeight());
+        list.offsetDescendantRectToMyCoords(anchor, mTempRect);
+        if (mTempRect.bottom < 0) {
+            return -mTempRect.bottom;
+        } else if (mTempRect.top > list.getHeight()) {
+            return mTempRect.top - list.getHeight();
+        }
+        return 0;
+    }
+
+    @WorkerThread
+    private void renderNext() {
+        RenderJob job;
+        synchronized (mLock) {
+            job = pollPendingJob();
+        }
+        if (job == null) {
+            return;
+        }
+        Bitmap result = job.mRenderer.get();
+        ArrayList<CancellableTask<Bitmap>> requests;
+        synchronized (mLock) {
+            job.mResult = result;
+            mJobs.remove(job.mKey);
+            requests = new ArrayList<>(job.mRequests);
+        }
+        for (CancellableTask<Bitmap> request : requests) {
+            request.run();
+        }
+    }
+
+    /**
+     * Removes and returns the pending job with the highest priority, dropping the cancelled ones
+     */
+    private RenderJob pollPendingJob() {
+        RenderJob best = null;
+        int bestIndex = -1;
+        for (int i = mPending.size() - 1; i >= 0; i--) {
+            RenderJob job = mPending.get(i);
+            if (job.isCancelled()) {
+                mPending.remove(i);
+                mJobs.remove(job.mKey);
+                if (bestIndex > i) {
+                    bestIndex--;
+                }
+                continue;
+            }
+            if (best == null || job.mPriority < best.mPriority
+                    || (job.mPriority == best.mPriority && job.mSequence < best.mSequence)) {
+                best = job;
+                bestIndex = i;
+            }
+        }
+        if (best != null) {
+            mPending.remove(bestIndex);
+        }
+        return best;
+    }
+
+    private static class RenderJob {
+
+        final RenderKey mKey;
+        final Supplier<Bitmap> mRenderer;
+        final long mSequence;
+        final ArrayList<CancellableTask<Bitmap>> mRequests = new ArrayList<>();
+        final ArrayList<View> mAnchors = new ArrayList<>();
+
+        int mPriority;
+        Bitmap mResult;
+
+        RenderJob(RenderKey key, Supplier<Bitmap> renderer, long sequence) {
+            mKey = key;
+            mRenderer = renderer;
+            mSequence = sequence;
+        }
+
+        boolean isCancelled() {
+            for (int i = 0; i < mRequests.size(); i++) {
+                if (!mRequests.get(i).getCanceled()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class RenderKey {
+
+        final ComponentKey mComponent;
+        final int mWidth;
+        final int mHeight;
+
+        RenderKey(WidgetItem item, Size size) {
+            mComponent = new ComponentKey(item.componentName, item.user);
+            mWidth = size.getWidth();
+            mHeight = size.getHeight();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RenderKey)) {
+                return false;
+            }
+            RenderKey other = (RenderKey) o;
+            return mWidth == other.mWidth && mHeight == other.mHeight
+                    && mComponent.equals(other.mComponent);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(mComponent, mWidth, mHeight);
+        }
+    }
+}
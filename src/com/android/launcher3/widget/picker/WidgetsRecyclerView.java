@@ -28,6 +28,7 @@ import androidx.recyclerview.widget.RecyclerView.OnItemTouchListener;
 import com.android.launcher3.FastScrollRecyclerView;
 import com.android.launcher3.R;
 import com.android.launcher3.util.ScrollableLayoutManager;
+import com.android.launcher3.widget.DatabaseWidgetPreviewLoader;
 
 /**
  * The widgets recycler view.
@@ -69,6 +70,12 @@ public class WidgetsRecyclerView extends FastScrollRecyclerView implements OnIte
         mAdapter = (WidgetsListAdapter) adapter;
     }
 
+    @Override
+    public void onScrolled(int dx, int dy) {
+        super.onScrolled(dx, dy);
+        DatabaseWidgetPreviewLoader.onPreviewListScrolled();
+    }
+
     /**
      * Maps the touch (from 0..1) to the adapter position that should be visible.
      */
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.util;
+
+import androidx.benchmark.BenchmarkState;
+import androidx.benchmark.junit4.BenchmarkRule;
+import androidx.test.filters.LargeTest;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the queries of {@link GridOccupancy} with the boolean array layout it replaced, on
+ * grids of the sizes used by tablets and foldables. Each operation is measured for both layouts
+ * on the same cells and the same queries, results are reported by {@link BenchmarkRule}.
+ */
+@LargeTest
+@RunWith(Parameterized.class)
+public class GridOccupancyBenchmark {
+
+    private static final long SEED = 42;
+    // Queries are precomputed, and cycled through, so that the loop only measures the grid
+    private static final int QUERY_COUNT = 256;
+
+    @Parameters(name = "{0}x{1}")
+    public static List<Object[]> grids() {
+        return Arrays.asList(new Object[][] {
+                {6, 5},     // Tablet
+                {8, 6},     // Foldable
+                {12, 10},   // Large grid option
+        });
+    }
+
+    @Rule
+    public final BenchmarkRule mBenchmarkRule = new BenchmarkRule();
+
+    private final int mCountX;
+    private final int mCountY;
+
+    private GridOccupancy mGrid;
+    private BooleanGridOccupancy mReference;
+    private final int[] mQueries = new int[QUERY_COUNT * 4];
+
+    public GridOccupancyBenchmark(int countX, int countY) {
+        mCountX = countX;
+        mCountY = countY;
+    }
+
+    @Before
+    public void setUp() {
+        Random random = new Random(SEED);
+        mGrid = new GridOccupancy(mCountX, mCountY);
+        mReference = new BooleanGridOccupancy(mCountX, mCountY);
+        // About a quarter of the grid is taken by 1x1 to 2x2 items
+        for (int i = 0; i < mCountX * mCountY / 4; i++) {
+            int x = random.nextInt(mCountX);
+            int y = random.nextInt(mCountY);
+            int spanX = 1 + random.nextInt(2);
+            int spanY = 1 + random.nextInt(2);
+            mGrid.markCells(x, y, spanX, spanY, true);
+            mReference.markCells(x, y, spanX, spanY, true);
+        }
+        for (int i = 0; i < QUERY_COUNT; i++) {
+            mQueries[i * 4] = random.nextInt(mCountX);
+            mQueries[i * 4 + 1] = random.nextInt(mCountY);
+            mQueries[i * 4 + 2] = 1 + random.nextInt(Math.min(mCountX, 4));
+            mQueries[i * 4 + 3] = 1 + random.nextInt(Math.min(mCountY, 4));
+        }
+    }
+
+    @Test
+    public void isRegionVacant() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            mGrid.isRegionVacant(mQueries[i], mQueries[i + 1], mQueries[i + 2], mQueries[i + 3]);
+            i = (i + 4) % mQueries.length;
+        }
+    }
+
+    @Test
+    public void isRegionVacant_booleanArray() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int i = 0;
+        while (state.keepRunning()) {
+            mReference.isRegionVacant(
+                    mQueries[i], mQueries[i + 1], mQueries[i + 2], mQueries[i + 3]);
+            i = (i + 4) % mQueries.length;
+        }
+    }
+
+    @Test
+    public void findVacantCell() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int[] out = new int[2];
+        int i = 0;
+        while (state.keepRunning()) {
+            mGrid.findVacantCell(out, mQueries[i + 2], mQueries[i + 3]);
+            i = (i + 4) % mQueries.length;
+        }
+    }
+
+    @Test
+    public void findVacantCell_booleanArray() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        int[] out = new int[2];
+        int i = 0;
+        while (state.keepRunning()) {
+            mReference.findVacantCell(out, mQueries[i + 2], mQueries[i + 3]);
+            i = (i + 4) % mQueries.length;
+        }
+    }
+
+    @Test
+    public void copyTo() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        GridOccupancy copy = new GridOccupancy(mCountX, mCountY);
+        while (state.keepRunning()) {
+            mGrid.copyTo(copy);
+        }
+    }
+
+    @Test
+    public void copyTo_booleanArray() {
+        BenchmarkState state = mBenchmarkRule.getState();
+        BooleanGridOccupancy copy = new BooleanGridOccupancy(mCountX, mCountY);
+        while (state.keepRunning()) {
+            mReference.copyTo(copy);
+        }
+    }
+
+    /**
+     * The boolean array layout {@link GridOccupancy} used before rows were stored as bit masks
+     */
+    private static class BooleanGridOccupancy {
+
+        private final int mCountX;
+        private final int mCountY;
+        private final boolean[][] mCells;
+
+        BooleanGridOccupancy(int countX, int countY) {
+            mCountX = countX;
+            mCountY = countY;
+            mCells = new boolean[countX][countY];
+        }
+
+        boolean findVacantCell(int[] vacantOut, int spanX, int spanY) {
+            for (int y = 0; (y + spanY) <= mCountY; y++) {
+                for (int x = 0; (x + spanX) <= mCountX; x++) {
+                    boolean available = !mCells[x][y];
+                    out:
+                    for (int i = x; i < x + spanX; i++) {
+                        for (int j = y; j < y + spanY; j++) {
+                            available = available && !mCells[i][j];
+                            if (!available) break out;
+                        }
+                    }
+                    if (available) {
+                        vacantOut[0] = x;
+                        vacantOut[1] = y;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        void copyTo(BooleanGridOccupancy dest) {
+            for (int i = 0; i < mCountX; i++) {
+                for (int j = 0; j < mCountY; j++) {
+                    dest.mCells[i][j] = mCells[i][j];
+                }
+            }
+        }
+
+        boolean isRegionVacant(int x, int y, int spanX, int spanY) {
+            int x2 = x + spanX - 1;
+            int y2 = y + spanY - 1;
+            if (x < 0 || y < 0 || x2 >= mCountX || y2 >= mCountY) {
+                return false;
+            }
+            for (int i = x; i <= x2; i++) {
+                for (int j = y; j <= y2; j++) {
+                    if (mCells[i][j]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        void markCells(int cellX, int cellY, int spanX, int spanY, boolean value) {
+            for (int x = cellX; x < cellX + spanX && x < mCountX; x++) {
+                for (int y = cellY; y < cellY + spanY && y < mCountY; y++) {
+                    mCells[x][y] = value;
+                }
+            }
+        }
+    }
+}
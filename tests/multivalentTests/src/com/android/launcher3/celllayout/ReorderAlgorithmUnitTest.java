@@ -142,8 +142,36 @@ public class ReorderAlgorithmUnitTest {
                 (CellLayoutLayoutParams) cell.getLayoutParams(), true);
     }
 
-    public ItemConfiguration solve(CellLayoutBoard board, int x, int y, int spanX,
-            int spanY, int minSpanX, int minSpanY, boolean isMulti) {
+    /**
+     * Runs every test case twice on the same ReorderAlgorithm and makes sure the arrangements it
+     * cached during the first run give the same result as the full search.
+     */
+    @Test
+    public void testCachedArrangementsMatchSearch() throws IOException {
+        List<ReorderAlgorithmUnitTestCase> testCases = getTestCases(
+                "ReorderAlgorithmUnitTest/reorder_algorithm_test_cases");
+        mApplicationContext = new ActivityContextWrapper(getApplicationContext());
+        for (ReorderAlgorithmUnitTestCase testCase : testCases) {
+            CellLayout cl = createCellLayout(testCase.startBoard, false);
+            ReorderAlgorithm algorithm = cl.createReorderAlgorithm();
+            ItemConfiguration searched = calculateReorder(cl, algorithm, testCase.x, testCase.y,
+                    testCase.spanX, testCase.spanY, testCase.minSpanX, testCase.minSpanY);
+            ItemConfiguration cached = calculateReorder(cl, algorithm, testCase.x, testCase.y,
+                    testCase.spanX, testCase.spanY, testCase.minSpanX, testCase.minSpanY);
+
+            assertEquals(searched == null, cached == null);
+            if (searched == null) {
+                continue;
+            }
+            assertEquals(searched.isSolution, cached.isSolution);
+            assertEquals(searched.toString(), cached.toString());
+            assertEquals(searched.map.size(), cached.map.size());
+            searched.map.forEach((view, cell) ->
+                    assertEquals(cell.toString(), cached.map.get(view).toString()));
+        }
+    }
+
+    private CellLayout createCellLayout(CellLayoutBoard board, boolean isMulti) {
         CellLayout cl = mCellLayoutBuilder.createCellLayout(board.getWidth(), board.getHeight(),
                 isMulti);
 
@@ -162,24 +190,34 @@ public class ReorderAlgorithmUnitTest {
                         widget -> addViewInCellLayout(cl, widget.getCellX(), widget.getCellY(),
                                 widget.getSpanX(), widget.getSpanY(), true)
                 );
+        return cl;
+    }
 
+    private ItemConfiguration calculateReorder(CellLayout cl, ReorderAlgorithm algorithm, int x,
+            int y, int spanX, int spanY, int minSpanX, int minSpanY) {
         int[] testCaseXYinPixels = new int[2];
         cl.regionToCenterPoint(x, y, spanX, spanY, testCaseXYinPixels);
         ItemConfiguration configuration = new ItemConfiguration();
         cl.copyCurrentStateToSolution(configuration);
-        ItemConfiguration solution = cl.createReorderAlgorithm()
-                .calculateReorder(
-                        new ReorderParameters(
-                                testCaseXYinPixels[0],
-                                testCaseXYinPixels[1],
-                                spanX,
-                                spanY,
-                                minSpanX,
-                                minSpanY,
-                                null,
-                                configuration
-                        )
-                );
+        return algorithm.calculateReorder(
+                new ReorderParameters(
+                        testCaseXYinPixels[0],
+                        testCaseXYinPixels[1],
+                        spanX,
+                        spanY,
+                        minSpanX,
+                        minSpanY,
+                        null,
+                        configuration
+                )
+        );
+    }
+
+    public ItemConfiguration solve(CellLayoutBoard board, int x, int y, int spanX,
+            int spanY, int minSpanX, int minSpanY, boolean isMulti) {
+        CellLayout cl = createCellLayout(board, isMulti);
+        ItemConfiguration solution = calculateReorder(cl, cl.createReorderAlgorithm(), x, y, spanX,
+                spanY, minSpanX, minSpanY);
         if (solution == null) {
             solution = new ItemConfiguration();
             solution.isSolution = false;
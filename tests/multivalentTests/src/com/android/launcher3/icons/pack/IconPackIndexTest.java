@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.icons.pack;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+/**
+ * Tests for the on-disk format of {@link IconPackIndex}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class IconPackIndexTest {
+
+    private static final long VERSION_CODE = 42;
+    private static final long LAST_UPDATE_TIME = 1_700_000_000_000L;
+
+    // "Aa", "BB" and "C#" share the same hash code, and so do the flattened components below.
+    private static final ComponentName COLLIDING_1 = new ComponentName("Aa", "Aa.Main");
+    private static final ComponentName COLLIDING_2 = new ComponentName("BB", "BB.Main");
+    private static final ComponentName COLLIDING_MISSING = new ComponentName("C#", "C#.Main");
+    private static final ComponentName CALENDAR = new ComponentName("com.calendar", "Main");
+    private static final ComponentName MISSING = new ComponentName("com.missing", "Main");
+
+    private File mTempDir;
+    private File mFile;
+
+    @Before
+    public void setUp() {
+        int count = 0;
+        do {
+            mTempDir = new File(getApplicationContext().getCacheDir(),
+                    "icon-pack-index-test-" + (count++));
+        } while (!mTempDir.mkdir());
+        mFile = new File(mTempDir, "index");
+    }
+
+    @After
+    public void tearDown() {
+        mFile.delete();
+        new File(mTempDir, mFile.getName() + ".tmp").delete();
+        mTempDir.delete();
+    }
+
+    @Test
+    public void testCollidingComponentsShareHash() {
+        int hash = COLLIDING_1.flattenToString().hashCode();
+        assertEquals(hash, COLLIDING_2.flattenToString().hashCode());
+        assertEquals(hash, COLLIDING_MISSING.flattenToString().hashCode());
+    }
+
+    @Test
+    public void testBuiltIndexMatchesBuilder() {
+        verifyContents(newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME));
+    }
+
+    @Test
+    public void testRoundTrip() {
+        newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+        assertTrue(mFile.exists());
+        assertFalse(new File(mTempDir, mFile.getName() + ".tmp").exists());
+
+        IconPackIndex index = IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+        assertNotNull(index);
+        verifyContents(index);
+    }
+
+    @Test
+    public void testEmptyPackRoundTrip() {
+        new IconPackIndex.Builder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+
+        IconPackIndex index = IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+        assertNotNull(index);
+        assertEquals(1f, index.scale, 0);
+        assertTrue(index.iconBacks.isEmpty());
+        assertEquals(0, index.clockMetadata.size());
+        assertFalse(index.contains(MISSING));
+        assertEquals(0, index.getDrawableId(MISSING));
+    }
+
+    @Test
+    public void testHeaderStoresPackVersion() throws IOException {
+        newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(mFile.toPath()));
+        assertEquals(VERSION_CODE, buffer.getLong(2 * Integer.BYTES));
+        assertEquals(LAST_UPDATE_TIME, buffer.getLong(2 * Integer.BYTES + Long.BYTES));
+    }
+
+    @Test
+    public void testEntriesSortedByHash() throws IOException {
+        newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(mFile.toPath()));
+        int pos = entryCountPosition(buffer);
+        int count = buffer.getInt(pos);
+        assertEquals(5, count);
+
+        int[] hashes = new int[count];
+        for (int i = 0; i < count; i++) {
+            hashes[i] = buffer.getInt(pos + Integer.BYTES + i * 4 * Integer.BYTES);
+        }
+        int[] sorted = hashes.clone();
+        Arrays.sort(sorted);
+        assertTrue(Arrays.equals(sorted, hashes));
+    }
+
+    @Test
+    public void testLoad_missingFile() {
+        assertNull(IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME));
+    }
+
+    @Test
+    public void testLoad_rejectsOtherPackVersion() {
+        newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+
+        assertNull(IconPackIndex.load(mFile, VERSION_CODE + 1, LAST_UPDATE_TIME));
+        assertNull(IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME + 1));
+        assertNotNull(IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME));
+    }
+
+    @Test
+    public void testLoad_rejectsWrongMagic() throws IOException {
+        newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+        writeInt(0, 0);
+
+        assertNull(IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME));
+    }
+
+    @Test
+    public void testLoad_rejectsOtherFormatVersion() throws IOException {
+        newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+        writeInt(Integer.BYTES, Integer.MAX_VALUE);
+
+        assertNull(IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME));
+    }
+
+    @Test
+    public void testLoad_rejectsTruncatedEntries() throws IOException {
+        newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(mFile.toPath()));
+        int firstEntryEnd = entryCountPosition(buffer) + Integer.BYTES + 4 * Integer.BYTES;
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(firstEntryEnd);
+        }
+
+        assertNull(IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME));
+    }
+
+    @Test
+    public void testLoad_rejectsTruncatedHeader() throws IOException {
+        newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.setLength(Integer.BYTES + 1);
+        }
+
+        assertNull(IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME));
+    }
+
+    @Test
+    public void testRebuildReplacesStaleFile() {
+        newBuilder().build(mFile, VERSION_CODE, LAST_UPDATE_TIME);
+        IconPackIndex.Builder builder = new IconPackIndex.Builder();
+        builder.drawables.put(MISSING, 7);
+        builder.build(mFile, VERSION_CODE + 1, LAST_UPDATE_TIME);
+
+        assertNull(IconPackIndex.load(mFile, VERSION_CODE, LAST_UPDATE_TIME));
+        IconPackIndex index = IconPackIndex.load(mFile, VERSION_CODE + 1, LAST_UPDATE_TIME);
+        assertNotNull(index);
+        assertEquals(7, index.getDrawableId(MISSING));
+        assertFalse(index.contains(COLLIDING_1));
+    }
+
+    private static IconPackIndex.Builder newBuilder() {
+        IconPackIndex.Builder builder = new IconPackIndex.Builder();
+        builder.scale = 0.75f;
+        builder.iconBacks.addAll(Arrays.asList(11, 12));
+        builder.iconMasks.add(13);
+        builder.iconUpons.add(14);
+        builder.clockMetadata.put(5, new IconPack.Clock(1, 2, 3, 10, 20, 30));
+
+        builder.drawables.put(COLLIDING_1, 1);
+        builder.drawables.put(COLLIDING_2, 2);
+        builder.drawables.put(CALENDAR, 3);
+        builder.calendarPrefix.put(CALENDAR, "calendar_");
+        // Components with multi-byte names go through the string table too.
+        builder.drawables.put(new ComponentName("com.\u00e9", "Main"), 4);
+        builder.drawables.put(new ComponentName("com.clock", "Main"), 5);
+        return builder;
+    }
+
+    private static void verifyContents(IconPackIndex index) {
+        assertEquals(0.75f, index.scale, 0);
+        assertEquals(Arrays.asList(11, 12), index.iconBacks);
+        assertEquals(Arrays.asList(13), index.iconMasks);
+        assertEquals(Arrays.asList(14), index.iconUpons);
+
+        assertEquals(1, index.clockMetadata.size());
+        IconPack.Clock clock = index.clockMetadata.get(5);
+        assertNotNull(clock);
+        assertEquals(1, clock.hourLayerIndex);
+        assertEquals(2, clock.minuteLayerIndex);
+        assertEquals(3, clock.secondLayerIndex);
+        assertEquals(10, clock.defaultHour);
+        assertEquals(20, clock.defaultMinute);
+        assertEquals(30, clock.defaultSecond);
+
+        assertEquals(1, index.getDrawableId(COLLIDING_1));
+        assertEquals(2, index.getDrawableId(COLLIDING_2));
+        assertFalse(index.contains(COLLIDING_MISSING));
+        assertEquals(0, index.getDrawableId(COLLIDING_MISSING));
+
+        assertEquals(3, index.getDrawableId(CALENDAR));
+        assertEquals("calendar_", index.getCalendarPrefix(CALENDAR));
+        assertNull(index.getCalendarPrefix(COLLIDING_1));
+        assertEquals(4, index.getDrawableId(new ComponentName("com.\u00e9", "Main")));
+        assertEquals(5, index.getDrawableId(new ComponentName("com.clock", "Main")));
+
+        assertFalse(index.contains(MISSING));
+        assertEquals(0, index.getDrawableId(MISSING));
+        assertNull(index.getCalendarPrefix(MISSING));
+    }
+
+    /**
+     * Skips the header, scale, icon ids and clocks, and returns the position of the entry count.
+     */
+    private static int entryCountPosition(ByteBuffer buffer) {
+        int pos = 2 * Integer.BYTES + 2 * Long.BYTES + Float.BYTES;
+        for (int i = 0; i < 3; i++) {
+            pos += Integer.BYTES + buffer.getInt(pos) * Integer.BYTES;
+        }
+        return pos + Integer.BYTES + buffer.getInt(pos) * 7 * Integer.BYTES;
+    }
+
+    private void writeInt(long position, int value) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(mFile, "rw")) {
+            raf.seek(position);
+            raf.writeInt(value);
+        }
+    }
+}
@@ -67,6 +67,26 @@ public class FileLogTest {
         assertTrue(writer.toString().contains("hoolalala"));
     }
 
+    @Test
+    public void testBatchedLogsKeepOrder() throws Exception {
+        if (!FileLog.ENABLED) {
+            return;
+        }
+        for (int i = 0; i < 100; i++) {
+            FileLog.print("Testing", "batched-" + i + ";");
+        }
+        StringWriter writer = new StringWriter();
+        assertTrue(FileLog.flushAll(new PrintWriter(writer)));
+
+        String logs = writer.toString();
+        int lastIndex = -1;
+        for (int i = 0; i < 100; i++) {
+            int index = logs.indexOf("batched-" + i + ";");
+            assertTrue(index > lastIndex);
+            lastIndex = index;
+        }
+    }
+
     @Test
     public void testOldFileTruncated() throws Exception {
         if (!FileLog.ENABLED) {
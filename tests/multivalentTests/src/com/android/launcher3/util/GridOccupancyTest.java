@@ -10,6 +10,8 @@ import androidx.test.filters.SmallTest;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Random;
+
 /**
  * Unit tests for {@link GridOccupancy}
  */
@@ -55,13 +57,119 @@ public class GridOccupancyTest {
         assertFalse(grid.isRegionVacant(0, 0, 2, 1));
     }
 
+    @Test
+    public void testIsRegionVacantForBlock() {
+        GridOccupancy grid = initGrid(4,
+                1, 1, 1, 0, 0,
+                0, 0, 1, 1, 0,
+                0, 0, 0, 0, 0,
+                1, 1, 0, 0, 0
+        );
+        // An L shaped block, only its occupied cells need to be vacant
+        GridOccupancy block = initGrid(2,
+                1, 0,
+                1, 1
+        );
+
+        assertTrue(grid.isRegionVacant(1, 1, 2, 2, block));
+        assertFalse(grid.isRegionVacant(1, 1, 2, 2));
+        assertTrue(grid.isRegionVacant(0, 1, 2, 2, block));
+        assertFalse(grid.isRegionVacant(3, 0, 2, 2, block));
+        assertFalse(grid.isRegionVacant(2, 0, 2, 2, block));
+        assertFalse(grid.isRegionVacant(4, 0, 2, 2, block));
+        assertTrue(grid.isRegionVacant(0, 1, 2, 2, null));
+    }
+
+    @Test
+    public void testMarkCellsAndCopy() {
+        GridOccupancy grid = new GridOccupancy(8, 6);
+        grid.markCells(6, 4, 4, 4, true);
+        assertTrue(grid.isOccupied(7, 5));
+        assertFalse(grid.isOccupied(5, 5));
+        assertFalse(grid.isRegionVacant(6, 4, 1, 1));
+
+        GridOccupancy copy = new GridOccupancy(8, 6);
+        grid.copyTo(copy);
+        grid.clear();
+        assertTrue(copy.isOccupied(6, 4));
+        assertFalse(grid.isOccupied(6, 4));
+
+        copy.markCells(6, 4, 2, 2, false);
+        int[] vacant = new int[2];
+        assertTrue(copy.findVacantCell(vacant, 8, 6));
+        assertEquals(0, vacant[0]);
+        assertEquals(0, vacant[1]);
+    }
+
+    @Test
+    public void testMatchesCellByCellChecksOnRandomGrids() {
+        Random random = new Random(42);
+        int[][] sizes = {{4, 5}, {6, 5}, {8, 6}, {12, 10}};
+        int[] vacant = new int[2];
+        for (int[] size : sizes) {
+            int countX = size[0];
+            int countY = size[1];
+            for (int iteration = 0; iteration < 20; iteration++) {
+                GridOccupancy grid = new GridOccupancy(countX, countY);
+                boolean[][] cells = new boolean[countX][countY];
+                for (int i = random.nextInt(countX * countY / 2); i > 0; i--) {
+                    int x = random.nextInt(countX);
+                    int y = random.nextInt(countY);
+                    grid.markCells(x, y, 1, 1, true);
+                    cells[x][y] = true;
+                }
+
+                int spanX = 1 + random.nextInt(countX);
+                int spanY = 1 + random.nextInt(countY);
+                for (int x = 0; x < countX; x++) {
+                    for (int y = 0; y < countY; y++) {
+                        assertEquals(isRegionVacant(cells, x, y, spanX, spanY),
+                                grid.isRegionVacant(x, y, spanX, spanY));
+                    }
+                }
+
+                int[] expected = findVacantCell(cells, spanX, spanY);
+                assertEquals(expected != null, grid.findVacantCell(vacant, spanX, spanY));
+                if (expected != null) {
+                    assertEquals(expected[0], vacant[0]);
+                    assertEquals(expected[1], vacant[1]);
+                }
+            }
+        }
+    }
+
+    private static boolean isRegionVacant(boolean[][] cells, int x, int y, int spanX, int spanY) {
+        if (x + spanX > cells.length || y + spanY > cells[0].length) {
+            return false;
+        }
+        for (int i = x; i < x + spanX; i++) {
+            for (int j = y; j < y + spanY; j++) {
+                if (cells[i][j]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int[] findVacantCell(boolean[][] cells, int spanX, int spanY) {
+        for (int y = 0; y + spanY <= cells[0].length; y++) {
+            for (int x = 0; x + spanX <= cells.length; x++) {
+                if (isRegionVacant(cells, x, y, spanX, spanY)) {
+                    return new int[] {x, y};
+                }
+            }
+        }
+        return null;
+    }
+
     private GridOccupancy initGrid(int rows, int... cells) {
         int cols = cells.length / rows;
         int i = 0;
         GridOccupancy grid = new GridOccupancy(cols, rows);
         for (int y = 0; y < rows; y++) {
             for (int x = 0; x < cols; x++) {
-                grid.cells[x][y] = cells[i] != 0;
+                grid.markCells(x, y, 1, 1, cells[i] != 0);
                 i++;
             }
         }
@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.widget;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static com.android.launcher3.util.Executors.MAINTENANCE_EXECUTOR;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.LocaleList;
+import android.os.Process;
+import android.os.UserHandle;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests for {@link WidgetPreviewCache}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class WidgetPreviewCacheTest {
+
+    private static final long MAX_DISK_BYTES = 4000;
+    private static final long TIMEOUT_MS = 10_000;
+    private static final String COMPONENT = "com.example/.Provider";
+
+    private Context mContext;
+    private File mCacheDir;
+    private WidgetPreviewCache mCache;
+
+    @Before
+    public void setUp() {
+        mContext = getApplicationContext();
+        int count = 0;
+        do {
+            mCacheDir = new File(mContext.getCacheDir(), "widget-preview-test-" + (count++));
+        } while (!mCacheDir.mkdir());
+        mCache = new WidgetPreviewCache(mContext, mCacheDir, MAX_DISK_BYTES);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        MAINTENANCE_EXECUTOR.awaitIdle(TIMEOUT_MS);
+        mCache.close();
+        File[] files = mCacheDir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                f.delete();
+            }
+        }
+        mCacheDir.delete();
+    }
+
+    @Test
+    public void buildKey_sameInputs_sameKey() {
+        Configuration config = newConfiguration();
+
+        assertThat(buildKey(new Configuration(config), 0, 100))
+                .isEqualTo(buildKey(config, 0, 100));
+    }
+
+    @Test
+    public void buildKey_changesWithRenderingInputs() {
+        Configuration base = newConfiguration();
+        Set<String> keys = new HashSet<>();
+        keys.add(buildKey(base, 0, 100));
+
+        Configuration locale = new Configuration(base);
+        locale.setLocales(LocaleList.forLanguageTags("fr-FR"));
+        assertThat(keys.add(buildKey(locale, 0, 100))).isTrue();
+
+        Configuration fontScale = new Configuration(base);
+        fontScale.fontScale = 1.3f;
+        assertThat(keys.add(buildKey(fontScale, 0, 100))).isTrue();
+
+        Configuration density = new Configuration(base);
+        density.densityDpi = 560;
+        assertThat(keys.add(buildKey(density, 0, 100))).isTrue();
+
+        Configuration night = new Configuration(base);
+        night.uiMode = Configuration.UI_MODE_NIGHT_YES;
+        assertThat(keys.add(buildKey(night, 0, 100))).isTrue();
+
+        // Wallpaper colors
+        assertThat(keys.add(buildKey(base, 0xff00ff00, 100))).isTrue();
+        // Package update
+        assertThat(keys.add(buildKey(base, 0, 200))).isTrue();
+        // Preview size
+        assertThat(keys.add(WidgetPreviewCache.buildKey(COMPONENT, Process.myUserHandle(), 100,
+                50, 50, base, 0))).isTrue();
+        // User
+        assertThat(keys.add(WidgetPreviewCache.buildKey(COMPONENT, UserHandle.of(10), 100,
+                100, 50, base, 0))).isTrue();
+    }
+
+    @Test
+    public void get_readsPreviewWrittenBeforeRestart() throws InterruptedException {
+        Bitmap preview = Bitmap.createBitmap(20, 10, Bitmap.Config.ARGB_8888);
+        preview.eraseColor(Color.RED);
+        mCache.put("key", preview);
+        assertThat(MAINTENANCE_EXECUTOR.awaitIdle(TIMEOUT_MS)).isTrue();
+
+        WidgetPreviewCache restarted = new WidgetPreviewCache(mContext, mCacheDir,
+                MAX_DISK_BYTES);
+        try {
+            Bitmap read = restarted.get("key");
+            assertThat(read).isNotNull();
+            assertThat(read.getWidth()).isEqualTo(20);
+            assertThat(read.getHeight()).isEqualTo(10);
+            assertThat(read.getPixel(0, 0)).isEqualTo(Color.RED);
+            assertThat(restarted.get("other key")).isNull();
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    public void get_ignoresFileWrittenForOtherKey() throws IOException, InterruptedException {
+        mCache.put("stale key", Bitmap.createBitmap(20, 10, Bitmap.Config.ARGB_8888));
+        assertThat(MAINTENANCE_EXECUTOR.awaitIdle(TIMEOUT_MS)).isTrue();
+        // As if the current key hashed to the file of a stale preview
+        Files.copy(mCache.getFile("stale key").toPath(), mCache.getFile("key").toPath());
+
+        WidgetPreviewCache restarted = new WidgetPreviewCache(mContext, mCacheDir,
+                MAX_DISK_BYTES);
+        try {
+            assertThat(restarted.get("key")).isNull();
+            assertThat(restarted.get("stale key")).isNotNull();
+        } finally {
+            restarted.close();
+        }
+    }
+
+    @Test
+    public void trimDiskCache_underLimit_keepsAllFiles() throws IOException {
+        for (int i = 0; i < 4; i++) {
+            createFile("preview" + i, 1000, i);
+        }
+
+        mCache.trimDiskCache();
+
+        assertThat(mCacheDir.list()).hasLength(4);
+    }
+
+    @Test
+    public void trimDiskCache_overLimit_removesLeastRecentlyUsedFirst() throws IOException {
+        // Written in a shuffled order, preview0 is the least recently used
+        createFile("preview3", 1000, 3);
+        createFile("preview0", 1000, 0);
+        createFile("preview4", 1000, 4);
+        createFile("preview1", 1000, 1);
+        createFile("preview2", 1000, 2);
+        File writing = createFile("preview5.tmp", 1000, -1);
+
+        mCache.trimDiskCache();
+
+        // Trimmed down to 75% of the limit, in-progress writes are not counted nor removed
+        assertThat(new File(mCacheDir, "preview0").exists()).isFalse();
+        assertThat(new File(mCacheDir, "preview1").exists()).isFalse();
+        assertThat(new File(mCacheDir, "preview2").exists()).isTrue();
+        assertThat(new File(mCacheDir, "preview3").exists()).isTrue();
+        assertThat(new File(mCacheDir, "preview4").exists()).isTrue();
+        assertThat(writing.exists()).isTrue();
+        long total = 0;
+        for (File f : mCacheDir.listFiles((dir, name) -> !name.endsWith(".tmp"))) {
+            total += f.length();
+        }
+        assertThat(total).isAtMost((long) (MAX_DISK_BYTES * WidgetPreviewCache.DISK_TRIM_TARGET));
+    }
+
+    private static String buildKey(Configuration config, int themeColorsHash,
+            long lastUpdateTime) {
+        return WidgetPreviewCache.buildKey(COMPONENT, Process.myUserHandle(), lastUpdateTime,
+                100, 50, config, themeColorsHash);
+    }
+
+    private static Configuration newConfiguration() {
+        Configuration config = new Configuration();
+        config.setToDefaults();
+        config.densityDpi = 420;
+        config.fontScale = 1f;
+        config.uiMode = Configuration.UI_MODE_NIGHT_NO;
+        config.setLocales(LocaleList.forLanguageTags("en-US"));
+        return config;
+    }
+
+    private File createFile(String name, int length, int lastUsedRank) throws IOException {
+        File file = new File(mCacheDir, name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+        // Whole seconds apart, file systems may not keep milliseconds
+        file.setLastModified(1_700_000_000_000L + (lastUsedRank + 1) * 10_000L);
+        return file;
+    }
+}
@@ -114,7 +114,7 @@ public final class WidgetsListTableViewHolderBinderTest {
                 /* numOfWidgets= */ 3);
         mViewHolderBinder.bindViewHolder(viewHolder, entry, /* position= */ 0, EMPTY_LIST);
         // Wait for the loader to complete the preview loading
-        DatabaseWidgetPreviewLoader.getLoaderExecutor().submit(() -> { }).get();
+        DatabaseWidgetPreviewLoader.waitForPendingPreviews();
         getInstrumentation().waitForIdleSync();
 
         // THEN the table container has one row, which contains 3 widgets.
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.allapps;
+
+import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.os.Process;
+
+import androidx.test.filters.SmallTest;
+import androidx.test.runner.AndroidJUnit4;
+
+import com.android.launcher3.model.data.AppInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class SortedAppListTest {
+
+    // Few enough titles for many apps to share the same sort key
+    private static final String[] TITLES = {
+            "Calendar", "camera", "Clock", "Éclair", "eclair", "Maps", "2048", "#hashtag", "Zoo"};
+
+    private final Collator mCollator = Collator.getInstance();
+    private AppInfoComparator mComparator;
+    private SortedAppList mSortedApps;
+    private int mAppCount;
+
+    @Before
+    public void setUp() {
+        mComparator = new AppInfoComparator(getApplicationContext());
+        mSortedApps = new SortedAppList(mComparator);
+    }
+
+    @Test
+    public void update_sortsInitialApps() {
+        List<AppInfo> apps = new ArrayList<>();
+        for (String title : TITLES) {
+            apps.add(newApp(title));
+        }
+
+        assertTrue(update(apps));
+        assertSortedLike(apps);
+    }
+
+    @Test
+    public void update_sameApps_returnsFalse() {
+        List<AppInfo> apps = Arrays.asList(newApp("Maps"), newApp("Clock"), newApp("Zoo"));
+        update(apps);
+
+        assertFalse(update(apps));
+        assertSortedLike(apps);
+    }
+
+    @Test
+    public void update_addsAndRemovesIncrementally() {
+        List<AppInfo> apps = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            apps.add(newApp(TITLES[i % TITLES.length] + i));
+        }
+        update(apps);
+
+        // Few enough changes to be inserted one by one rather than sorted again
+        apps.remove(15);
+        apps.remove(3);
+        apps.add(newApp("Aardvark"));
+        apps.add(newApp("Maps"));
+        apps.add(0, newApp("Zebra"));
+
+        assertTrue(update(apps));
+        assertSortedLike(apps);
+    }
+
+    @Test
+    public void update_renamedApp_movesToNewPosition() {
+        List<AppInfo> apps = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            apps.add(newApp("App " + (char) ('A' + i)));
+        }
+        update(apps);
+
+        rename(apps.get(0), "App Z");
+        rename(apps.get(11), "Aaa");
+
+        assertTrue(update(apps));
+        assertSortedLike(apps);
+    }
+
+    @Test
+    public void update_equalSortKeys_keepsOrderOfFullSort() {
+        List<AppInfo> apps = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            apps.add(newApp(i % 2 == 0 ? "Same" : "Other"));
+        }
+        update(apps);
+        assertSortedLike(apps);
+
+        // Renaming to and from a shared title, and removing one of the apps sharing it. The
+        // renamed apps are inserted next to apps comparing equal to them but for the component.
+        rename(apps.get(1), "Same");
+        rename(apps.get(4), "Other");
+        apps.remove(6);
+
+        assertTrue(update(apps));
+        assertSortedLike(apps);
+    }
+
+    @Test
+    public void update_mixedUpdates_matchFullSort() {
+        Random random = new Random(42);
+        List<AppInfo> apps = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            apps.add(newApp(randomTitle(random)));
+        }
+
+        for (int round = 0; round < 200; round++) {
+            // Alternate between small updates, sorted incrementally, and large ones
+            int changes = round % 10 == 0 ? 20 : 1 + random.nextInt(4);
+            for (int i = 0; i < changes; i++) {
+                switch (random.nextInt(3)) {
+                    case 0:
+                        apps.add(random.nextInt(apps.size() + 1), newApp(randomTitle(random)));
+                        break;
+                    case 1:
+                        if (!apps.isEmpty()) {
+                            apps.remove(random.nextInt(apps.size()));
+                        }
+                        break;
+                    default:
+                        if (!apps.isEmpty()) {
+                            rename(apps.get(random.nextInt(apps.size())), randomTitle(random));
+                        }
+                }
+            }
+
+            update(apps);
+            assertSortedLike(apps);
+        }
+    }
+
+    private boolean update(List<AppInfo> apps) {
+        return mSortedApps.update(apps.toArray(new AppInfo[0]));
+    }
+
+    private void assertSortedLike(List<AppInfo> apps) {
+        List<AppInfo> expected = new ArrayList<>(apps);
+        expected.sort(mComparator);
+        List<AppInfo> actual = new ArrayList<>();
+        mSortedApps.forEach(actual::add);
+        assertEquals(expected, actual);
+    }
+
+    private static String randomTitle(Random random) {
+        // Mostly shared titles, with a few unique ones
+        return random.nextInt(4) == 0
+                ? "App " + random.nextInt(1000) : TITLES[random.nextInt(TITLES.length)];
+    }
+
+    private AppInfo newApp(String title) {
+        String packageName = "com.example.app" + (mAppCount++);
+        AppInfo app = new AppInfo(new ComponentName(packageName, packageName + ".Main"), null,
+                Process.myUserHandle(), new Intent());
+        rename(app, title);
+        return app;
+    }
+
+    private void rename(AppInfo app, String title) {
+        app.title = title;
+        app.sortKey = mCollator.getCollationKey(app.getSortingTitle());
+    }
+}
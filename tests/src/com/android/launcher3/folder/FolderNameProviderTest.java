@@ -18,7 +18,12 @@ package com.android.launcher3.folder;
 import static androidx.test.core.app.ApplicationProvider.getApplicationContext;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 import android.content.ComponentName;
 import android.content.Context;
@@ -28,10 +33,15 @@ import android.os.UserHandle;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import androidx.test.filters.SmallTest;
 
+import com.android.launcher3.AppFilter;
+import com.android.launcher3.icons.IconCache;
+import com.android.launcher3.model.AllAppsList;
 import com.android.launcher3.model.data.AppInfo;
+import com.android.launcher3.model.data.CollectionInfo;
 import com.android.launcher3.model.data.WorkspaceItemInfo;
 import com.android.launcher3.util.ActivityContextWrapper;
 import com.android.launcher3.util.Executors;
+import com.android.launcher3.util.IntSparseArrayMap;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -82,4 +92,46 @@ public final class FolderNameProviderTest {
         assertTrue(nameInfos.hasSuggestions());
         assertTrue(nameInfos.hasPrimary());
     }
+
+    @Test
+    public void findAppForPackage_returnsFirstComponentOfPackage() {
+        AllAppsList apps = newAllAppsList();
+        AppInfo second = newApp("a.b.c", "a.b.c.Second", "Second");
+        AppInfo first = newApp("a.b.c", "a.b.c.First", "First");
+        apps.add(second, null);
+        apps.add(first, null);
+        apps.add(newApp("x.y.z", "x.y.z.Other", "Other"), null);
+
+        assertSame(first, apps.findAppForPackage("a.b.c"));
+        assertNull(apps.findAppForPackage("d.e.f"));
+
+        apps.removePackage("a.b.c", first.user);
+        assertNull(apps.findAppForPackage("a.b.c"));
+    }
+
+    @Test
+    public void getSuggestedFolderName_suggestsTitleOfPackage() throws Exception {
+        AllAppsList apps = newAllAppsList();
+        apps.add(newApp("a.b.c", "a.b.c.Second", "Second"), null);
+        apps.add(newApp("a.b.c", "a.b.c.First", "First"), null);
+        ArrayList<WorkspaceItemInfo> list = new ArrayList<>();
+        list.add(new WorkspaceItemInfo(newApp("a.b.c", "a.b.c.Second", "Second")));
+        list.add(new WorkspaceItemInfo(newApp("a.b.c", "a.b.c.Third", "Third")));
+        FolderNameInfos nameInfos = new FolderNameInfos();
+        Executors.MODEL_EXECUTOR.submit(() -> FolderNameProvider.newInstance(
+                mContext, apps, new IntSparseArrayMap<CollectionInfo>())
+                .getSuggestedFolderName(mContext, list, nameInfos)).get();
+        assertEquals("First", nameInfos.getLabels()[0]);
+    }
+
+    private static AllAppsList newAllAppsList() {
+        AppFilter appFilter = mock(AppFilter.class);
+        when(appFilter.shouldShowApp(any())).thenReturn(true);
+        return new AllAppsList(mock(IconCache.class), appFilter, null);
+    }
+
+    private static AppInfo newApp(String packageName, String className, String title) {
+        ComponentName cn = new ComponentName(packageName, className);
+        return new AppInfo(cn, title, UserHandle.of(0), new Intent().setComponent(cn));
+    }
 }
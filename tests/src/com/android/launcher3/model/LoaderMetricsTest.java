@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.launcher3.model;
+
+import static com.android.launcher3.model.LoaderMetrics.MAX_LOADS_TRACKED;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_BIND_ALL_APPS;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_BIND_WORKSPACE;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_LOAD_ALL_APPS;
+import static com.android.launcher3.model.LoaderMetrics.STAGE_LOAD_WORKSPACE;
+import static com.android.launcher3.model.LoaderMetrics.LoadRecord.STATUS_CANCELLED;
+import static com.android.launcher3.model.LoaderMetrics.LoadRecord.STATUS_COMPLETED;
+import static com.android.launcher3.model.LoaderMetrics.LoadRecord.STATUS_RUNNING;
+import static com.android.launcher3.model.LoaderMetrics.StageMetrics.UNKNOWN_COUNT;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.filters.SmallTest;
+
+import com.android.launcher3.model.LoaderMetrics.LoadRecord;
+import com.android.launcher3.model.LoaderMetrics.StageMetrics;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Tests for {@link LoaderMetrics}
+ */
+@SmallTest
+@RunWith(AndroidJUnit4.class)
+public class LoaderMetricsTest {
+
+    private final LoaderMetrics mMetrics = new LoaderMetrics();
+
+    @Test
+    public void stages_recordedInOrderWithCounts() {
+        LoadRecord load = mMetrics.beginLoad();
+        load.beginStage(STAGE_LOAD_WORKSPACE);
+        SystemClock.sleep(5);
+        load.endStage(30, 20);
+        load.beginStage(STAGE_LOAD_ALL_APPS);
+        load.endStage(12);
+        load.finish(STATUS_COMPLETED);
+
+        List<StageMetrics> stages = load.getStages();
+        assertEquals(2, stages.size());
+        StageMetrics workspace = stages.get(0);
+        assertEquals(STAGE_LOAD_WORKSPACE, workspace.getName());
+        assertTrue(workspace.getWallTimeNanos() >= 5_000_000);
+        assertTrue(workspace.getCpuTimeNanos() >= 0);
+        assertEquals(30, workspace.getRowCount());
+        assertEquals(20, workspace.getItemCount());
+        assertFalse(workspace.isCancelled());
+
+        StageMetrics allApps = stages.get(1);
+        assertEquals(STAGE_LOAD_ALL_APPS, allApps.getName());
+        assertEquals(UNKNOWN_COUNT, allApps.getRowCount());
+        assertEquals(12, allApps.getItemCount());
+        assertEquals(STATUS_COMPLETED, load.getStatus());
+    }
+
+    @Test
+    public void beginStage_endsOpenStage() {
+        LoadRecord load = mMetrics.beginLoad();
+        load.beginStage(STAGE_LOAD_WORKSPACE);
+        load.beginStage(STAGE_LOAD_ALL_APPS);
+        // No stage is open anymore, this is ignored
+        load.endStage(5);
+        load.endStage(6);
+
+        List<StageMetrics> stages = load.getStages();
+        assertEquals(2, stages.size());
+        assertEquals(UNKNOWN_COUNT, stages.get(0).getItemCount());
+        assertEquals(5, stages.get(1).getItemCount());
+    }
+
+    @Test
+    public void endStageAfter_recordedOnceExecutorRanAndKeepsStartOrder() {
+        List<Runnable> pending = new ArrayList<>();
+        LoadRecord load = mMetrics.beginLoad();
+        load.beginStage(STAGE_BIND_WORKSPACE);
+        load.endStageAfter(pending::add, 20);
+        load.beginStage(STAGE_LOAD_ALL_APPS);
+        load.endStage(12);
+
+        // The bind stage is only recorded once the posted tasks ran
+        assertEquals(1, load.getStages().size());
+        assertEquals(STAGE_LOAD_ALL_APPS, load.getStages().get(0).getName());
+
+        SystemClock.sleep(5);
+        pending.forEach(Runnable::run);
+
+        List<StageMetrics> stages = load.getStages();
+        assertEquals(2, stages.size());
+        assertEquals(STAGE_BIND_WORKSPACE, stages.get(0).getName());
+        assertEquals(20, stages.get(0).getItemCount());
+        assertTrue(stages.get(0).getWallTimeNanos() >= 5_000_000);
+        assertEquals(STAGE_LOAD_ALL_APPS, stages.get(1).getName());
+    }
+
+    @Test
+    public void finish_cancelledMarksOpenStage() {
+        LoadRecord load = mMetrics.beginLoad();
+        load.beginStage(STAGE_LOAD_WORKSPACE);
+        load.endStage(3);
+        load.beginStage(STAGE_BIND_WORKSPACE);
+        load.finish(STATUS_CANCELLED);
+
+        List<StageMetrics> stages = load.getStages();
+        assertEquals(2, stages.size());
+        assertFalse(stages.get(0).isCancelled());
+        assertTrue(stages.get(1).isCancelled());
+        assertEquals(STATUS_CANCELLED, load.getStatus());
+    }
+
+    @Test
+    public void beginLoad_startsFromEmptyRecord() {
+        LoadRecord first = mMetrics.beginLoad();
+        first.beginStage(STAGE_LOAD_WORKSPACE);
+        first.beginStage(STAGE_LOAD_ALL_APPS);
+        first.finish(STATUS_CANCELLED);
+
+        LoadRecord second = mMetrics.beginLoad();
+        assertEquals(STATUS_RUNNING, second.getStatus());
+        assertTrue(second.getStages().isEmpty());
+
+        second.beginStage(STAGE_BIND_ALL_APPS);
+        second.endStage(4);
+        second.finish(STATUS_COMPLETED);
+
+        // The previous run keeps its own stages and status
+        assertEquals(2, first.getStages().size());
+        assertEquals(STATUS_CANCELLED, first.getStatus());
+        assertEquals(1, second.getStages().size());
+        assertFalse(second.getStages().get(0).isCancelled());
+
+        List<LoadRecord> loads = mMetrics.getRecentLoads();
+        assertEquals(2, loads.size());
+        assertSame(first, loads.get(0));
+        assertSame(second, loads.get(1));
+    }
+
+    @Test
+    public void beginLoad_dropsOldestLoads() {
+        List<LoadRecord> started = new ArrayList<>();
+        for (int i = 0; i < MAX_LOADS_TRACKED + 3; i++) {
+            started.add(mMetrics.beginLoad());
+        }
+
+        List<LoadRecord> loads = mMetrics.getRecentLoads();
+        assertEquals(MAX_LOADS_TRACKED, loads.size());
+        assertEquals(started.subList(3, started.size()), loads);
+    }
+
+    @Test
+    public void dump_printsStagesOfEachLoad() {
+        LoadRecord load = mMetrics.beginLoad();
+        load.beginStage(STAGE_LOAD_WORKSPACE);
+        load.endStage(30, 20);
+        load.finish(STATUS_COMPLETED);
+        mMetrics.beginLoad().finish(STATUS_CANCELLED);
+
+        StringWriter out = new StringWriter();
+        mMetrics.dump("", new PrintWriter(out));
+
+        String dump = out.toString();
+        assertTrue(dump.contains("last 2 loads"));
+        assertTrue(dump.contains(STAGE_LOAD_WORKSPACE + ": wall="));
+        assertTrue(dump.contains(" rows=30 items=20"));
+        assertTrue(dump.contains("status=" + STATUS_CANCELLED));
+    }
+}
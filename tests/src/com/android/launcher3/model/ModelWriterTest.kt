@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2024 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.android.launcher3.model
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.filters.SmallTest
+import com.android.launcher3.LauncherSettings.Favorites.CELLX
+import com.android.launcher3.LauncherSettings.Favorites.CELLY
+import com.android.launcher3.LauncherSettings.Favorites.CONTAINER_DESKTOP
+import com.android.launcher3.LauncherSettings.Favorites.SCREEN
+import com.android.launcher3.LauncherSettings.Favorites.SPANX
+import com.android.launcher3.LauncherSettings.Favorites.TABLE_NAME
+import com.android.launcher3.celllayout.CellPosMapper
+import com.android.launcher3.model.data.ItemInfo
+import com.android.launcher3.provider.LauncherDbUtils.itemIdMatch
+import com.android.launcher3.util.Executors.MAIN_EXECUTOR
+import com.android.launcher3.util.Executors.MODEL_EXECUTOR
+import com.android.launcher3.util.LauncherLayoutBuilder
+import com.android.launcher3.util.LauncherModelHelper
+import com.android.launcher3.util.LauncherModelHelper.TEST_PACKAGE
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+
+/** Tests for the item updates queued by [ModelWriter] */
+@SmallTest
+@RunWith(AndroidJUnit4::class)
+class ModelWriterTest {
+
+    private lateinit var modelHelper: LauncherModelHelper
+    private lateinit var items: List<ItemInfo>
+
+    @Before
+    fun setUp() {
+        modelHelper = LauncherModelHelper()
+        modelHelper.setupDefaultLayoutProvider(
+            LauncherLayoutBuilder()
+                .atWorkspace(0, 1, 0)
+                .putApp(TEST_PACKAGE, TEST_PACKAGE)
+                .atWorkspace(1, 1, 0)
+                .putApp(TEST_PACKAGE, TEST_PACKAGE)
+        )
+        modelHelper.loadModelSync()
+        items = modelHelper.bgDataModel.workspaceItems.sortedBy { it.cellX }
+    }
+
+    @After
+    fun tearDown() {
+        modelHelper.destroy()
+    }
+
+    @Test
+    fun updates_of_same_item_in_a_frame_are_merged() {
+        val writer = newWriter()
+        val item = items[0]
+        MAIN_EXECUTOR.submit {
+                writer.modifyItemInDatabase(item, CONTAINER_DESKTOP, 0, 2, 3, 2, 1)
+                // Does not write the span, which must be kept from the previous update
+                writer.moveItemInDatabase(item, CONTAINER_DESKTOP, 1, 4, 0)
+            }
+            .get()
+        waitForQueuedUpdates()
+
+        assertArrayEquals(intArrayOf(1, 4, 0, 2), readPosition(item.id))
+    }
+
+    @Test
+    fun model_tasks_run_after_updates_queued_by_any_writer() {
+        val first = items[0]
+        val second = items[1]
+        var positions: List<IntArray>? = null
+        MAIN_EXECUTOR.submit {
+                newWriter().moveItemInDatabase(first, CONTAINER_DESKTOP, 1, 2, 2)
+                newWriter().moveItemInDatabase(second, CONTAINER_DESKTOP, 1, 3, 3)
+                // Posted before the end of the frame which would write the updates
+                modelHelper.model.enqueueModelUpdateTask { _, _, _ ->
+                    positions = listOf(readPosition(first.id), readPosition(second.id))
+                }
+            }
+            .get()
+        waitForQueuedUpdates()
+
+        assertArrayEquals(intArrayOf(1, 2, 2, 1), positions!![0])
+        assertArrayEquals(intArrayOf(1, 3, 3, 1), positions!![1])
+    }
+
+    private fun newWriter() =
+        modelHelper.model.getWriter(false /* verifyChanges */, CellPosMapper.DEFAULT, null)
+
+    private fun waitForQueuedUpdates() {
+        MAIN_EXECUTOR.submit {}.get()
+        MODEL_EXECUTOR.submit {}.get()
+    }
+
+    private fun readPosition(id: Int): IntArray =
+        modelHelper.model.modelDbController
+            .query(TABLE_NAME, arrayOf(SCREEN, CELLX, CELLY, SPANX), itemIdMatch(id), null, null)
+            .use { c ->
+                c.moveToFirst()
+                intArrayOf(c.getInt(0), c.getInt(1), c.getInt(2), c.getInt(3))
+            }
+}
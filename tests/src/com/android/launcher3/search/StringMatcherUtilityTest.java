@@ -16,7 +16,9 @@
 package com.android.launcher3.search;
 
 import static com.android.launcher3.search.StringMatcherUtility.getListOfBreakpoints;
+import static com.android.launcher3.search.StringMatcherUtility.getMatchOffsets;
 import static com.android.launcher3.search.StringMatcherUtility.matches;
+import static com.android.launcher3.search.StringMatcherUtility.matchesAtOffsets;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -142,6 +144,21 @@ public class StringMatcherUtilityTest {
         assertFalse(matches("elephants", "elephant", MATCHER_SPACE));
     }
 
+    @Test
+    public void testMatchesAtOffsets() {
+        String[] targets = {"white cow", "whiteCow", "whitecowCOW", "white2cow", "whitecow",
+                "cats&Dogs", "2+43", "  Q", "Elephant", "电子邮件", "다운로드 드라이브", "abc", ""};
+        String[] queries = {"white", "white c", "cow", "dog", "&", "43", "3", "q", "el",
+                "phant", "子", "ㄷ", "åbç", "elephants"};
+        for (String target : targets) {
+            IntArray offsets = getMatchOffsets(target, MATCHER);
+            for (String query : queries) {
+                assertEquals(query + " in " + target, matches(query, target, MATCHER),
+                        matchesAtOffsets(query, target, target.toLowerCase(), offsets, MATCHER));
+            }
+        }
+    }
+
     @Test
     public void testStringWithProperBreaks() {
         // empty string